@@ -0,0 +1,68 @@
+//  Copyright (c) 2010-2011, Ioannis (Yiannis) Chatzikonstantinou, ?All rights reserved.
+//  http://www.volatileprototypes.com
+// 
+//  Redistribution and use in source and binary forms, with or without modification, 
+//  are permitted provided that the following conditions are met:
+//  	- Redistributions of source code must retain the above copyright 
+//  notice, this list of conditions and the following disclaimer.
+//  	- Redistributions in binary form must reproduce the above copyright 
+//  notice, this list of conditions and the following disclaimer in the documentation 
+//  and/or other materials provided with the distribution.
+//  
+//  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY 
+//  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+//  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+//  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+//  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+//  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+//  PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+//  WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+//  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+//  OF SUCH DAMAGE.
+
+// Constant distance constraint over a lattice, with a range of a few lattice spacings.
+
+package volatileprototypes.fvlib.bench;
+
+import volatileprototypes.fvlib.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * @author      Yiannis Chatzikonstantinou <contact@volatileprototypes.com>
+ * @version     0.5.9                                    
+ * @since       0.5.9          
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class ConstantDistanceBench extends SolverBench {
+
+  @Param({"2000", "10000"})
+  public int points;
+
+  @Param({"false", "true"})
+  public boolean fast;
+
+  @Param({"25"})
+  public float range;
+
+  @Param({"full", "grid", "neighbors"})
+  public String mode;
+
+  private BehaviorConstantDistance cd;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    start();
+    cd=use(new BehaviorConstantDistance(Scenes.lattice(points,10,0,0)).setRange(range).setC(20).setFast(fast).setGrid(mode.equals("grid")));
+    if (mode.equals("neighbors")) cd.setNeighbors(new NeighborList(range, .1f*range));
+  }
+
+  @Benchmark
+  public void step() {
+    cd.step();
+  }
+}
@@ -0,0 +1,155 @@
+//  Copyright (c) 2010-2011, Ioannis (Yiannis) Chatzikonstantinou, ?All rights reserved.
+//  http://www.volatileprototypes.com
+// 
+//  Redistribution and use in source and binary forms, with or without modification, 
+//  are permitted provided that the following conditions are met:
+//  	- Redistributions of source code must retain the above copyright 
+//  notice, this list of conditions and the following disclaimer.
+//  	- Redistributions in binary form must reproduce the above copyright 
+//  notice, this list of conditions and the following disclaimer in the documentation 
+//  and/or other materials provided with the distribution.
+//  
+//  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY 
+//  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+//  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+//  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+//  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+//  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+//  PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+//  WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+//  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+//  OF SUCH DAMAGE.
+
+// Full craqs scene: the car body of examples/craqs built from carbody4.obj as in the
+// sketch, driven into the wall. Each operation runs a number of frames from the
+// initial state, each frame being the substeps of collision, integration, springs and
+// driving force. Plasticity is either the update over all links after each frame of
+// the original sketch, or applied by the spring solver in each substep. Collision is
+// either the penalty loop of the original sketch or a BehaviorCollider.
+
+package volatileprototypes.fvlib.bench;
+
+import volatileprototypes.fvlib.*;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * @author      Yiannis Chatzikonstantinou <contact@volatileprototypes.com>
+ * @version     0.5.9                                    
+ * @since       0.5.9          
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class CraqsBench extends SolverBench {
+
+  // Simulation parameters of the sketch.
+  static final float FORCE=.0010f, FRICTION=.998f, STIFFNESS=.029f;
+  static final float MAXRANGE=220, MINRANGE=20;
+  static final int STEPS=5, MAXLINKS=28;
+  static final float PLASTICLIMITCOMP=.04f, PLASTICLIMITTENS=.04f, PLASTICITYFACTOR=.5f;
+
+  @Param({"false", "true"})
+  public boolean fast;
+
+  @Param({"sketch", "solver"})
+  public String plasticity;
+
+  @Param({"sketch", "collider"})
+  public String collision;
+
+  @Param({"10"})
+  public int frames;
+
+  private Point[] points;
+  private Link[] links;
+  private Vec3[] pos0;
+  private float[] c0;
+  private IntegratorVerlet vi;
+  private BehaviorSpringRelaxation sr;
+  private BehaviorConstantForce cf;
+  private BehaviorCollider wc;
+  private boolean go;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    start();
+    ArrayList<Vec3> v=Scenes.vertices("carbody4.obj");
+    int n=v.size();
+    points=new Point[n];
+    pos0=new Vec3[n];
+    for (int i=0;i<n;i++) {
+      pos0[i]=v.get(i);
+      pos0[i].add(0,0,200);
+      points[i]=new Point(pos0[i]);
+    }
+    // Same network as the pairwise loop of the sketch, which takes up to MAXLINKS+1 links per point.
+    links=new SpringNetworkBuilder(points).setRange((float)Math.sqrt(MINRANGE),(float)Math.sqrt(MAXRANGE))
+                                         .setCap(MAXLINKS+1).links(STIFFNESS);
+    c0=new float[links.length];
+    for (int i=0;i<links.length;i++) c0[i]=links[i].C;
+    vi=use(new IntegratorVerlet(points).setF(FRICTION));
+    sr=use(new BehaviorSpringRelaxation(links).setFast(fast));
+    if (plasticity.equals("solver")) {
+      // The per-frame rates of the sketch, spread over the substeps.
+      sr.setPlasticity(PLASTICITYFACTOR*.005f/STEPS, PLASTICLIMITCOMP, PLASTICLIMITTENS,
+                       1-(float)Math.pow(1-PLASTICITYFACTOR, 1.0/STEPS));
+    }
+    cf=use(new BehaviorConstantForce(points,new Vec3(0,0,FORCE)));
+    wc=use(new BehaviorCollider(points).addBox(new Vec3(0,-10000,598),new Vec3(10000,10000,10000)));
+  }
+
+  // Every operation starts from the imported model at rest.
+  @Setup(Level.Invocation)
+  public void reset() {
+    for (int i=0;i<points.length;i++) {
+      points[i].setPos(pos0[i]);
+      points[i].sforce.set(0,0,0);
+    }
+    for (int i=0;i<links.length;i++) links[i].C=c0[i];
+    go=true;
+  }
+
+  @Benchmark
+  public void frames() {
+    for (int f=0;f<frames;f++) {
+      for (int i=0;i<STEPS;i++) {
+        checkCollision();
+        vi.step();
+        sr.step();
+        if (go) cf.step();
+      }
+      if (sr.getPlastic()) continue;
+      for (Link l : links) {
+        l.updateL();
+        l.C=(1-PLASTICITYFACTOR*.005f)*l.C+PLASTICITYFACTOR*.005f*l.L;
+        if (l.L*(1+PLASTICLIMITCOMP)<l.C || l.L*(1-PLASTICLIMITTENS)>l.C) {
+          l.C=(1-PLASTICITYFACTOR)*l.C+PLASTICITYFACTOR*l.L;
+        }
+      }
+    }
+  }
+
+  // Point v box collision of the sketch.
+  private void checkCollision() {
+    if (collision.equals("collider")) {
+      wc.step();
+      if (wc.getContacts()>0) go=false;
+      return;
+    }
+    for (Point p : points) {
+      if (p.z>598 && p.x>0) {
+        if (p.z-598<p.x) {
+          p.sforce.z-=p.z-598;
+        } else {
+          p.sforce.x-=p.x;
+        }
+        go=false;
+      }
+    }
+  }
+}
@@ -0,0 +1,79 @@
+//  Copyright (c) 2010-2011, Ioannis (Yiannis) Chatzikonstantinou, ?All rights reserved.
+//  http://www.volatileprototypes.com
+// 
+//  Redistribution and use in source and binary forms, with or without modification, 
+//  are permitted provided that the following conditions are met:
+//  	- Redistributions of source code must retain the above copyright 
+//  notice, this list of conditions and the following disclaimer.
+//  	- Redistributions in binary form must reproduce the above copyright 
+//  notice, this list of conditions and the following disclaimer in the documentation 
+//  and/or other materials provided with the distribution.
+//  
+//  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY 
+//  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+//  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+//  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+//  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+//  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+//  PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+//  WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+//  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+//  OF SUCH DAMAGE.
+
+// Points colliding with the car body of examples/craqs: building the MeshBVH over its
+// faces, and one BehaviorMeshCollider step of a point lattice filling its bounds.
+
+package volatileprototypes.fvlib.bench;
+
+import volatileprototypes.fvlib.*;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * @author      Yiannis Chatzikonstantinou <contact@volatileprototypes.com>
+ * @version     0.5.9                                    
+ * @since       0.5.9          
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class MeshColliderBench extends SolverBench {
+
+  @Param({"10000", "100000"})
+  public int points;
+
+  private ArrayList<Vec3> vertices;
+  private int[][] faces;
+  private MeshBVH mesh;
+  private BehaviorMeshCollider mc;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    start();
+    vertices=Scenes.vertices("carbody4.obj");
+    faces=Scenes.faces("carbody4.obj");
+    mesh=new MeshBVH().setRuntime(rt).build(vertices, faces);
+    float x0=Float.POSITIVE_INFINITY, y0=x0, z0=x0, x1=Float.NEGATIVE_INFINITY, y1=x1, z1=x1;
+    for (Vec3 v : vertices) {
+      x0=Math.min(x0,v.x); y0=Math.min(y0,v.y); z0=Math.min(z0,v.z);
+      x1=Math.max(x1,v.x); y1=Math.max(y1,v.y); z1=Math.max(z1,v.z);
+    }
+    Point[] p=Scenes.lattice(points, Math.max(x1-x0, Math.max(y1-y0, z1-z0))/Scenes.side(points), 0, 0);
+    for (Point q : p) q.setPos(new Vec3(q.x+x0, q.y+y0, q.z+z0));
+    mc=use(new BehaviorMeshCollider(p, mesh).setMargin(2));
+  }
+
+  @Benchmark
+  public void build() {
+    mesh.build(vertices, faces);
+  }
+
+  @Benchmark
+  public void step() {
+    mc.step();
+  }
+}
@@ -0,0 +1,125 @@
+//  Copyright (c) 2010-2011, Ioannis (Yiannis) Chatzikonstantinou, ?All rights reserved.
+//  http://www.volatileprototypes.com
+// 
+//  Redistribution and use in source and binary forms, with or without modification, 
+//  are permitted provided that the following conditions are met:
+//  	- Redistributions of source code must retain the above copyright 
+//  notice, this list of conditions and the following disclaimer.
+//  	- Redistributions in binary form must reproduce the above copyright 
+//  notice, this list of conditions and the following disclaimer in the documentation 
+//  and/or other materials provided with the distribution.
+//  
+//  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY 
+//  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+//  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+//  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+//  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+//  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+//  PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+//  WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+//  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+//  OF SUCH DAMAGE.
+
+// Scene generators shared by the benchmarks. Everything is generated from fixed seeds
+// so that runs on different machines measure the same work.
+
+package volatileprototypes.fvlib.bench;
+
+import volatileprototypes.fvlib.*;
+import java.io.*;
+import java.util.*;
+
+/**
+ * @author      Yiannis Chatzikonstantinou <contact@volatileprototypes.com>
+ * @version     0.5.9                                    
+ * @since       0.5.9          
+ */
+final class Scenes {
+
+  static final long SEED=20110314L;
+
+  private Scenes() {
+  }
+
+  // n points on a jittered cubic lattice of the given spacing, in lattice order, so
+  // that points close in index are close in space. Every point gets charge c and range r.
+  static Point[] lattice(int n, float spacing, float c, float r) {
+    Random rnd=new Random(SEED);
+    int s=side(n);
+    Point[] p=new Point[n];
+    for (int i=0;i<n;i++) {
+      int x=i%s, y=(i/s)%s, z=i/(s*s);
+      p[i]=new Point((x+.3f*(rnd.nextFloat()-.5f))*spacing,(y+.3f*(rnd.nextFloat()-.5f))*spacing,(z+.3f*(rnd.nextFloat()-.5f))*spacing,1,c,r);
+    }
+    return(p);
+  }
+
+  // Up to count springs between lattice neighbours of the points from lattice(),
+  // going through the 13 neighbour directions in turn.
+  static Link[] springs(Point[] p, int count, float stiffness) {
+    int n=p.length, s=side(n);
+    ArrayList<Link> l=new ArrayList<Link>(count);
+    for (int d=0;d<13 && l.size()<count;d++) {
+      int dx=DIRS[3*d], dy=DIRS[3*d+1], dz=DIRS[3*d+2];
+      for (int i=0;i<n && l.size()<count;i++) {
+        int x=i%s+dx, y=(i/s)%s+dy, z=i/(s*s)+dz;
+        if (x<0||x>=s||y<0||y>=s||z<0) continue;
+        int k=x+y*s+z*s*s;
+        if (k<n) l.add(new Link(p[i],p[k],stiffness));
+      }
+    }
+    return(l.toArray(new Link[l.size()]));
+  }
+
+  private static final int[] DIRS={1,0,0, 0,1,0, 0,0,1, 1,1,0, 1,-1,0, 1,0,1, 1,0,-1, 0,1,1, 0,1,-1, 1,1,1, 1,1,-1, 1,-1,1, -1,1,1};
+
+  static int side(int n) {
+    int s=(int)Math.ceil(Math.cbrt(n));
+    while (s*s*s<n) s++;
+    return(s);
+  }
+
+  // Vertices of a Wavefront .obj resource, in file order.
+  static ArrayList<Vec3> vertices(String name) throws IOException {
+    InputStream in=Scenes.class.getResourceAsStream("/"+name);
+    if (in==null) throw new FileNotFoundException(name);
+    ArrayList<Vec3> v=new ArrayList<Vec3>();
+    BufferedReader r=new BufferedReader(new InputStreamReader(in,"UTF-8"));
+    try {
+      for (String s;(s=r.readLine())!=null;) {
+        if (!s.startsWith("v ")) continue;
+        String[] t=s.trim().split("\\s+");
+        v.add(new Vec3(Float.parseFloat(t[1]),Float.parseFloat(t[2]),Float.parseFloat(t[3])));
+      }
+    } finally {
+      r.close();
+    }
+    return(v);
+  }
+
+  // Faces of a Wavefront .obj resource, in file order, as 0-based vertex indices.
+  static int[][] faces(String name) throws IOException {
+    InputStream in=Scenes.class.getResourceAsStream("/"+name);
+    if (in==null) throw new FileNotFoundException(name);
+    ArrayList<int[]> f=new ArrayList<int[]>();
+    int nv=0;
+    BufferedReader r=new BufferedReader(new InputStreamReader(in,"UTF-8"));
+    try {
+      for (String s;(s=r.readLine())!=null;) {
+        if (s.startsWith("v ")) nv++;
+        if (!s.startsWith("f ")) continue;
+        String[] t=s.trim().split("\\s+");
+        int[] k=new int[t.length-1];
+        for (int i=1;i<t.length;i++) {
+          // v, v/vt, v//vn or v/vt/vn; negative indices count back from the last vertex.
+          int j=Integer.parseInt(t[i].split("/")[0]);
+          k[i-1]=j<0?nv+j:j-1;
+        }
+        f.add(k);
+      }
+    } finally {
+      r.close();
+    }
+    return(f.toArray(new int[f.size()][]));
+  }
+}
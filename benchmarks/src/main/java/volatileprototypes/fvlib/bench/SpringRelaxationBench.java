@@ -0,0 +1,86 @@
+//  Copyright (c) 2010-2011, Ioannis (Yiannis) Chatzikonstantinou, ?All rights reserved.
+//  http://www.volatileprototypes.com
+// 
+//  Redistribution and use in source and binary forms, with or without modification, 
+//  are permitted provided that the following conditions are met:
+//  	- Redistributions of source code must retain the above copyright 
+//  notice, this list of conditions and the following disclaimer.
+//  	- Redistributions in binary form must reproduce the above copyright 
+//  notice, this list of conditions and the following disclaimer in the documentation 
+//  and/or other materials provided with the distribution.
+//  
+//  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY 
+//  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+//  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+//  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+//  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+//  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+//  PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+//  WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+//  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+//  OF SUCH DAMAGE.
+
+// Spring relaxation over a lattice with springs between neighbours. Positions are not
+// integrated, so every step does the same work. path selects Link and Point objects,
+// Link objects over a PointBuffer, or a LinkBuffer. simd selects the Vector API kernels
+// on the buffer paths. colored relaxes the links in colour batches instead of racing
+// on shared points.
+
+package volatileprototypes.fvlib.bench;
+
+import volatileprototypes.fvlib.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * @author      Yiannis Chatzikonstantinou <contact@volatileprototypes.com>
+ * @version     0.5.9                                    
+ * @since       0.5.9          
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(value=1, jvmArgsAppend={"--add-modules", "jdk.incubator.vector"})
+public class SpringRelaxationBench extends SolverBench {
+
+  @Param({"10000", "100000"})
+  public int points;
+
+  @Param({"30000", "300000"})
+  public int links;
+
+  @Param({"false", "true"})
+  public boolean fast;
+
+  @Param({"object", "buffer", "linkbuffer"})
+  public String path;
+
+  @Param({"false", "true"})
+  public boolean simd;
+
+  @Param({"false", "true"})
+  public boolean colored;
+
+  private BehaviorSpringRelaxation sr;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    start();
+    Point[] p=Scenes.lattice(points,10,0,0);
+    Link[] l=Scenes.springs(p,links,.029f);
+    if (path.equals("object")) {
+      sr=new BehaviorSpringRelaxation(l);
+    } else if (path.equals("buffer")) {
+      sr=new BehaviorSpringRelaxation(l).setBuffer(new PointBuffer(p));
+    } else {
+      sr=new BehaviorSpringRelaxation(new LinkBuffer(new PointBuffer(p),l));
+    }
+    sr=use(sr.setFast(fast).setColored(colored).setSimd(simd));
+  }
+
+  @Benchmark
+  public void step() {
+    sr.step();
+  }
+}
@@ -37,6 +37,7 @@
 import saito.objloader.*;
 
 import volatileprototypes.fvlib.*;
+import volatileprototypes.fvlib.processing.*;
 
 import processing.opengl.*;
 
@@ -69,6 +70,7 @@ ArrayList<Link> Links;
 IntegratorVerlet vi;
 BehaviorSpringRelaxation sr;
 BehaviorConstantForce cf;
+BehaviorCollider wc;
 PeasyCam cam;
 String model = "carbody4.obj";
 OBJModel o;
@@ -118,17 +120,6 @@ void draw() {
           cf.step();
         }
       }
-      // This one is the heart of the plastic behavior simulation.
-      // It allows for some plasticity during the elastic deformation.
-      // Not very accurate because it is time based while it should
-      // be strain-based. Possible future implementation in fvlib?
-      for (Link l : Links) {
-        l.updateL(); // Update with new length
-        l.C = (1-PlasticityFactor*.005)*l.C + PlasticityFactor*.005*l.L;
-        if (l.L*(1+PlasticLimitComp)<l.C || l.L*(1-PlasticLimitTens)>l.C) {
-          l.C = (1-PlasticityFactor)*l.C + PlasticityFactor*l.L;
-        }
-      }
       // Update the positions of the obj mesh
       for (int i=0, j=Points.size();i<j;i++) {
         Point p = Points.get(i);
@@ -192,42 +183,33 @@ void importObj(String filename) {
   o.translate(new PVector(0,0,200));
   // Generate the physics object
   for( int i=0, j=o.getVertexCount(); i<j; i++ ) {
-    Points.add(new Point(o.getVertex(i)));
-  }
-  for (int i=0, m=Points.size(); i<m; i++) {
-    int numLinks = 0;
-    for (int j=i+1; j<m; j++) {
-      Point p1 = Points.get(i);
-      Point p2 = Points.get(j);
-      if (p1 != p2 && p1.distance2To(p2) < MaxRange && p1.distance2To(p2) > MinRange) {
-        Links.add(new Link(p1,p2,Stiffness));
-        numLinks++;
-      }
-      if (numLinks > maxLinks) break;
-    }
+    Points.add(PVectors.point(o.getVertex(i)));
   }
+  // Link every pair of points within range, with up to maxLinks+1 links from each point
+  // to the points after it.
+  SpringNetworkBuilder nb = new SpringNetworkBuilder(Points).setRange(sqrt(MinRange),sqrt(MaxRange)).setCap(maxLinks+1);
+  for (Link l : nb.links(Stiffness)) Links.add(l);
   // Initialize solvers
   vi = new IntegratorVerlet(Points).setF(Friction);      // Initialize Verlet Integration
   sr = new BehaviorSpringRelaxation(Links);                      // Initialize Relaxation Solver
+  // This one is the heart of the plastic behavior simulation.
+  // Each substep, rest lengths flow slightly towards the current
+  // length, and yield past the strain limits. The rates are the
+  // per-frame rates spread over the substeps.
+  sr.setPlasticity(PlasticityFactor*.005/Steps, PlasticLimitComp, PlasticLimitTens, 1-pow(1-PlasticityFactor,1.0/Steps));
   //sr = new SolverRelaxation(Links).setFast(true);      // A bit faster but gooier
-  cf = new BehaviorConstantForce(Points,new PVector(0,0,Force)); // Initialize simple constant force
+  cf = new BehaviorConstantForce(Points,new Vec3(0,0,Force)); // Initialize simple constant force
                                                          // solver
+  // The wall: everything past z=598 on the positive x side.
+  wc = new BehaviorCollider(Points).addBox(new Vec3(0,-10000,598),new Vec3(10000,10000,10000));
 }
 
-// Simple point v box collision function
+// Point v box collision
 void checkCollision() {
-  for (Point p : Points) {
-    if (p.z>598 && p.x>0) {
-      if (p.z-598<p.x) {
-        p.sforce.z-=p.z-598;
-      } else {
-        p.sforce.x-=p.x;
-      }
-      // Stop accelerating as soon as the wall is hit.
-      // Otherwise the car is crushed into spaghetti madness.
-      go=false;
-    }
-  }
+  wc.step();
+  // Stop accelerating as soon as the wall is hit.
+  // Otherwise the car is crushed into spaghetti madness.
+  if (wc.getContacts()>0) go=false;
 }
 
 // Start/stop and reset
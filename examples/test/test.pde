@@ -39,7 +39,7 @@ void setup() {
     float nl=0;
     for (Point p2 : ps) {
       if (p1 != p2) {
-        PVector pv = p2.get();
+        Vec3 pv = p2.get();
         pv.sub(p1);
         if (pv.mag() < 100 && nl < 6) {
           ls.add(new Link(p1,p2,.002));
@@ -51,7 +51,7 @@ void setup() {
   
   vi=new IntegratorVerlet(ps);
   rs=new BehaviorSpringRelaxation(ls).setFast(true);
-  cf=new BehaviorConstantForce(ps, new PVector(0,.001,0));
+  cf=new BehaviorConstantForce(ps, new Vec3(0,.001,0));
   // Convert ArrayLists to arrays for drawing performance.
   psa=new Point[ps.size()];
   lsa=new Link[ls.size()];
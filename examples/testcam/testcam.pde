@@ -39,7 +39,7 @@ void setup() {
     float nl=0;
     for (Point p2 : ps) {
       if (p1 != p2) {
-        PVector pv = p2.get();
+        Vec3 pv = p2.get();
         pv.sub(p1);
         if (pv.mag() < 80 && nl < 5) {
           ls.add(new Link(p1,p2,.042));
@@ -100,9 +100,9 @@ void draw() {
   cam.endHUD();
 }
 
-PVector getCameraPos() {
+Vec3 getCameraPos() {
   float[] pos=cam.getPosition();
-  PVector rt=new PVector(pos[0],pos[1],pos[2]);
+  Vec3 rt=new Vec3(pos[0],pos[1],pos[2]);
   return rt;
 }
 
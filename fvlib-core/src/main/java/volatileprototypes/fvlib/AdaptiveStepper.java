@@ -0,0 +1,350 @@
+//  Copyright (c) 2010-2011, Ioannis (Yiannis) Chatzikonstantinou, ?All rights reserved.
+//  http://www.volatileprototypes.com
+// 
+//  Redistribution and use in source and binary forms, with or without modification, 
+//  are permitted provided that the following conditions are met:
+//  	- Redistributions of source code must retain the above copyright 
+//  notice, this list of conditions and the following disclaimer.
+//  	- Redistributions in binary form must reproduce the above copyright 
+//  notice, this list of conditions and the following disclaimer in the documentation 
+//  and/or other materials provided with the distribution.
+//  
+//  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY 
+//  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+//  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+//  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+//  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+//  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+//  PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+//  WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+//  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+//  OF SUCH DAMAGE.
+
+// Picks the number of substeps of each frame from how the previous frame went. The
+// integrator records the largest velocity component of every substep and the springs
+// their largest strain, both within their own passes. After each frame the count is
+// raised so that no point moves further than the set distance in a substep and no
+// spring is strained past the set limit, and lowered gradually while both stay under
+// half of their limits. A timestep that is too long for the stiffest springs blows up
+// before either measure shows it, so the count never drops below the one the
+// stiffness of the monitored springs allows.
+// The frame time is split evenly over the substeps through the integrator timestep, and
+// the count is capped by what fits in the time budget at the measured cost per substep.
+
+package volatileprototypes.fvlib;
+
+import java.util.*;
+
+/**
+ * @author      Yiannis Chatzikonstantinou <contact@volatileprototypes.com>
+ * @version     0.5.9                                    
+ * @since       0.5.9          
+ */
+public final class AdaptiveStepper {
+
+/**
+ * What set the substep count of the next frame.
+ */
+  public enum Limit {MIN, STIFFNESS, SPEED, STRAIN, MAX, BUDGET}
+
+  private final Integrator in;					// Integrator whose timestep is set.
+  private final ArrayList<BehaviorSpringRelaxation> springs=new ArrayList<BehaviorSpringRelaxation>();
+  private float T=1;							// Time per frame.
+  private int min=1, max=64;					// Bounds of the substep count.
+  private float move=Float.POSITIVE_INFINITY;	// Largest distance a point may move in a substep.
+  private float ymax=Float.POSITIVE_INFINITY;	// Largest strain of any spring.
+  private float budget=0;						// Milliseconds per frame, 0 for no budget.
+  private int n=1, last=0;						// Substeps of the next and of the last frame.
+  private int safe=1;							// Fewest substeps the stiffness of the springs allows.
+  private long t0;								// Start of the running frame.
+  private float ms=0, cost=0;					// Duration of the last frame, and smoothed cost per substep.
+  private float speed=0, strain=0;				// Largest velocity component and strain of the last frame.
+  private Limit limit=Limit.MIN;
+
+/**
+ * Constructor, generates a new stepper that sets the timestep of the supplied integrator.
+ *
+ * @param inin The integrator.
+ *
+ */
+  public AdaptiveStepper(Integrator inin) {
+    in=inin;
+  }
+
+/**
+ * Adds springs whose stiffness and strain limit the timestep (see setMaxStrain()).
+ *
+ * @param s The springs.
+ *
+ * @return The current object.
+ */
+  public AdaptiveStepper monitor(BehaviorSpringRelaxation s) {
+    if (!springs.contains(s)) springs.add(s);
+    return(this);
+  }
+
+/**
+ * Sets the time simulated per frame, split evenly over its substeps. The default is 1.
+ *
+ * @param tin The frame time, in the units of the integrator timestep.
+ *
+ * @return The current object.
+ */
+  public AdaptiveStepper setFrame(float tin) {
+    T=tin;
+    return(this);
+  }
+
+/**
+ *  Get the time simulated per frame.
+ *
+ * @return The frame time.
+ */
+  public float getFrame() {
+    return(T);
+  }
+
+/**
+ * Sets the bounds of the substep count. The default is 1 to 64.
+ *
+ * @param minin The smallest number of substeps per frame.
+ * @param maxin The largest number of substeps per frame.
+ *
+ * @return The current object.
+ */
+  public AdaptiveStepper setSubsteps(int minin, int maxin) {
+    min=Math.max(minin,1);
+    max=Math.max(maxin,min);
+    n=Math.min(Math.max(n,min),max);
+    return(this);
+  }
+
+/**
+ * Sets the largest distance any point should move along an axis in one substep.
+ *
+ * Usually a fraction of the smallest spring or collision radius, so that fast points
+ * do not pass through each other or overshoot their springs. Unlimited by default.
+ *
+ * @param din The distance.
+ *
+ * @return The current object.
+ */
+  public AdaptiveStepper setMaxMove(float din) {
+    move=din;
+    return(this);
+  }
+
+/**
+ *  Get the largest distance a point should move in one substep.
+ *
+ * @return The distance.
+ */
+  public float getMaxMove() {
+    return(move);
+  }
+
+/**
+ * Sets the largest strain any monitored spring should see.
+ *
+ * The count grows in proportion to the strain over the limit. Set it above the strain
+ * the springs hold at rest, as more substeps do not lower that. Unlimited by default.
+ *
+ * @param yin The strain, |L-C|/C.
+ *
+ * @return The current object.
+ */
+  public AdaptiveStepper setMaxStrain(float yin) {
+    ymax=yin;
+    return(this);
+  }
+
+/**
+ *  Get the largest strain a spring should see.
+ *
+ * @return The strain.
+ */
+  public float getMaxStrain() {
+    return(ymax);
+  }
+
+/**
+ * Sets the time budget of a frame. The substep count is capped by the number of substeps
+ * that fit in it at the cost measured over the last frames, but not below the minimum or
+ * the count the stiffness of the monitored springs requires.
+ *
+ * @param msin The budget in milliseconds, 0 for none.
+ *
+ * @return The current object.
+ */
+  public AdaptiveStepper setBudget(float msin) {
+    budget=Math.max(msin,0);
+    return(this);
+  }
+
+/**
+ *  Get the time budget of a frame.
+ *
+ * @return The budget in milliseconds, 0 if there is none.
+ */
+  public float getBudget() {
+    return(budget);
+  }
+
+/**
+ * Starts a frame. Sets the integrator timestep and returns the number of substeps to run,
+ * after which end() must be called.
+ *
+ * @return The number of substeps.
+ */
+  public int begin() {
+    // Explicit integration of springs of stiffness K is stable with timesteps below sqrt(2/K).
+    // The springs cache K until their links change, so this costs nothing most frames.
+    float K=0;
+    for (BehaviorSpringRelaxation s : springs) K=Math.max(K,s.getStiffness(in.mass));
+    safe=Math.max(min,(int)Math.min(Math.ceil(T*Math.sqrt(.5f*K)),max));
+    if (n<safe) {
+      n=safe;
+      limit=Limit.STIFFNESS;
+    }
+    in.dt=T/n;
+    in.peak=0;
+    for (BehaviorSpringRelaxation s : springs) s.peak=0;
+    t0=System.nanoTime();
+    return(n);
+  }
+
+/**
+ * Ends a frame started with begin(), and picks the substep count of the next one.
+ *
+ */
+  public void end() {
+    ms=(System.nanoTime()-t0)*1e-6f;
+    last=n;
+    speed=in.peak;
+    strain=0;
+    for (BehaviorSpringRelaxation s : springs) strain=Math.max(strain,s.peak);
+    float c=ms/last;
+    cost=cost>0?.75f*cost+.25f*c:c;
+    int k=pick(1);
+    if (k<last) {
+      // Lower by at most a quarter per frame, to the count that keeps both measures
+      // under half of their limits, so that the count settles instead of hunting.
+      Limit l=limit;
+      k=Math.max(pick(2),last-Math.max(1,last/4));
+      if (k>=last) {
+        k=last;
+      } else {
+        limit=l;
+      }
+    }
+    if (k>max) {
+      k=max;
+      limit=Limit.MAX;
+    }
+    if (budget>0 && k>safe) {
+      int kb=Math.max(safe,(int)(budget/cost));
+      if (kb<k) {
+        k=kb;
+        limit=Limit.BUDGET;
+      }
+    }
+    n=k;
+  }
+
+  // Smallest count that keeps speed and strain within their limits over s, and what set it.
+  private final int pick(float s) {
+    int k=safe;
+    limit=safe>min?Limit.STIFFNESS:Limit.MIN;
+    int ks=(int)Math.min(Math.ceil(s*speed*T/move),Integer.MAX_VALUE);
+    if (ks>k) {
+      k=ks;
+      limit=Limit.SPEED;
+    }
+    int ky=(int)Math.min(Math.ceil(s*last*strain/ymax),Integer.MAX_VALUE);
+    if (ky>k) {
+      k=ky;
+      limit=Limit.STRAIN;
+    }
+    return(k);
+  }
+
+/**
+ * Runs one frame of the supplied World.
+ *
+ * @param w The World.
+ *
+ * @return The number of substeps run.
+ */
+  public int step(World w) {
+    int k=begin();
+    try {
+      w.step(k);
+    } finally {
+      end();
+    }
+    return(k);
+  }
+
+/**
+ *  Get the number of substeps of the next frame.
+ *
+ * @return The number of substeps.
+ */
+  public int getSubsteps() {
+    return(n);
+  }
+
+/**
+ *  Get the number of substeps of the last frame.
+ *
+ * @return The number of substeps.
+ */
+  public int getLastSubsteps() {
+    return(last);
+  }
+
+/**
+ *  Get what set the substep count of the next frame.
+ *
+ * @return The limit.
+ */
+  public Limit getLimit() {
+    return(limit);
+  }
+
+/**
+ *  Get the largest velocity component of any point in the last frame.
+ *
+ * @return The speed, in distance per unit of time.
+ */
+  public float getSpeed() {
+    return(speed);
+  }
+
+/**
+ *  Get the largest strain of any monitored spring in the last frame.
+ *
+ * @return The strain.
+ */
+  public float getStrain() {
+    return(strain);
+  }
+
+/**
+ *  Get the duration of the last frame.
+ *
+ * @return The duration in milliseconds.
+ */
+  public float getFrameTime() {
+    return(ms);
+  }
+
+/**
+ *  Get the smoothed cost of a substep, as used against the budget.
+ *
+ * @return The cost in milliseconds.
+ */
+  public float getSubstepTime() {
+    return(cost);
+  }
+}
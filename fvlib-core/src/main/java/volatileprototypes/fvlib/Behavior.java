@@ -22,7 +22,6 @@
 
 package volatileprototypes.fvlib;
 
-import processing.core.*;
 import java.util.*;
 import java.util.concurrent.*;
 
@@ -34,6 +33,7 @@ import java.util.concurrent.*;
 public class Behavior extends Solver {
 
   protected Point[] points;					// double array that holds points
+  protected PointBuffer pb;					// Point store streamed by the fast paths, if set.
 
 /**
  * Constructor, generates a new class instance with empty point array.
@@ -66,6 +66,19 @@ public class Behavior extends Solver {
     points=pointsin;
   }
   
+/**
+ * Constructor.
+ *
+ * Constructor, generates a new class instance operating on the points of the supplied buffer.
+ *
+ * @param pbin A PointBuffer holding the points.
+ *
+ */
+  public Behavior(PointBuffer pbin) {
+    points=pbin.points;
+    pb=pbin;
+  }
+  
 /**
  * Sets the object's Point array using a copy of the supplied ArrayList.
  *
@@ -74,6 +87,7 @@ public class Behavior extends Solver {
   public void setP(ArrayList<? extends Point> pointsin) {
     points=new Point[pointsin.size()];
     pointsin.toArray(points);
+    pb=null;
   }
 
 /**
@@ -83,6 +97,57 @@ public class Behavior extends Solver {
  */
   public void setP(Point[] pointsin) {
   	points=pointsin;
+  	pb=null;
+  }
+
+/**
+ * Sets the object's points to those of the supplied buffer.
+ *
+ * Behaviors with a fast path step directly on the buffer arrays. Others copy the
+ * buffer state to the Point objects before each step and read the forces back after it.
+ *
+ * @param pbin The PointBuffer holding the points.
+ */
+  public void setP(PointBuffer pbin) {
+  	points=pbin.points;
+  	pb=pbin;
+  }
+  
+  // Sums the per-thread force buffers into the points in deterministic mode.
+  @Override
+  protected void reduceFunction(int step, int offset) {
+    if (pb!=null && bufferPath()) {
+      reduce(pb.frc, pb.n, step, offset);
+    } else {
+      reduce(points, step, offset);
+    }
+  }
+  
+  // While points of the buffer sleep, the buffer path steps the positions of its active list.
+  @Override
+  protected int workSize() {
+    return(pb!=null && bufferPath() && pb.sleeping()?pb.na:points.length);
+  }
+  
+  // Whether this behavior steps directly on the PointBuffer arrays.
+  protected boolean bufferPath() {
+    return(false);
+  }
+  
+  // Behaviors without a buffer path work on the Point objects, so bring them up
+  // to date before the step and read their forces, and any positions they moved,
+  // back after it.
+  @Override
+  protected void preStep() {
+    if (pb!=null && !bufferPath()) pb.store();
+  }
+  
+  @Override
+  protected void postStep() {
+    if (pb!=null && !bufferPath()) {
+      pb.loadForces();
+      pb.loadMoved();
+    }
   }
   
 /**
@@ -93,4 +158,14 @@ public class Behavior extends Solver {
   public Point[] getP() {
   	return(points);
   }
+  
+/**
+ *  Get the current point buffer.
+ *
+ * @return The current point buffer, or null if the behavior works on Point objects.
+ */
+  @Override
+  public PointBuffer getBuffer() {
+  	return(pb);
+  }
 }
\ No newline at end of file
@@ -31,7 +31,6 @@
 
 package volatileprototypes.fvlib;
 
-import processing.core.*;
 import java.util.*;
 import java.util.concurrent.*;
 
@@ -43,7 +42,7 @@ import java.util.concurrent.*;
 
 public final class BehaviorCameraOverlap extends Behavior {
 
-private PVector camPos;					// Camera Position
+private Vec3 camPos;					// Camera Position
 private float range=200;     
 private float range2=range*range;		// Range specifies the maximum range below which force is applied.
 private float magnitude=.1f;			// Repelling force magnitude.
@@ -64,10 +63,10 @@ private float magnitude=.1f;			// Repelling force magnitude.
  *
  * @param pointsin An ArrayList containing Point objects with which the object will be initialized.
  *
- * @param camPosIn A PVector object indicating the camera position.
+ * @param camPosIn A Vec3 object indicating the camera position.
  *
  */
-  public BehaviorCameraOverlap(ArrayList<? extends Point> pointsin, PVector camPosIn) {
+  public BehaviorCameraOverlap(ArrayList<? extends Point> pointsin, Vec3 camPosIn) {
     super(pointsin);
 	camPos = camPosIn;
   }
@@ -80,22 +79,22 @@ private float magnitude=.1f;			// Repelling force magnitude.
  *
  * @param pointsin An array containing Point objects with which the object will be initialized.
  *
- * @param camPosIn A PVector object indicating the camera position.
+ * @param camPosIn A Vec3 object indicating the camera position.
  *
  */
-  public BehaviorCameraOverlap(Point[] pointsin, PVector camPosIn) {
+  public BehaviorCameraOverlap(Point[] pointsin, Vec3 camPosIn) {
     super(pointsin);
 	camPos = camPosIn;
   }
   
 /**
- * Sets the object's Camera Vector using the supplied PVector object.
+ * Sets the object's Camera Vector using the supplied Vec3 object.
  *
- * @param camPosIn The new camera position as a PVector.
+ * @param camPosIn The new camera position as a Vec3.
  *
  * @return The current object.
  */
-  public BehaviorCameraOverlap setCam(PVector camPosIn) {
+  public BehaviorCameraOverlap setCam(Vec3 camPosIn) {
 	camPos=camPosIn;
 	return(this);
   }
@@ -135,11 +134,11 @@ private float magnitude=.1f;			// Repelling force magnitude.
   }
 
 /**
- * Returns the camera position as a PVector.
+ * Returns the camera position as a Vec3.
  *
- * @return A PVector object representing camera position.
+ * @return A Vec3 object representing camera position.
  */
-  public PVector getCam() {
+  public Vec3 getCam() {
   	return(camPos);
   }
 
@@ -153,11 +152,18 @@ private float magnitude=.1f;			// Repelling force magnitude.
   }
   
   @Override
-  protected final void stepFunction(int step, int offset) {
-    stepPoints(points, step, offset);
+  protected final Partition partition() {
+    return(Partition.TRIANGULAR);
   }
   
-  private final void stepPoints(Point[] points, int step, int offset) {
+  @Override
+  protected final void stepRange(int start, int end, int stride, int thread) {
+    if (getDeterministic()) {
+      bStepPoints(points, accBuffer(thread, points.length), start, end, stride);
+    } else {stepPoints(points, start, end, stride);}
+  }
+  
+  private final void stepPoints(Point[] points, int start, int end, int stride) {
     
 	float d2, u;					// Square of (projected) distance, helper for projection
 	
@@ -171,7 +177,7 @@ private float magnitude=.1f;			// Repelling force magnitude.
     float x1, y1, z1;				// Point 1 (p1) coordinates.
     float dx, dy, dz, lx, ly, lz;	// Distance components and force components.
     
-	for (int i = offset, j = points.length; i < j; i += step) {
+	for (int i = start, j = points.length; i < end; i += stride) {
       p1 = points[i];
       x1 = p1.x;
       y1 = p1.y;
@@ -217,4 +223,69 @@ private float magnitude=.1f;			// Repelling force magnitude.
       }
     }
   }
+  
+  // Deterministic variant. Forces go to the thread's buffer, 3 floats per point index.
+  private final void bStepPoints(Point[] points, float[] a, int start, int end, int stride) {
+    
+	float d2, u;					// Square of (projected) distance, helper for projection
+	
+	float r2 = range2;				// Local reference for square of range.
+	float m = magnitude;			// Local reference for magnitude.
+	float cP1x, cP1y, cP1z, cP1d;	// Point1-Camera Vector.
+	float cP2x, cP2y, cP2z, cP2d;	// Point2-Camera Vector.
+    
+	Point p1, p2;					// Points.
+	
+    float x1, y1, z1;				// Point 1 (p1) coordinates.
+    float dx, dy, dz, lx, ly, lz;	// Distance components and force components.
+    int i3, k3;					// Buffer offsets of the two points.
+    
+	for (int i = start, j = points.length; i < end; i += stride) {
+      p1 = points[i];
+      i3 = 3 * i;
+      x1 = p1.x;
+      y1 = p1.y;
+      z1 = p1.z;
+	  cP1x = x1 - camPos.x;
+	  cP1y = y1 - camPos.y;
+	  cP1z = z1 - camPos.z;
+	  cP1d = (float)Math.sqrt(cP1x * cP1x + cP1y * cP1y + cP1z * cP1z);
+      for (int k = i + 1; k < j; k++) {
+        p2 = points[k];
+        k3 = 3 * k;
+		cP2x = p2.x - camPos.x;
+		cP2y = p2.y - camPos.y;
+		cP2z = p2.z - camPos.z;
+		// Check if the dot product between the two Camera-Point vectors is
+		// higher than a threshhold; that is to say, if the points are far
+		// enough from the camera or really close by.
+		// We don't want points that lie around the camera to be affected
+		// by this procedure. Should be improved to really
+		// include all points around the camera.
+		if (cP1x * cP2x + cP1y * cP2y + cP1z * cP2z > 20) {
+		  dx = p2.x - x1;
+		  dy = p2.y - y1;
+		  dz = p2.z - z1;
+		  // Project to plane defined by point1-camera vector [cP1x, cP1y, cP1z].
+		  u = (dx * cP1x + dy * cP1y + dz * cP1z) / (cP1x * cP1x + cP1y * cP1y + cP1z * cP1z);
+		  dx -= u * cP1x;
+		  dy -= u * cP1y;
+		  dz -= u * cP1z;
+		  d2 = (dx * dx + dy * dy + dz * dz) / cP1d ;
+		  if (d2 < r2) {
+			d2 = m / d2;
+			lx = dx * d2;
+			ly = dy * d2;
+			lz = dz * d2;
+			a[i3] -= lx;
+			a[i3+1] -= ly;
+			a[i3+2] -= lz;
+			a[k3] += lx;
+			a[k3+1] += ly;
+			a[k3+2] += lz;
+		  }
+		}
+      }
+    }
+  }
 }
\ No newline at end of file
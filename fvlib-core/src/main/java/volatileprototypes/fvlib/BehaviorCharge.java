@@ -0,0 +1,865 @@
+//  Copyright (c) 2010-2011, Ioannis (Yiannis) Chatzikonstantinou, ?All rights reserved.
+//  http://www.volatileprototypes.com
+// 
+//  Redistribution and use in source and binary forms, with or without modification, 
+//  are permitted provided that the following conditions are met:
+//  	- Redistributions of source code must retain the above copyright 
+//  notice, this list of conditions and the following disclaimer.
+//  	- Redistributions in binary form must reproduce the above copyright 
+//  notice, this list of conditions and the following disclaimer in the documentation 
+//  and/or other materials provided with the distribution.
+//  
+//  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY 
+//  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+//  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+//  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+//  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+//  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+//  PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+//  WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+//  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+//  OF SUCH DAMAGE.
+
+
+package volatileprototypes.fvlib;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * @author      Yiannis Chatzikonstantinou <contact@volatileprototypes.com>
+ * @version     0.5.9                                    
+ * @since       0.4          
+ */
+public final class BehaviorCharge extends Behavior {
+
+private float bias=.001f, fmult=1;      // Bias limits the maximum force (at zero distance).
+private boolean inv=false;				// Option for inverting attract/repel forces.
+private boolean grid=false;				// Option for using the cell grid broadphase.
+private final SpatialGrid sg=new SpatialGrid();	// Broadphase grid, sized from the largest range.
+private NeighborList nl;				// Neighbour list to use instead of the grid, if set.
+private boolean empty=true;				// No point has a range, so nothing interacts.
+private boolean bh=false;				// Option for using the Barnes-Hut approximation.
+private float theta=.5f;				// Barnes-Hut opening angle.
+private final Octree ot=new Octree();	// Barnes-Hut tree, rebuilt every step.
+
+/**
+ * Constructor, generates a new class instance.
+ *
+ */
+  public BehaviorCharge() {
+    super();
+  }
+  
+/**
+ * Constructor, generates a new class instance using a copy of the supplied Point ArrayList.
+ *
+ * @param pointsin An ArrayList containing Point objects with which the object's list will be initialized.
+ *
+ */
+  public BehaviorCharge(ArrayList<? extends Point> pointsin) {
+    super(pointsin);
+  }
+  
+/**
+ * Constructor.
+ *
+ * Constructor, generates a new class instance using the supplied array.
+ *
+ * @param pointsin An array containing Point objects with which the object's list will be initialized.
+ *
+ */
+  public BehaviorCharge(Point[] pointsin) {
+    super(pointsin);
+  }
+  
+/**
+ * Constructor.
+ *
+ * Constructor, generates a new class instance operating directly on the arrays of the supplied buffer.
+ *
+ * @param pbin A PointBuffer holding the points.
+ *
+ */
+  public BehaviorCharge(PointBuffer pbin) {
+    super(pbin);
+  }
+
+/**
+ * Sets the bias. Bias limits the maximum force (at zero distance).
+ *
+ * @param biasin A float representing the new bias value.
+ *
+ * @return The current object.
+ */
+  public BehaviorCharge setBias(float biasin) {
+  	bias=biasin;
+  	return(this);
+  }
+
+/**
+ * Sets whether force should be inverted. By default same charges repel.
+ *
+ * @param invin A bool representing the new invert value.
+ *
+ * @return The current object.
+ */
+  public BehaviorCharge setInv(boolean invin) {
+    inv=invin;
+    return(this);
+  }
+
+/**
+ * Sets the force multiplier.
+ *
+ * @param fmultin A float representing the new force multiplier.
+ *
+ * @return The current object.
+ */
+  public BehaviorCharge setFMult(float fmultin) {
+	fmult = fmultin;
+	return(this);
+  }
+
+/**
+ * Sets whether to use a uniform grid broadphase.
+ *
+ * With the grid enabled, points are binned into cells as large as the largest Point range
+ * before each step and only points in neighbouring cells are checked against each other.
+ * This is much faster than checking all pairs when ranges are small compared to the extent
+ * of the point cloud, and gives the same result within float tolerance.
+ *
+ * @param gin A boolean representing whether to use the grid.
+ *
+ * @return The current object.
+ */
+  public BehaviorCharge setGrid(boolean gin) {
+    grid=gin;
+    return(this);
+  }
+
+/**
+ * Returns whether the grid broadphase is used.
+ *
+ * @return The grid flag.
+ */
+  public boolean getGrid() {
+    return(grid);
+  }
+
+/**
+ * Sets a neighbour list to find the pairs in range with.
+ *
+ * The list is brought up to date before each step, and only rebuilt once the points may
+ * have moved more than half its skin, so it suits short ranges where points move little
+ * per step. Its range is raised to the largest Point range if needed. Takes precedence
+ * over the grid. null stops using a list.
+ *
+ * @param nlin The NeighborList to use.
+ *
+ * @return The current object.
+ */
+  public BehaviorCharge setNeighbors(NeighborList nlin) {
+    nl=nlin;
+    return(this);
+  }
+
+/**
+ * Returns the neighbour list in use, or null.
+ *
+ * @return The NeighborList.
+ */
+  public NeighborList getNeighbors() {
+    return(nl);
+  }
+
+/**
+ * Sets whether to use the Barnes-Hut approximation.
+ *
+ * With Barnes-Hut enabled, an octree is built over the points before each step (in
+ * parallel), and the force on each point is summed over the tree: a node that looks
+ * smaller than the opening angle from the point acts as its total positive and negative
+ * charge, each at the centre of the points carrying it, others are opened. This takes O(n log n) time instead of O(n^2) and
+ * suits long ranges, where the grid does not help. Ranges are tested against the
+ * charge centres of such a node and the largest range in it. Takes precedence over the grid.
+ *
+ * @param bhin A boolean representing whether to use Barnes-Hut.
+ *
+ * @return The current object.
+ */
+  public BehaviorCharge setBarnesHut(boolean bhin) {
+    bh=bhin;
+    return(this);
+  }
+
+/**
+ * Returns whether the Barnes-Hut approximation is used.
+ *
+ * @return The Barnes-Hut flag.
+ */
+  public boolean getBarnesHut() {
+    return(bh);
+  }
+
+/**
+ * Sets the Barnes-Hut opening angle. Smaller values are more accurate and slower,
+ * 0 sums all pairs exactly. The default is 0.5.
+ *
+ * @param thetain A float representing the new opening angle.
+ *
+ * @return The current object.
+ */
+  public BehaviorCharge setTheta(float thetain) {
+    theta=thetain;
+    return(this);
+  }
+
+/**
+ * Get the Barnes-Hut opening angle.
+ *
+ * @return The current opening angle.
+ */
+  public float getTheta() {
+    return(theta);
+  }
+
+/**
+ * Get the bias value.
+ *
+ * @return The current bias value.
+ */
+  public float getBias() {
+  	return(bias);
+  }
+
+/**
+ * Get the current force multiplier value.
+ *
+ * @return The current force multiplier value.
+ */
+  public float getFMult() {
+	return(fmult);
+  }
+  
+  // The full loop pairs each point with all later ones; grid rows cost about the same,
+  // and so do tree walks, which go over the points in tree order.
+  @Override
+  protected final Partition partition() {
+    return(grid||bh||nl!=null?Partition.CONTIGUOUS:Partition.TRIANGULAR);
+  }
+  
+  // Tree walks go over all points in tree order, as sleeping points still gather the
+  // forces of awake ones. So do the rows of a neighbour list, which only hold the pairs
+  // with later points.
+  @Override
+  protected final int workSize() {
+    return(bh||nl!=null?points.length:super.workSize());
+  }
+  
+  // Barnes-Hut steps build the subtrees, sum the top of the tree, then walk it.
+  @Override
+  protected final int passes() {
+    return(bh?3:1);
+  }
+  
+  @Override
+  protected final void passFunction(int pass, int step, int offset) {
+    if (!bh || pass==2) {
+      run(step,offset);
+    } else if (pass==0) {
+      if (!empty) ot.buildTasks(offset);
+    } else if (offset==0) {
+      ot.finish();
+    }
+  }
+  
+  @Override
+  protected final boolean bufferPath() {
+    return(true);
+  }
+  
+  @Override
+  protected final void preStep() {
+    if (bh) {
+      if (pb!=null) {ot.gather(pb);} else {ot.gather(points);}
+      empty=!(ot.r2max>0);
+      if (!empty) ot.split(getThreads());
+      return;
+    }
+    if (!grid && nl==null) return;
+    float rm=0;
+    if (pb!=null) {
+      for (float r2 : pb.r2) {
+        if (r2>rm) rm=r2;
+      }
+      rm=(float)Math.sqrt(rm);
+    } else {
+      for (Point p : points) {
+        if (p.r>rm) rm=p.r;
+      }
+    }
+    empty=!(rm>0);
+    if (empty) return;
+    if (nl!=null) {
+      if (rm>nl.getRange()) nl.setRange(rm);
+      if (pb!=null) {nl.update(pb);} else {nl.update(points);}
+      return;
+    }
+    if (pb!=null) {sg.build(pb, rm);} else {sg.build(points, rm);}
+  }
+  
+  @Override
+  protected final void stepRange(int start, int end, int stride, int thread) {
+    if (bh) {
+      // Each thread only writes the forces of its own points, so no buffers are needed.
+      if (!empty) hStepPoints(pb!=null?pb.frc:null, start, end, stride, thread);
+    } else if (pb!=null) {
+      // The buffer kernels write to the buffer forces or, in deterministic mode, to the thread's buffer.
+      float[] f=getDeterministic()?accBuffer(thread, pb.n):pb.frc;
+      if (nl!=null) {
+        if (!empty) naStepPoints(pb, f, start, end, stride);
+      } else if (grid) {
+        if (!empty) gaStepPoints(pb, f, start, end, stride);
+      } else {aStepPoints(pb, f, start, end, stride);}
+    } else if (getDeterministic()) {
+      float[] a=accBuffer(thread, points.length);
+      if (nl!=null) {
+        if (!empty) nStepPoints(points, a, start, end, stride);
+      } else if (grid) {
+        if (!empty) gbStepPoints(points, a, start, end, stride);
+      } else {bStepPoints(points, a, start, end, stride);}
+    } else if (nl!=null) {
+      if (!empty) nStepPoints(points, null, start, end, stride);
+    } else if (grid) {
+      if (!empty) gStepPoints(points, start, end, stride);
+    } else if (!inv) {stepPoints(points, start, end, stride);} else {stepPointsi(points, start, end, stride);}
+  }
+  
+  // Barnes-Hut variant. Walks the tree for the points start..end in tree order and
+  // adds the force on each to f (3 floats per point index), or to Point.sforce if f is null.
+  private final void hStepPoints(float[] f, int start, int end, int stride, int thread) {
+    final Octree t=ot;
+    final float[] sx=t.sx, sy=t.sy, sz=t.sz, sc=t.sc, sr2=t.sr2;
+    final float[] pq=t.pq, px=t.px, py=t.py, pz=t.pz;
+    final float[] nq=t.nq, nx=t.nx, ny=t.ny, nz=t.nz;
+    final float[] bx=t.bx, by=t.by, bz=t.bz, bs=t.bs, qr2=t.qr2;
+    final int[] fi=t.first, cn=t.count, od=t.idx;
+    final int[] st=t.stack(thread);
+    float d2,w,h,q;
+    float x1,y1,z1,c1,r1,rn;
+    float dx,dy,dz,fx,fy,fz;
+    float fm=inv?-fmult:fmult, t2=theta*theta, dg=3*bs[0]*bs[0];
+    int nd,k,sp,i3;
+    boolean near,zi;
+    Point p;
+    // Sleeping points of the buffer only gather the forces of awake points, which may wake
+    // them, so they skip the sleeping points of leaves and the nodes whose points all sleep.
+    // Distant nodes that partly sleep still count as a whole.
+    final byte[] zp=t.zs, za=t.za;
+    for (int j=start;j<end;j+=stride) {
+      c1=sc[j];
+      if (c1==0) continue;
+      zi=zp[j]!=0;
+      x1=sx[j];
+      y1=sy[j];
+      z1=sz[j];
+      r1=sr2[j];
+      // Only points whose range does not cover the whole tree can skip nodes.
+      near=r1<dg;
+      fx=fy=fz=0;
+      st[0]=0;
+      sp=1;
+      while (sp>0) {
+        nd=st[--sp];
+        if (zi && za[nd]!=0) continue;
+        w=bs[nd];
+        if (near) {
+          // Skip nodes whose cube is out of range of the point and of all its points.
+          dx=bx[nd]-x1;
+          dy=by[nd]-y1;
+          dz=bz[nd]-z1;
+          dx=dx>0?dx:(dx+w<0?-dx-w:0);
+          dy=dy>0?dy:(dy+w<0?-dy-w:0);
+          dz=dz>0?dz:(dz+w<0?-dz-w:0);
+          d2=dx*dx+dy*dy+dz*dz;
+          if (d2>=r1 && d2>=qr2[nd]) continue;
+        }
+        k=cn[nd];
+        if (k<0) {
+          for (int m=fi[nd],e=m-k;m<e;m++) {
+            if (m==j || (zi && zp[m]!=0)) continue;
+            dx=sx[m]-x1;
+            dy=sy[m]-y1;
+            dz=sz[m]-z1;
+            d2=dx*dx+dy*dy+dz*dz;
+            if (d2<r1||d2<sr2[m]) {
+              d2=fm*(c1*sc[m])/(d2+bias);
+              fx+=dx*d2;
+              fy+=dy*d2;
+              fz+=dz*d2;
+            }
+          }
+          continue;
+        }
+        // Open the node unless the point is outside its cube and the cube looks
+        // smaller than theta from the point.
+        h=w*.5f;
+        dx=bx[nd]+h-x1;
+        dy=by[nd]+h-y1;
+        dz=bz[nd]+h-z1;
+        if (w*w>=t2*(dx*dx+dy*dy+dz*dz) || (dx>=-h&&dx<=h&&dy>=-h&&dy<=h&&dz>=-h&&dz<=h)) {
+          for (int m=fi[nd],e=m+k;m<e;m++) st[sp++]=m;
+          continue;
+        }
+        rn=qr2[nd];
+        if ((q=pq[nd])!=0) {
+          dx=px[nd]-x1;
+          dy=py[nd]-y1;
+          dz=pz[nd]-z1;
+          d2=dx*dx+dy*dy+dz*dz;
+          if (d2<r1||d2<rn) {
+            d2=fm*(c1*q)/(d2+bias);
+            fx+=dx*d2;
+            fy+=dy*d2;
+            fz+=dz*d2;
+          }
+        }
+        if ((q=nq[nd])!=0) {
+          dx=nx[nd]-x1;
+          dy=ny[nd]-y1;
+          dz=nz[nd]-z1;
+          d2=dx*dx+dy*dy+dz*dz;
+          if (d2<r1||d2<rn) {
+            d2=fm*(c1*q)/(d2+bias);
+            fx+=dx*d2;
+            fy+=dy*d2;
+            fz+=dz*d2;
+          }
+        }
+      }
+      if (f!=null) {
+        i3=3*od[j];
+        f[i3]+=fx;
+        f[i3+1]+=fy;
+        f[i3+2]+=fz;
+      } else {
+        p=points[od[j]];
+        p.sforce.x+=fx;
+        p.sforce.y+=fy;
+        p.sforce.z+=fz;
+      }
+    }
+  }
+  
+  // Deterministic variant. Forces go to the thread's buffer, 3 floats per point index.
+  private final void bStepPoints(Point[] points, float[] a, int start, int end, int stride) {
+    float d2;
+    Point p1,p2;
+    float x1,y1,z1,c1,r1;
+    float dx,dy,dz,lx,ly,lz;
+    float fm=inv?-fmult:fmult;
+    int i3,k3;
+    for (int i=start,j=points.length;i<end;i+=stride) {
+      p1=points[i];
+      x1=p1.x;
+      y1=p1.y;
+      z1=p1.z;
+      c1=p1.c;
+      r1=p1.r2;
+      i3=3*i;
+      for (int k=i+1;k<j;k++) {
+        p2=points[k];
+        dx=p2.x-x1;
+        dy=p2.y-y1;
+        dz=p2.z-z1;
+        d2=dx*dx+dy*dy+dz*dz;
+        if (d2<r1||d2<p2.r2) {
+          d2=fm*(c1*p2.c)/(d2+bias);
+          lx=dx*d2;
+          ly=dy*d2;
+          lz=dz*d2;
+          k3=3*k;
+          a[i3]+=lx;
+          a[i3+1]+=ly;
+          a[i3+2]+=lz;
+          a[k3]-=lx;
+          a[k3+1]-=ly;
+          a[k3+2]-=lz;
+        }
+      }
+    }
+  }
+  
+  // Grid variant. Visits the 27 cells around each point, and only the points with
+  // a higher index so that every pair is handled once, as in the full loop.
+  private final void gStepPoints(Point[] points, int start, int end, int stride) {
+    float d2;
+    Point p1,p2;
+    float x1,y1,z1,c1,r1;
+    float dx,dy,dz,lx,ly,lz;
+    float fm=inv?-fmult:fmult;
+    final SpatialGrid g=sg;
+    final int[] st=g.start, od=g.order, cl=g.cell;
+    final int nx=g.nx, ny=g.ny, nz=g.nz, nxy=g.nxy;
+    int c,cx,cy,cz,x0,x1c,y0,y1c,z0,z1c,cc,k;
+    for (int i=start,j=points.length;i<end;i+=stride) {
+      p1=points[i];
+      x1=p1.x;
+      y1=p1.y;
+      z1=p1.z;
+      c1=p1.c;
+      r1=p1.r2;
+      c=cl[i];
+      cz=c/nxy;
+      cy=(c-cz*nxy)/nx;
+      cx=c-cz*nxy-cy*nx;
+      x0=cx>0?cx-1:0; x1c=cx<nx-1?cx+1:cx;
+      y0=cy>0?cy-1:0; y1c=cy<ny-1?cy+1:cy;
+      z0=cz>0?cz-1:0; z1c=cz<nz-1?cz+1:cz;
+      for (int zz=z0;zz<=z1c;zz++) {
+        for (int yy=y0;yy<=y1c;yy++) {
+          cc=yy*nx+zz*nxy;
+          for (int m=st[cc+x0],e=st[cc+x1c+1];m<e;m++) {
+            k=od[m];
+            if (k<=i) continue;
+            p2=points[k];
+            dx=p2.x-x1;
+            dy=p2.y-y1;
+            dz=p2.z-z1;
+            d2=dx*dx+dy*dy+dz*dz;
+            if (d2<r1||d2<p2.r2) {
+              d2=fm*(c1*p2.c)/(d2+bias);
+              lx=dx*d2;
+              ly=dy*d2;
+              lz=dz*d2;
+              p1.sforce.x+=lx;
+              p1.sforce.y+=ly;
+              p1.sforce.z+=lz;
+              p2.sforce.x-=lx;
+              p2.sforce.y-=ly;
+              p2.sforce.z-=lz;
+            }
+          }
+        }
+      }
+    }
+  }
+  
+  // Deterministic grid variant.
+  private final void gbStepPoints(Point[] points, float[] a, int start, int end, int stride) {
+    float d2;
+    Point p1,p2;
+    float x1,y1,z1,c1,r1;
+    float dx,dy,dz,lx,ly,lz;
+    float fm=inv?-fmult:fmult;
+    final SpatialGrid g=sg;
+    final int[] st=g.start, od=g.order, cl=g.cell;
+    final int nx=g.nx, ny=g.ny, nz=g.nz, nxy=g.nxy;
+    int c,cx,cy,cz,x0,x1c,y0,y1c,z0,z1c,cc,k,i3,k3;
+    for (int i=start,j=points.length;i<end;i+=stride) {
+      p1=points[i];
+      x1=p1.x;
+      y1=p1.y;
+      z1=p1.z;
+      c1=p1.c;
+      r1=p1.r2;
+      i3=3*i;
+      c=cl[i];
+      cz=c/nxy;
+      cy=(c-cz*nxy)/nx;
+      cx=c-cz*nxy-cy*nx;
+      x0=cx>0?cx-1:0; x1c=cx<nx-1?cx+1:cx;
+      y0=cy>0?cy-1:0; y1c=cy<ny-1?cy+1:cy;
+      z0=cz>0?cz-1:0; z1c=cz<nz-1?cz+1:cz;
+      for (int zz=z0;zz<=z1c;zz++) {
+        for (int yy=y0;yy<=y1c;yy++) {
+          cc=yy*nx+zz*nxy;
+          for (int m=st[cc+x0],e=st[cc+x1c+1];m<e;m++) {
+            k=od[m];
+            if (k<=i) continue;
+            p2=points[k];
+            dx=p2.x-x1;
+            dy=p2.y-y1;
+            dz=p2.z-z1;
+            d2=dx*dx+dy*dy+dz*dz;
+            if (d2<r1||d2<p2.r2) {
+              d2=fm*(c1*p2.c)/(d2+bias);
+              lx=dx*d2;
+              ly=dy*d2;
+              lz=dz*d2;
+              k3=3*k;
+              a[i3]+=lx;
+              a[i3+1]+=ly;
+              a[i3+2]+=lz;
+              a[k3]-=lx;
+              a[k3+1]-=ly;
+              a[k3+2]-=lz;
+            }
+          }
+        }
+      }
+    }
+  }
+  
+  // Neighbour list variant. Forces go to a, 3 floats per point index, or to the points if a is null.
+  private final void nStepPoints(Point[] points, float[] a, int start, int end, int stride) {
+    float d2;
+    Point p1,p2;
+    float x1,y1,z1,c1,r1;
+    float dx,dy,dz,lx,ly,lz;
+    float fm=inv?-fmult:fmult;
+    final int[] st=nl.start, nb=nl.list;
+    int k,i3,k3;
+    for (int i=start;i<end;i+=stride) {
+      p1=points[i];
+      x1=p1.x;
+      y1=p1.y;
+      z1=p1.z;
+      c1=p1.c;
+      r1=p1.r2;
+      i3=3*i;
+      for (int m=st[i],e=st[i+1];m<e;m++) {
+        k=nb[m];
+        p2=points[k];
+        dx=p2.x-x1;
+        dy=p2.y-y1;
+        dz=p2.z-z1;
+        d2=dx*dx+dy*dy+dz*dz;
+        if (d2<r1||d2<p2.r2) {
+          d2=fm*(c1*p2.c)/(d2+bias);
+          lx=dx*d2;
+          ly=dy*d2;
+          lz=dz*d2;
+          if (a==null) {
+            p1.sforce.x+=lx;
+            p1.sforce.y+=ly;
+            p1.sforce.z+=lz;
+            p2.sforce.x-=lx;
+            p2.sforce.y-=ly;
+            p2.sforce.z-=lz;
+          } else {
+            k3=3*k;
+            a[i3]+=lx;
+            a[i3+1]+=ly;
+            a[i3+2]+=lz;
+            a[k3]-=lx;
+            a[k3+1]-=ly;
+            a[k3+2]-=lz;
+          }
+        }
+      }
+    }
+  }
+  
+  private final void stepPoints(Point[] points, int start, int end, int stride) {
+    float d2;
+    Point p1,p2;
+    float x1,y1,z1,c1,r1;
+    float dx,dy,dz,lx,ly,lz;
+    for (int i=start,j=points.length;i<end;i+=stride) {
+      p1=points[i];
+      x1=p1.x;
+      y1=p1.y;
+      z1=p1.z;
+      c1=p1.c;
+      r1=p1.r2;
+      for (int k=i+1;k<j;k++) {
+        p2=points[k];
+        dx=p2.x-x1;
+        dy=p2.y-y1;
+        dz=p2.z-z1;
+        d2=dx*dx+dy*dy+dz*dz;
+        if (d2<r1||d2<p2.r2) {
+          d2=fmult*(c1*p2.c)/(d2+bias);
+          lx=dx*d2;
+          ly=dy*d2;
+          lz=dz*d2;
+          p1.sforce.x+=lx;
+          p1.sforce.y+=ly;
+          p1.sforce.z+=lz;
+          p2.sforce.x-=lx;
+          p2.sforce.y-=ly;
+          p2.sforce.z-=lz;
+        }
+      }
+    }
+  }
+  
+  private final void stepPointsi(Point[] points, int start, int end, int stride) {
+    float d2;
+    Point p1,p2;
+    float x1,y1,z1,c1,r1;
+    float dx,dy,dz,lx,ly,lz;
+    for (int i=start,j=points.length;i<end;i+=stride) {
+      p1=points[i];
+      x1=p1.x;
+      y1=p1.y;
+      z1=p1.z;
+      c1=p1.c;
+      r1=p1.r2;
+      for (int k=i+1;k<j;k++) {
+        p2=points[k];
+        dx=p2.x-x1;
+        dy=p2.y-y1;
+        dz=p2.z-z1;
+        d2=dx*dx+dy*dy+dz*dz;
+        if (d2<r1||d2<p2.r2) {
+          d2=fmult*(c1*p2.c)/(d2+bias);
+          lx=dx*d2;
+          ly=dy*d2;
+          lz=dz*d2;
+          p1.sforce.x-=lx;
+          p1.sforce.y-=ly;
+          p1.sforce.z-=lz;
+          p2.sforce.x+=lx;
+          p2.sforce.y+=ly;
+          p2.sforce.z+=lz;
+        }
+      }
+    }
+  }
+  
+  // Buffer variant. Reads the buffer arrays and writes to f, 3 floats per point index.
+  private final void aStepPoints(PointBuffer b, float[] f, int start, int end, int stride) {
+    final float[] ps=b.pos, c=b.c, r2=b.r2;
+    float d2;
+    float x1,y1,z1,c1,r1;
+    float dx,dy,dz,lx,ly,lz;
+    float fm=inv?-fmult:fmult;
+    // While points sleep, rows are the awake points of the active list, and also pair
+    // with the sleeping points before them, whose rows are skipped.
+    final int[] act=b.sleeping()?b.active:null;
+    final byte[] zs=act!=null?b.sl:null;
+    int i3,k3;
+    for (int q=start,i,j=b.n;q<end;q+=stride) {
+      i=act!=null?act[q]:q;
+      i3=3*i;
+      x1=ps[i3];
+      y1=ps[i3+1];
+      z1=ps[i3+2];
+      c1=c[i];
+      r1=r2[i];
+      for (int k=zs!=null?0:i+1;k<j;k++) {
+        if (k<=i && (k==i || zs[k]==0)) continue;
+        k3=3*k;
+        dx=ps[k3]-x1;
+        dy=ps[k3+1]-y1;
+        dz=ps[k3+2]-z1;
+        d2=dx*dx+dy*dy+dz*dz;
+        if (d2<r1||d2<r2[k]) {
+          d2=fm*(c1*c[k])/(d2+bias);
+          lx=dx*d2;
+          ly=dy*d2;
+          lz=dz*d2;
+          f[i3]+=lx;
+          f[i3+1]+=ly;
+          f[i3+2]+=lz;
+          f[k3]-=lx;
+          f[k3+1]-=ly;
+          f[k3+2]-=lz;
+        }
+      }
+    }
+  }
+  
+  // Buffer grid variant.
+  private final void gaStepPoints(PointBuffer b, float[] f, int start, int end, int stride) {
+    final float[] ps=b.pos, ch=b.c, r2=b.r2;
+    float d2;
+    float x1,y1,z1,c1,r1;
+    float dx,dy,dz,lx,ly,lz;
+    float fm=inv?-fmult:fmult;
+    final SpatialGrid g=sg;
+    final int[] st=g.start, od=g.order, cl=g.cell;
+    final int nx=g.nx, ny=g.ny, nz=g.nz, nxy=g.nxy;
+    final int[] act=b.sleeping()?b.active:null;
+    final byte[] zs=act!=null?b.sl:null;
+    int c,cx,cy,cz,x0,x1c,y0,y1c,z0,z1c,cc,k,i3,k3;
+    for (int q=start,i,j=b.n;q<end;q+=stride) {
+      i=act!=null?act[q]:q;
+      i3=3*i;
+      x1=ps[i3];
+      y1=ps[i3+1];
+      z1=ps[i3+2];
+      c1=ch[i];
+      r1=r2[i];
+      c=cl[i];
+      cz=c/nxy;
+      cy=(c-cz*nxy)/nx;
+      cx=c-cz*nxy-cy*nx;
+      x0=cx>0?cx-1:0; x1c=cx<nx-1?cx+1:cx;
+      y0=cy>0?cy-1:0; y1c=cy<ny-1?cy+1:cy;
+      z0=cz>0?cz-1:0; z1c=cz<nz-1?cz+1:cz;
+      for (int zz=z0;zz<=z1c;zz++) {
+        for (int yy=y0;yy<=y1c;yy++) {
+          cc=yy*nx+zz*nxy;
+          for (int m=st[cc+x0],e=st[cc+x1c+1];m<e;m++) {
+            k=od[m];
+            if (k<=i && (zs==null || k==i || zs[k]==0)) continue;
+            k3=3*k;
+            dx=ps[k3]-x1;
+            dy=ps[k3+1]-y1;
+            dz=ps[k3+2]-z1;
+            d2=dx*dx+dy*dy+dz*dz;
+            if (d2<r1||d2<r2[k]) {
+              d2=fm*(c1*ch[k])/(d2+bias);
+              lx=dx*d2;
+              ly=dy*d2;
+              lz=dz*d2;
+              f[i3]+=lx;
+              f[i3+1]+=ly;
+              f[i3+2]+=lz;
+              f[k3]-=lx;
+              f[k3+1]-=ly;
+              f[k3+2]-=lz;
+            }
+          }
+        }
+      }
+    }
+  }
+  
+  // Buffer neighbour list variant. Rows run over all points, skipping the pairs where
+  // both points sleep.
+  private final void naStepPoints(PointBuffer b, float[] f, int start, int end, int stride) {
+    final float[] ps=b.pos, ch=b.c, r2=b.r2;
+    float d2;
+    float x1,y1,z1,c1,r1;
+    float dx,dy,dz,lx,ly,lz;
+    float fm=inv?-fmult:fmult;
+    final int[] st=nl.start, nb=nl.list;
+    final byte[] zs=b.sleeping()?b.sl:null;
+    boolean zi;
+    int k,i3,k3;
+    for (int i=start;i<end;i+=stride) {
+      i3=3*i;
+      x1=ps[i3];
+      y1=ps[i3+1];
+      z1=ps[i3+2];
+      c1=ch[i];
+      r1=r2[i];
+      zi=zs!=null && zs[i]!=0;
+      for (int m=st[i],e=st[i+1];m<e;m++) {
+        k=nb[m];
+        if (zi && zs[k]!=0) continue;
+        k3=3*k;
+        dx=ps[k3]-x1;
+        dy=ps[k3+1]-y1;
+        dz=ps[k3+2]-z1;
+        d2=dx*dx+dy*dy+dz*dz;
+        if (d2<r1||d2<r2[k]) {
+          d2=fm*(c1*ch[k])/(d2+bias);
+          lx=dx*d2;
+          ly=dy*d2;
+          lz=dz*d2;
+          f[i3]+=lx;
+          f[i3+1]+=ly;
+          f[i3+2]+=lz;
+          f[k3]-=lx;
+          f[k3+1]-=ly;
+          f[k3+2]-=lz;
+        }
+      }
+    }
+  }
+}
\ No newline at end of file
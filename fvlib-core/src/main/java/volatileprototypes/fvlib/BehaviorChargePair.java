@@ -23,7 +23,6 @@
 
 package volatileprototypes.fvlib;
 
-import processing.core.*;
 import java.util.*;
 import java.util.concurrent.*;
 
@@ -39,6 +38,10 @@ private Point[] points2 = new Point[0];   // the two points arrays
 
 private float bias=.001f, fmult=1;       // Bias limits the maximum force (at zero distance).
 private boolean inv=false;				 // Option for inverting attract/repel forces.
+private boolean grid=false;				 // Option for using the cell grid broadphase over the 2nd array.
+private final SpatialGrid sg=new SpatialGrid();	// Broadphase grid of the 2nd array.
+private boolean empty=true;				 // No point has a range, so nothing interacts.
+private static final int TILE=256;		 // Points per block of each array.
 
 /**
  * Constructor, generates a new class instance.
@@ -168,6 +171,32 @@ private boolean inv=false;				 // Option for inverting attract/repel forces.
 	return(this);
   }
 
+/**
+ * Sets whether to use a uniform grid broadphase over the 2nd array.
+ *
+ * With the grid enabled, the points of the 2nd array are binned into cells as large as
+ * the largest Point range of both arrays before each step, and each point of the 1st
+ * array is only checked against the points in neighbouring cells. This is much faster
+ * when ranges are small compared to the extent of the point clouds.
+ *
+ * @param gin A boolean representing whether to use the grid.
+ *
+ * @return The current object.
+ */
+  public BehaviorChargePair setGrid(boolean gin) {
+    grid=gin;
+    return(this);
+  }
+
+/**
+ * Returns whether the grid broadphase is used.
+ *
+ * @return The grid flag.
+ */
+  public boolean getGrid() {
+    return(grid);
+  }
+
 /**
  *  Get the current 2nd point array.
  *
@@ -195,76 +224,195 @@ private boolean inv=false;				 // Option for inverting attract/repel forces.
 	return(fmult);
   }
   
+  // Both sets are cut into blocks of TILE points and every (A-block, B-block) pair is a
+  // work item, in A-block order, so that a thread keeps its A-block in cache while it
+  // sweeps over B. With the grid, work items are points of the first set instead.
+  // Forces go to the thread's buffer, 3 floats per point index with the second set
+  // after the first, and are summed into the points by reduceFunction().
+  @Override
+  protected final int workSize() {
+    if (grid) return(points.length);
+    return(tiles(points.length)*tiles(points2.length));
+  }
+  
+  @Override
+  protected final Partition partition() {
+    return(Partition.CONTIGUOUS);
+  }
+  
+  // The buffers are summed in a second pass, or by the Solver in deterministic mode.
+  @Override
+  protected final int passes() {
+    return(getDeterministic()?1:2);
+  }
+  
   @Override
-  protected final void stepFunction(int step, int offset) {
-    if (!inv) {stepPoints(points, points2, step, offset);} else {stepPointsi(points, points2, step, offset);}
+  protected final void passFunction(int pass, int step, int offset) {
+    if (pass==0) {run(step,offset);} else {reduceFunction(step,offset);}
   }
   
-  private final void stepPoints(Point[] points, Point[] points2, int step, int offset) {
+  @Override
+  protected final void preStep() {
+    super.preStep();
+    if (!grid) return;
+    float rm=0;
+    for (Point p : points) {
+      if (p.r>rm) rm=p.r;
+    }
+    for (Point p : points2) {
+      if (p.r>rm) rm=p.r;
+    }
+    empty=!(rm>0);
+    if (!empty) sg.build(points2, rm);
+  }
+  
+  @Override
+  protected final void stepRange(int start, int end, int stride, int thread) {
+    int n1=points.length, n2=points2.length;
+    if (n1==0 || n2==0) return;
+    float[] a=accBuffer(thread, n1+n2);
+    if (grid) {
+      if (!empty) gStepPoints(points, points2, a, start, end, stride);
+      return;
+    }
+    for (int t=start,tb=tiles(n2),i,k;t<end;t+=stride) {
+      i=(t/tb)*TILE;
+      k=(t%tb)*TILE;
+      stepPoints(points, points2, a, i, Math.min(i+TILE,n1), k, Math.min(k+TILE,n2));
+    }
+  }
+  
+  // Sums the thread buffers into both sets. Each thread takes a contiguous block of
+  // the combined index range and adds the buffers in thread order.
+  @Override
+  protected final void reduceFunction(int step, int offset) {
+    float[][] ac=acc;
+    int n1=points.length, n=n1+points2.length;
+    int s=(int)((long)n*offset/step), e=(int)((long)n*(offset+1)/step);
+    float fx,fy,fz;
+    float[] a;
+    Point p;
+    for (int i=s;i<e;i++) {
+      fx=fy=fz=0;
+      int i3=3*i;
+      for (int t=0;t<ac.length;t++) {
+        a=ac[t];
+        if (a==null || a.length<i3+3) continue;
+        fx+=a[i3];
+        fy+=a[i3+1];
+        fz+=a[i3+2];
+        a[i3]=a[i3+1]=a[i3+2]=0;
+      }
+      p=i<n1?points[i]:points2[i-n1];
+      p.sforce.x+=fx;
+      p.sforce.y+=fy;
+      p.sforce.z+=fz;
+    }
+  }
+  
+  private static final int tiles(int n) {
+    return((n+TILE-1)/TILE);
+  }
+  
+  // Pairs the points i0..i1 of the first set with k0..k1 of the second.
+  private final void stepPoints(Point[] points, Point[] points2, float[] a, int i0, int i1, int k0, int k1) {
     float d2;
     Point p1,p2;
     float x1,y1,z1,c1,r1;
-    float dx,dy,dz,lx,ly,lz;
-    for (int i=offset,j=points.length;i<j;i+=step) {
+    float dx,dy,dz,lx,ly,lz,ax,ay,az;
+    float fm=inv?-fmult:fmult;
+    int o=3*points.length, k3;
+    for (int i=i0;i<i1;i++) {
       p1=points[i];
       x1=p1.x;
       y1=p1.y;
       z1=p1.z;
       c1=p1.c;
       r1=p1.r2;
-      for (int k=offset,l=points2.length;k<l;k++) {
+      ax=ay=az=0;
+      for (int k=k0;k<k1;k++) {
         p2=points2[k];
         dx=p2.x-x1;
         dy=p2.y-y1;
         dz=p2.z-z1;
         d2=dx*dx+dy*dy+dz*dz;
         if (d2<r1||d2<p2.r2) {
-          d2=fmult*(c1*p2.c)/(d2+bias);
+          d2=fm*(c1*p2.c)/(d2+bias);
           lx=dx*d2;
           ly=dy*d2;
           lz=dz*d2;
-          p1.sforce.x+=lx;
-          p1.sforce.y+=ly;
-          p1.sforce.z+=lz;
-          p2.sforce.x-=lx;
-          p2.sforce.y-=ly;
-          p2.sforce.z-=lz;
+          ax+=lx;
+          ay+=ly;
+          az+=lz;
+          k3=o+3*k;
+          a[k3]-=lx;
+          a[k3+1]-=ly;
+          a[k3+2]-=lz;
         }
       }
+      a[3*i]+=ax;
+      a[3*i+1]+=ay;
+      a[3*i+2]+=az;
     }
   }
   
-  private final void stepPointsi(Point[] points, Point[] points2, int step, int offset) {
+  // Grid variant. Visits the cells of the second set around each point of the first.
+  // Points more than a cell outside the grid have nothing in range.
+  private final void gStepPoints(Point[] points, Point[] points2, float[] a, int start, int end, int stride) {
     float d2;
     Point p1,p2;
     float x1,y1,z1,c1,r1;
-    float dx,dy,dz,lx,ly,lz;
-    for (int i=offset,j=points.length;i<j;i+=step) {
+    float dx,dy,dz,lx,ly,lz,ax,ay,az;
+    float fm=inv?-fmult:fmult;
+    final SpatialGrid g=sg;
+    final int[] st=g.start, od=g.order;
+    final int nx=g.nx, ny=g.ny, nz=g.nz, nxy=g.nxy;
+    final float ox=g.ox, oy=g.oy, oz=g.oz, ci=g.inv;
+    int cx,cy,cz,x0,x1c,y0,y1c,z0,z1c,cc,k,k3,o=3*points.length;
+    for (int i=start;i<end;i+=stride) {
       p1=points[i];
       x1=p1.x;
       y1=p1.y;
       z1=p1.z;
+      cx=(int)Math.floor((x1-ox)*ci);
+      cy=(int)Math.floor((y1-oy)*ci);
+      cz=(int)Math.floor((z1-oz)*ci);
+      if (cx<-1||cx>nx||cy<-1||cy>ny||cz<-1||cz>nz) continue;
       c1=p1.c;
       r1=p1.r2;
-      for (int k=offset,l=points2.length;k<l;k++) {
-        p2=points2[k];
-        dx=p2.x-x1;
-        dy=p2.y-y1;
-        dz=p2.z-z1;
-        d2=dx*dx+dy*dy+dz*dz;
-        if (d2<r1||d2<p2.r2) {
-          d2=fmult*(c1*p2.c)/(d2+bias);
-          lx=dx*d2;
-          ly=dy*d2;
-          lz=dz*d2;
-          p1.sforce.x-=lx;
-          p1.sforce.y-=ly;
-          p1.sforce.z-=lz;
-          p2.sforce.x+=lx;
-          p2.sforce.y+=ly;
-          p2.sforce.z+=lz;
+      x0=cx>0?cx-1:0; x1c=cx<nx-1?cx+1:nx-1;
+      y0=cy>0?cy-1:0; y1c=cy<ny-1?cy+1:ny-1;
+      z0=cz>0?cz-1:0; z1c=cz<nz-1?cz+1:nz-1;
+      ax=ay=az=0;
+      for (int zz=z0;zz<=z1c;zz++) {
+        for (int yy=y0;yy<=y1c;yy++) {
+          cc=yy*nx+zz*nxy;
+          for (int m=st[cc+x0],e=st[cc+x1c+1];m<e;m++) {
+            k=od[m];
+            p2=points2[k];
+            dx=p2.x-x1;
+            dy=p2.y-y1;
+            dz=p2.z-z1;
+            d2=dx*dx+dy*dy+dz*dz;
+            if (d2<r1||d2<p2.r2) {
+              d2=fm*(c1*p2.c)/(d2+bias);
+              lx=dx*d2;
+              ly=dy*d2;
+              lz=dz*d2;
+              ax+=lx;
+              ay+=ly;
+              az+=lz;
+              k3=o+3*k;
+              a[k3]-=lx;
+              a[k3+1]-=ly;
+              a[k3+2]-=lz;
+            }
+          }
         }
       }
+      a[3*i]+=ax;
+      a[3*i+1]+=ay;
+      a[3*i+2]+=az;
     }
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,542 @@
+//  Copyright (c) 2010-2011, Ioannis (Yiannis) Chatzikonstantinou, ?All rights reserved.
+//  http://www.volatileprototypes.com
+// 
+//  Redistribution and use in source and binary forms, with or without modification, 
+//  are permitted provided that the following conditions are met:
+//  	- Redistributions of source code must retain the above copyright 
+//  notice, this list of conditions and the following disclaimer.
+//  	- Redistributions in binary form must reproduce the above copyright 
+//  notice, this list of conditions and the following disclaimer in the documentation 
+//  and/or other materials provided with the distribution.
+//  
+//  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY 
+//  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+//  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+//  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+//  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+//  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+//  PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+//  WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+//  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+//  OF SUCH DAMAGE.
+
+// Collides points with a set of static shapes: planes (solid behind the plane),
+// spheres, capsules, axis-aligned boxes and oriented boxes. A point within the margin
+// of a shape is moved out to it, and its old position is set so that its velocity
+// (position minus old position, as in IntegratorVerlet) loses the normal component
+// that enters the shape, scaled by the restitution, and part of the tangential one,
+// following Coulomb friction: the tangential speed is reduced by the friction times
+// the normal speed.
+//
+// Shapes are kept in flat arrays with their bounds. Points outside the bounds of all
+// bounded shapes only test the planes, and then only shapes whose bounds they are in
+// are tested exactly. Points are independent, so they run in contiguous blocks on the
+// solver threads, by default in the CONSTRAINTS phase of a World. Shapes must not be
+// added while stepping.
+
+package volatileprototypes.fvlib;
+
+import java.util.*;
+
+/**
+ * @author      Yiannis Chatzikonstantinou <contact@volatileprototypes.com>
+ * @version     0.5.9                                    
+ * @since       0.5.9          
+ */
+public final class BehaviorCollider extends Behavior {
+
+private static final int PLANE=0, SPHERE=1, CAPSULE=2, BOX=3, OBB=4;
+private static final int S=24;			// Floats per shape: bounds (6), then the parameters of its type.
+private int ns=0;						// Number of shapes.
+private int np=0;						// Number of planes.
+private int[] type=new int[4];			// Type of each shape.
+private float[] sh=new float[4*S];		// Bounds and parameters of each shape.
+private final float[] bb={Float.POSITIVE_INFINITY,Float.POSITIVE_INFINITY,Float.POSITIVE_INFINITY,
+						  Float.NEGATIVE_INFINITY,Float.NEGATIVE_INFINITY,Float.NEGATIVE_INFINITY};	// Bounds of all bounded shapes.
+private float friction=0;				// Coulomb friction coefficient.
+private float restitution=0;			// Share of the normal speed kept, reversed, on impact.
+private float margin=0;					// Distance kept between points and shapes.
+private float[][] q;					// Per-thread scratch: position, old position and contact normal.
+private int[] hits;						// Per-thread count of points in contact.
+private int contacts;					// Points in contact during the last step.
+
+/**
+ * Constructor, generates a new class instance.
+ *
+ */
+  public BehaviorCollider() {
+    super();
+  }
+  
+/**
+ * Constructor, generates a new class instance using a copy of the supplied Point ArrayList.
+ *
+ * @param pointsin An ArrayList containing Point objects with which the object's list will be initialized.
+ *
+ */
+  public BehaviorCollider(ArrayList<? extends Point> pointsin) {
+    super(pointsin);
+  }
+  
+/**
+ * Constructor, generates a new class instance using the supplied Point array.
+ *
+ * @param pointsin An array containing Point objects with which the object's array will be initialized.
+ *
+ */
+  public BehaviorCollider(Point[] pointsin) {
+    super(pointsin);
+  }
+  
+/**
+ * Constructor, generates a new class instance colliding the points of the supplied buffer.
+ *
+ * @param pbin A PointBuffer holding the points.
+ *
+ */
+  public BehaviorCollider(PointBuffer pbin) {
+    super(pbin);
+  }
+
+/**
+ * Adds a plane. Points are kept on the side the normal points to.
+ *
+ * @param p A point on the plane.
+ * @param n The normal of the plane.
+ *
+ * @return The current object.
+ */
+  public BehaviorCollider addPlane(Vec3 p, Vec3 n) {
+    float l=n.mag();
+    if (l==0) throw new IllegalArgumentException("Plane normal is zero.");
+    int o=add(PLANE);
+    set(o+6, p.x, p.y, p.z);
+    set(o+9, n.x/l, n.y/l, n.z/l);
+    np++;
+    return(this);
+  }
+
+/**
+ * Adds a sphere.
+ *
+ * @param c The centre.
+ * @param r The radius.
+ *
+ * @return The current object.
+ */
+  public BehaviorCollider addSphere(Vec3 c, float r) {
+    int o=add(SPHERE);
+    set(o+6, c.x, c.y, c.z);
+    sh[o+9]=r;
+    bounds(o, c.x-r, c.y-r, c.z-r, c.x+r, c.y+r, c.z+r);
+    return(this);
+  }
+
+/**
+ * Adds a capsule: the points within a radius of a segment.
+ *
+ * @param a The 1st end of the segment.
+ * @param b The 2nd end of the segment.
+ * @param r The radius.
+ *
+ * @return The current object.
+ */
+  public BehaviorCollider addCapsule(Vec3 a, Vec3 b, float r) {
+    int o=add(CAPSULE);
+    float dx=b.x-a.x, dy=b.y-a.y, dz=b.z-a.z, l2=dx*dx+dy*dy+dz*dz;
+    set(o+6, a.x, a.y, a.z);
+    set(o+9, dx, dy, dz);
+    sh[o+12]=r;
+    sh[o+13]=l2>0?1/l2:0;
+    bounds(o, Math.min(a.x,b.x)-r, Math.min(a.y,b.y)-r, Math.min(a.z,b.z)-r,
+              Math.max(a.x,b.x)+r, Math.max(a.y,b.y)+r, Math.max(a.z,b.z)+r);
+    return(this);
+  }
+
+/**
+ * Adds an axis-aligned box.
+ *
+ * @param min The corner with the lowest coordinates.
+ * @param max The corner with the highest coordinates.
+ *
+ * @return The current object.
+ */
+  public BehaviorCollider addBox(Vec3 min, Vec3 max) {
+    int o=add(BOX);
+    set(o+6, min.x, min.y, min.z);
+    set(o+9, max.x, max.y, max.z);
+    bounds(o, min.x, min.y, min.z, max.x, max.y, max.z);
+    return(this);
+  }
+
+/**
+ * Adds an oriented box.
+ *
+ * The x axis of the box is the direction of ax, its y axis the part of ay normal to it,
+ * and its z axis their cross product.
+ *
+ * @param c The centre.
+ * @param h The half extents along the axes of the box.
+ * @param ax The x axis direction of the box.
+ * @param ay The y axis direction of the box.
+ *
+ * @return The current object.
+ */
+  public BehaviorCollider addBox(Vec3 c, Vec3 h, Vec3 ax, Vec3 ay) {
+    float l=ax.mag();
+    if (l==0) throw new IllegalArgumentException("Box axis is zero.");
+    float ux=ax.x/l, uy=ax.y/l, uz=ax.z/l, d=ay.x*ux+ay.y*uy+ay.z*uz;
+    float vx=ay.x-d*ux, vy=ay.y-d*uy, vz=ay.z-d*uz;
+    l=(float)Math.sqrt(vx*vx+vy*vy+vz*vz);
+    if (l==0) throw new IllegalArgumentException("Box axes are parallel.");
+    vx/=l; vy/=l; vz/=l;
+    float wx=uy*vz-uz*vy, wy=uz*vx-ux*vz, wz=ux*vy-uy*vx;
+    int o=add(OBB);
+    set(o+6, c.x, c.y, c.z);
+    set(o+9, ux, uy, uz);
+    set(o+12, vx, vy, vz);
+    set(o+15, wx, wy, wz);
+    set(o+18, h.x, h.y, h.z);
+    float ex=Math.abs(ux)*h.x+Math.abs(vx)*h.y+Math.abs(wx)*h.z;
+    float ey=Math.abs(uy)*h.x+Math.abs(vy)*h.y+Math.abs(wy)*h.z;
+    float ez=Math.abs(uz)*h.x+Math.abs(vz)*h.y+Math.abs(wz)*h.z;
+    bounds(o, c.x-ex, c.y-ey, c.z-ez, c.x+ex, c.y+ey, c.z+ez);
+    return(this);
+  }
+
+/**
+ * Removes all shapes.
+ *
+ * @return The current object.
+ */
+  public BehaviorCollider clear() {
+    ns=np=0;
+    bb[0]=bb[1]=bb[2]=Float.POSITIVE_INFINITY;
+    bb[3]=bb[4]=bb[5]=Float.NEGATIVE_INFINITY;
+    return(this);
+  }
+
+/**
+ *  Get the number of shapes.
+ *
+ * @return The number of shapes.
+ */
+  public int size() {
+  	return(ns);
+  }
+
+/**
+ * Sets the friction coefficient. On contact, the tangential speed of a point is reduced
+ * by the friction times its normal speed, down to 0.
+ *
+ * @param fin The friction coefficient, 0 for frictionless shapes.
+ *
+ * @return The current object.
+ */
+  public BehaviorCollider setFriction(float fin) {
+  	friction=fin;
+  	return(this);
+  }
+
+/**
+ *  Get the friction coefficient.
+ *
+ * @return The friction coefficient.
+ */
+  public float getFriction() {
+  	return(friction);
+  }
+
+/**
+ * Sets the restitution. On impact, the normal speed of a point is reversed and scaled by it.
+ *
+ * @param rin The restitution, 0 for no bounce and 1 for a fully elastic one.
+ *
+ * @return The current object.
+ */
+  public BehaviorCollider setRestitution(float rin) {
+  	restitution=rin;
+  	return(this);
+  }
+
+/**
+ *  Get the restitution.
+ *
+ * @return The restitution.
+ */
+  public float getRestitution() {
+  	return(restitution);
+  }
+
+/**
+ * Sets the margin, the distance points are kept from the surface of the shapes.
+ *
+ * @param min The margin.
+ *
+ * @return The current object.
+ */
+  public BehaviorCollider setMargin(float min) {
+  	margin=min;
+  	return(this);
+  }
+
+/**
+ *  Get the margin.
+ *
+ * @return The margin.
+ */
+  public float getMargin() {
+  	return(margin);
+  }
+
+/**
+ *  Get the number of points that were in contact with a shape during the last step.
+ *
+ * @return The number of points in contact.
+ */
+  public int getContacts() {
+  	return(contacts);
+  }
+  
+  // Appends a shape of type t with unbounded bounds, and returns its offset in sh.
+  private final int add(int t) {
+    if (ns==type.length) {
+      type=Arrays.copyOf(type, 2*ns);
+      sh=Arrays.copyOf(sh, 2*ns*S);
+    }
+    type[ns]=t;
+    int o=S*ns++;
+    Arrays.fill(sh, o, o+S, 0);
+    set(o, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
+    set(o+3, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY);
+    return(o);
+  }
+  
+  private final void set(int o, float x, float y, float z) {
+    sh[o]=x;
+    sh[o+1]=y;
+    sh[o+2]=z;
+  }
+  
+  // Sets the bounds of the shape at o, and grows the bounds of all bounded shapes.
+  private final void bounds(int o, float x0, float y0, float z0, float x1, float y1, float z1) {
+    set(o, x0, y0, z0);
+    set(o+3, x1, y1, z1);
+    bb[0]=Math.min(bb[0], x0);
+    bb[1]=Math.min(bb[1], y0);
+    bb[2]=Math.min(bb[2], z0);
+    bb[3]=Math.max(bb[3], x1);
+    bb[4]=Math.max(bb[4], y1);
+    bb[5]=Math.max(bb[5], z1);
+  }
+  
+  @Override
+  protected final World.Phase phase() {
+    return(World.Phase.CONSTRAINTS);
+  }
+  
+  @Override
+  protected final boolean pointLocal() {
+    return(true);
+  }
+  
+  @Override
+  protected final Partition partition() {
+    return(Partition.CONTIGUOUS);
+  }
+  
+  @Override
+  protected final boolean bufferPath() {
+    return(true);
+  }
+  
+  @Override
+  protected final void preStep() {
+    super.preStep();
+    int t=getThreads();
+    if (q==null || q.length<t) {
+      q=new float[t][9];
+      hits=new int[t];
+    }
+  }
+  
+  @Override
+  protected final void postStep() {
+    super.postStep();
+    int n=0;
+    for (int i=0;i<hits.length;i++) {
+      n+=hits[i];
+      hits[i]=0;
+    }
+    contacts=n;
+  }
+  
+  @Override
+  protected final void stepRange(int start, int end, int stride, int thread) {
+    if (ns==0) return;
+    if (pb!=null && pb.sleeping()) {
+      // Positions in the active list, a run of consecutive points at a time.
+      final int[] a=pb.active;
+      for (int i=start,j,k;i<end;i=j) {
+        j=pb.run(i,end,stride);
+        k=a[i];
+        aStepPoints(pb, k, stride==1?k+j-i:k+1, 1, thread);
+      }
+    } else if (pb!=null) {aStepPoints(pb, start, end, stride, thread);} else {stepPoints(points, start, end, stride, thread);}
+  }
+  
+  private final void stepPoints(Point[] points, int start, int end, int stride, int thread) {
+    final float[] s=q[thread];
+    Point p;
+    Vec3 o;
+    int n=0;
+    for (int i=start;i<end;i+=stride) {
+      p=points[i];
+      if (np==0 && outside(p.x, p.y, p.z)) continue;
+      o=p.old;
+      s[0]=p.x; s[1]=p.y; s[2]=p.z;
+      s[3]=o.x; s[4]=o.y; s[5]=o.z;
+      if (collide(s)) {
+        p.x=s[0]; p.y=s[1]; p.z=s[2];
+        o.x=s[3]; o.y=s[4]; o.z=s[5];
+        n++;
+      }
+    }
+    hits[thread]+=n;
+  }
+  
+  // Buffer variant.
+  private final void aStepPoints(PointBuffer b, int start, int end, int stride, int thread) {
+    final float[] ps=b.pos, ol=b.old, s=q[thread];
+    int n=0;
+    for (int i=start,i3=3*i,s3=3*stride;i<end;i+=stride,i3+=s3) {
+      if (np==0 && outside(ps[i3], ps[i3+1], ps[i3+2])) continue;
+      s[0]=ps[i3]; s[1]=ps[i3+1]; s[2]=ps[i3+2];
+      s[3]=ol[i3]; s[4]=ol[i3+1]; s[5]=ol[i3+2];
+      if (collide(s)) {
+        ps[i3]=s[0]; ps[i3+1]=s[1]; ps[i3+2]=s[2];
+        ol[i3]=s[3]; ol[i3+1]=s[4]; ol[i3+2]=s[5];
+        n++;
+      }
+    }
+    hits[thread]+=n;
+  }
+  
+  // Coarse test against the bounds of all bounded shapes, grown by the margin.
+  private final boolean outside(float x, float y, float z) {
+    final float m=margin;
+    return(x<bb[0]-m || y<bb[1]-m || z<bb[2]-m || x>bb[3]+m || y>bb[4]+m || z>bb[5]+m);
+  }
+  
+  // Collides the point with position s[0..2] and old position s[3..5] with every shape
+  // in turn, leaving each contact normal in s[6..8]. Returns whether it touched any.
+  private final boolean collide(float[] s) {
+    final float m=margin;
+    final boolean in=!outside(s[0], s[1], s[2]);
+    boolean hit=false;
+    float d;
+    for (int k=0,o=0;k<ns;k++,o+=S) {
+      if (type[k]!=PLANE) {
+        if (!in) continue;
+        if (s[0]<sh[o]-m || s[1]<sh[o+1]-m || s[2]<sh[o+2]-m || s[0]>sh[o+3]+m || s[1]>sh[o+4]+m || s[2]>sh[o+5]+m) continue;
+      }
+      d=distance(type[k], o, s);
+      if (d<m) {
+        resolve(s, m-d, friction, restitution);
+        hit=true;
+      }
+    }
+    return(hit);
+  }
+  
+  // Signed distance of point s[0..2] from the surface of the shape at o, negative inside.
+  // Leaves the outward normal at the nearest surface point in s[6..8].
+  private final float distance(int t, int o, float[] s) {
+    final float[] h=sh;
+    float x=s[0], y=s[1], z=s[2], dx, dy, dz, u, d;
+    switch (t) {
+      case PLANE:
+        s[6]=h[o+9]; s[7]=h[o+10]; s[8]=h[o+11];
+        return((x-h[o+6])*s[6]+(y-h[o+7])*s[7]+(z-h[o+8])*s[8]);
+      case SPHERE:
+        return(round(x-h[o+6], y-h[o+7], z-h[o+8], h[o+9], s));
+      case CAPSULE:
+        dx=x-h[o+6]; dy=y-h[o+7]; dz=z-h[o+8];
+        u=(dx*h[o+9]+dy*h[o+10]+dz*h[o+11])*h[o+13];
+        u=u<0?0:u>1?1:u;
+        return(round(dx-u*h[o+9], dy-u*h[o+10], dz-u*h[o+11], h[o+12], s));
+      case BOX:
+        return(box(x, y, z, h[o+6], h[o+7], h[o+8], h[o+9], h[o+10], h[o+11], s));
+      default:
+        // Into box coordinates, and the normal back.
+        dx=x-h[o+6]; dy=y-h[o+7]; dz=z-h[o+8];
+        d=box(dx*h[o+9]+dy*h[o+10]+dz*h[o+11], dx*h[o+12]+dy*h[o+13]+dz*h[o+14], dx*h[o+15]+dy*h[o+16]+dz*h[o+17],
+              -h[o+18], -h[o+19], -h[o+20], h[o+18], h[o+19], h[o+20], s);
+        dx=s[6]; dy=s[7]; dz=s[8];
+        s[6]=dx*h[o+9]+dy*h[o+12]+dz*h[o+15];
+        s[7]=dx*h[o+10]+dy*h[o+13]+dz*h[o+16];
+        s[8]=dx*h[o+11]+dy*h[o+14]+dz*h[o+17];
+        return(d);
+    }
+  }
+  
+  // Signed distance from a sphere of radius r of the offset dx,dy,dz from its centre.
+  // At the centre, the normal is the x axis.
+  private static final float round(float dx, float dy, float dz, float r, float[] s) {
+    float l=(float)Math.sqrt(dx*dx+dy*dy+dz*dz);
+    if (l>0) {
+      s[6]=dx/l; s[7]=dy/l; s[8]=dz/l;
+    } else {
+      s[6]=1; s[7]=s[8]=0;
+    }
+    return(l-r);
+  }
+  
+  // Signed distance from the box x0..x1, y0..y1, z0..z1. Outside it is the distance to the
+  // nearest point of the box, inside the distance to the nearest face.
+  private static final float box(float x, float y, float z, float x0, float y0, float z0, float x1, float y1, float z1, float[] s) {
+    float dx=x<x0?x-x0:x>x1?x-x1:0;
+    float dy=y<y0?y-y0:y>y1?y-y1:0;
+    float dz=z<z0?z-z0:z>z1?z-z1:0;
+    float l=dx*dx+dy*dy+dz*dz;
+    if (l>0) {
+      l=(float)Math.sqrt(l);
+      s[6]=dx/l; s[7]=dy/l; s[8]=dz/l;
+      return(l);
+    }
+    float e=x-x0, t;
+    s[6]=-1; s[7]=s[8]=0;
+    if ((t=x1-x)<e) {e=t; s[6]=1;}
+    if ((t=y-y0)<e) {e=t; s[6]=0; s[7]=-1;}
+    if ((t=y1-y)<e) {e=t; s[6]=0; s[7]=1;}
+    if ((t=z-z0)<e) {e=t; s[6]=s[7]=0; s[8]=-1;}
+    if ((t=z1-z)<e) {e=t; s[6]=s[7]=0; s[8]=1;}
+    return(-e);
+  }
+  
+  // Moves the point with position s[0..2] and old position s[3..5] out along the normal
+  // s[6..8] by pen, and sets the old position so that the velocity loses its normal
+  // component into the shape, times the restitution, and part of its tangential one.
+  // Also used by the other colliders.
+  static final void resolve(float[] s, float pen, float friction, float restitution) {
+    float nx=s[6], ny=s[7], nz=s[8];
+    float vx=s[0]-s[3], vy=s[1]-s[4], vz=s[2]-s[5];
+    float vn=vx*nx+vy*ny+vz*nz;
+    s[0]+=nx*pen;
+    s[1]+=ny*pen;
+    s[2]+=nz*pen;
+    if (vn<0) {
+      vx-=vn*nx;
+      vy-=vn*ny;
+      vz-=vn*nz;
+      float vt=(float)Math.sqrt(vx*vx+vy*vy+vz*vz), k=vt>0?Math.max(0, 1+friction*vn/vt):0;
+      vn*=-restitution;
+      vx=vx*k+vn*nx;
+      vy=vy*k+vn*ny;
+      vz=vz*k+vn*nz;
+    }
+    s[3]=s[0]-vx;
+    s[4]=s[1]-vy;
+    s[5]=s[2]-vz;
+  }
+}
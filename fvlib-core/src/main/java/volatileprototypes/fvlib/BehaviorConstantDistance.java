@@ -0,0 +1,506 @@
+//  Copyright (c) 2010-2011, Ioannis (Yiannis) Chatzikonstantinou, ?All rights reserved.
+//  http://www.volatileprototypes.com
+// 
+//  Redistribution and use in source and binary forms, with or without modification, 
+//  are permitted provided that the following conditions are met:
+//  	- Redistributions of source code must retain the above copyright 
+//  notice, this list of conditions and the following disclaimer.
+//  	- Redistributions in binary form must reproduce the above copyright 
+//  notice, this list of conditions and the following disclaimer in the documentation 
+//  and/or other materials provided with the distribution.
+//  
+//  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY 
+//  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+//  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+//  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+//  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+//  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+//  PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+//  WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+//  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+//  OF SUCH DAMAGE.
+
+// This library uses portions of code and examples from Thomas Jakobsen's
+// paper "Advanced Character Physics".
+
+package volatileprototypes.fvlib;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * @author      Yiannis Chatzikonstantinou <contact@volatileprototypes.com>
+ * @version     0.5.9                                    
+ * @since       0.4          
+ */
+public final class BehaviorConstantDistance extends Behavior {
+
+private boolean fast=false;		// Option for fast/accurate spring solver.
+private float C = 1.00f;
+private float S = 0.25f;
+private float R = 1.00f, R2 = R*R;
+private boolean grid=false;				// Option for using the cell grid broadphase.
+private float skin=.1f;					// Extra cell size, as a share of the range.
+private final SpatialGrid sg=new SpatialGrid();	// Broadphase grid, sized from the range and skin.
+private float[] bp;						// Positions of the points when the grid was built.
+private Point[] bpts;					// Points the grid was built for.
+private float bs=-1;					// Cell size the grid was built with.
+private NeighborList nl;				// Neighbour list to use instead of the grid, if set.
+  
+/**
+ * Constructor, generates a new class instance.
+ *
+ */
+  public BehaviorConstantDistance() {
+    super();
+  }
+  
+/**
+ * Constructor, generates a new class instance using a copy of the supplied Point ArrayList.
+ *
+ * @param pointsin An ArrayList containing Point objects with which the object's list will be initialized.
+ *
+ */
+  public BehaviorConstantDistance(ArrayList<? extends Point> pointsin) {
+    super(pointsin);
+  }
+  
+/**
+ * Constructor, generates a new class instance using the supplied Point array.
+ *
+ * @param pointsin An array containing Point objects with which the object's array will be initialized.
+ *
+ */
+  public BehaviorConstantDistance(Point[] pointsin) {
+    super(pointsin);
+  }
+
+/**
+ * Sets the rest length, the length at which points exert no force between each other.
+ *
+ * @param cin A float representing the new rest distance value.
+ *
+ * @return The current object.
+ */
+  public BehaviorConstantDistance setC(float cin) {
+	C = cin;
+	return(this);
+  }
+
+/**
+ * Sets the stiffness of the virtual spring used to keep object distance.
+ *
+ * The stiffness of the virtual springs used to keep the object distance in this
+ * behavior is an float value between 0.0 and 0.5, with 0.5 being the stiffest.
+ * Be aware that high values may easily cause instability of the physics system.
+ *
+ * @param sin A float representing the new stiffness value.
+ *
+ * @return The current object.
+ */
+  public BehaviorConstantDistance setS(float sin) {
+	S = sin;
+	return(this);
+  }
+  
+/**
+ * Sets the maximum range below which objects will interact.
+ *
+ * @param rin A float representing the new range.
+ *
+ * @return The current object.
+ */
+  public BehaviorConstantDistance setRange(float rin) {
+	R = rin;
+	R2 = R * R;
+	return(this);
+  }
+
+/**
+ * Returns the rest length of the virtual springs.
+ *
+ * @return The rest length value.
+ */
+  public float getC() {
+	return(C);
+  }
+
+/**
+ * Returns the stiffness of the virtual springs.
+ *
+ * @return The stiffness value.
+ */
+  public float getS() {
+	return(S);
+  }
+
+/**
+ * Returns the range value.
+ *
+ * @return The range value.
+ */
+  public float getRange() {
+	return(R);
+  }
+
+/**
+ * Sets whether to use a faster solver or the normal one.
+ *
+ * In fvlib, a fast solver is implemented for spring interactions that uses just one Newton iteration to approximate
+ * the square root of the squared length between points using the rest length as reference. The faster solver reduces precision but increases
+ * simulation speed noticeably.
+ *
+ * @param fin A boolean representing whether to use fast sqrt.
+ *
+ * @return The current object.
+ */
+  public final BehaviorConstantDistance setFast(boolean fin) {
+  	fast=fin;
+  	return(this);
+  }
+
+/**
+ * Sets whether to use a uniform grid broadphase.
+ *
+ * With the grid enabled, points are binned into cells as large as the range plus a skin,
+ * and each point is only compared with the points in the 27 cells around it. The grid is
+ * kept across steps until a point has moved further than half the skin since it was built,
+ * as no pair can come in range from outside the neighbouring cells before that.
+ *
+ * @param gin A boolean representing whether to use the grid.
+ *
+ * @return The current object.
+ */
+  public final BehaviorConstantDistance setGrid(boolean gin) {
+  	grid=gin;
+  	return(this);
+  }
+
+/**
+ * Returns whether the grid broadphase is used.
+ *
+ * @return The grid flag.
+ */
+  public final boolean getGrid() {
+  	return(grid);
+  }
+
+/**
+ * Sets the skin of the grid, as a share of the range.
+ *
+ * A larger skin keeps the grid for more steps, but compares more pairs that are out of range.
+ * 0 rebuilds the grid on every step. The default is 0.1.
+ *
+ * @param sin A float representing the new skin.
+ *
+ * @return The current object.
+ */
+  public final BehaviorConstantDistance setSkin(float sin) {
+  	skin=Math.max(sin,0);
+  	return(this);
+  }
+
+/**
+ * Returns the skin of the grid, as a share of the range.
+ *
+ * @return The skin value.
+ */
+  public final float getSkin() {
+  	return(skin);
+  }
+
+/**
+ * Sets a neighbour list to find the pairs in range with.
+ *
+ * The list is brought up to date before each step and only rebuilt once the points may
+ * have moved more than half its skin. Its range is raised to the range of this behavior
+ * if needed, and it may be shared with other behaviors over the same points. Takes
+ * precedence over the grid. null stops using a list.
+ *
+ * @param nlin The NeighborList to use.
+ *
+ * @return The current object.
+ */
+  public final BehaviorConstantDistance setNeighbors(NeighborList nlin) {
+  	nl=nlin;
+  	return(this);
+  }
+
+/**
+ * Returns the neighbour list in use, or null.
+ *
+ * @return The NeighborList.
+ */
+  public final NeighborList getNeighbors() {
+  	return(nl);
+  }
+  
+  // The full loop pairs each point with all later ones, while grid rows cost about the same.
+  @Override
+  protected final Partition partition() {
+    return(grid||nl!=null?Partition.CONTIGUOUS:Partition.TRIANGULAR);
+  }
+  
+  @Override
+  protected final void preStep() {
+    super.preStep();
+    if (nl!=null) {
+      if (R>nl.getRange()) nl.setRange(R);
+      nl.update(points);
+      return;
+    }
+    if (!grid) return;
+    Point[] pts=points;
+    int n=pts.length;
+    float size=R*(1+skin);
+    if (pts==bpts && size==bs && !moved(pts, .25f*skin*skin*R2)) return;
+    sg.build(pts, size);
+    if (bp==null || bp.length!=3*n) bp=new float[3*n];
+    Point p;
+    for (int i=0,i3=0;i<n;i++,i3+=3) {
+      p=pts[i];
+      bp[i3]=p.x;
+      bp[i3+1]=p.y;
+      bp[i3+2]=p.z;
+    }
+    bpts=pts;
+    bs=size;
+  }
+  
+  // Whether any point moved further than the square root of m2 since the grid was built.
+  private final boolean moved(Point[] pts, float m2) {
+    if (bp==null || bp.length!=3*pts.length) return(true);
+    float dx,dy,dz;
+    Point p;
+    for (int i=0,i3=0;i<pts.length;i++,i3+=3) {
+      p=pts[i];
+      dx=p.x-bp[i3];
+      dy=p.y-bp[i3+1];
+      dz=p.z-bp[i3+2];
+      if (dx*dx+dy*dy+dz*dz>m2) return(true);
+    }
+    return(false);
+  }
+  
+  // Each pair is handled once, by the row of its lower index. In deterministic mode forces
+  // go to the thread's buffer, else straight to the points.
+  @Override
+  protected final void stepRange(int start, int end, int stride, int thread) {
+    float[] a=getDeterministic()?accBuffer(thread, points.length):null;
+    if (nl!=null) {
+      nStepDist(points, a, start, end, stride);
+    } else if (grid) {
+      gStepDist(points, a, start, end, stride);
+    } else if (fast) {fStepDist(points, a, start, end, stride);} else {StepDist(points, a, start, end, stride);}
+  }
+  
+  private final void fStepDist(Point[] points, float[] a, int start, int end, int stride) {
+    float d;
+    float L2;
+    Point p1,p2;
+    float dx,dy,dz,lx,ly,lz;
+    int i3,j3;
+    for (int i=start,k=points.length;i<end;i+=stride) {
+      p1=points[i];
+      i3=3*i;
+	  for (int j=i+1;j<k;j++) {
+		p2=points[j];
+		dx=p2.x-p1.x;
+		dy=p2.y-p1.y;
+		dz=p2.z-p1.z;
+		L2 = dx*dx+dy*dy+dz*dz;
+		if (L2<R2) {
+		  d = C + L2/C; 
+		  d = (float)(d*.25 + L2/d);
+		  d = (float)(S*(1-(C/d)));
+		  lx=d*dx;
+		  ly=d*dy;
+		  lz=d*dz;
+		  if (a==null) {
+		    p1.sforce.x+=lx;
+		    p1.sforce.y+=ly;
+		    p1.sforce.z+=lz;
+		    p2.sforce.x-=lx;
+		    p2.sforce.y-=ly;
+		    p2.sforce.z-=lz;
+		  } else {
+		    j3=3*j;
+		    a[i3]+=lx;
+		    a[i3+1]+=ly;
+		    a[i3+2]+=lz;
+		    a[j3]-=lx;
+		    a[j3+1]-=ly;
+		    a[j3+2]-=lz;
+		  }
+		}
+	  }
+    }
+  }
+  
+  // Faster variant with one Newton iteration.
+  private final void StepDist(Point[] points, float[] a, int start, int end, int stride) {
+    float d;
+    float L2,C2;
+    Point p1,p2;
+    float dx,dy,dz,lx,ly,lz;
+    int i3,j3;
+    for (int i=start,k=points.length;i<end;i+=stride) {
+      p1=points[i];
+      i3=3*i;
+	  for (int j=i+1;j<k;j++) {
+		p2=points[j];
+		dx=p2.x-p1.x;
+		dy=p2.y-p1.y;
+		dz=p2.z-p1.z;
+		L2 = dx*dx+dy*dy+dz*dz;
+		C2 = C*C; 
+		if (L2<R2) {
+		  d = (float)(S*(C2/(L2+C2)-.5f));
+		  lx=d*dx;
+		  ly=d*dy;
+		  lz=d*dz;
+		  if (a==null) {
+		    p1.sforce.x-=lx;
+		    p1.sforce.y-=ly;
+		    p1.sforce.z-=lz;
+		    p2.sforce.x+=lx;
+		    p2.sforce.y+=ly;
+		    p2.sforce.z+=lz;
+		  } else {
+		    j3=3*j;
+		    a[i3]-=lx;
+		    a[i3+1]-=ly;
+		    a[i3+2]-=lz;
+		    a[j3]+=lx;
+		    a[j3+1]+=ly;
+		    a[j3+2]+=lz;
+		  }
+		}
+	  }
+	}
+  }
+  
+  // Grid variant of both. Visits the 27 cells around each point, and only the points with
+  // a higher index so that every pair is handled once, as in the full loop. Cells are those
+  // of the positions the grid was built for, which the skin keeps close enough.
+  private final void gStepDist(Point[] points, float[] a, int start, int end, int stride) {
+    float d;
+    float L2,C2=C*C;
+    Point p1,p2;
+    float x1,y1,z1;
+    float dx,dy,dz,lx,ly,lz;
+    final SpatialGrid g=sg;
+    final int[] st=g.start, od=g.order, cl=g.cell;
+    final int nx=g.nx, ny=g.ny, nz=g.nz, nxy=g.nxy;
+    int c,cx,cy,cz,x0,x1c,y0,y1c,z0,z1c,cc,k,i3,k3;
+    for (int i=start;i<end;i+=stride) {
+      p1=points[i];
+      x1=p1.x;
+      y1=p1.y;
+      z1=p1.z;
+      i3=3*i;
+      c=cl[i];
+      cz=c/nxy;
+      cy=(c-cz*nxy)/nx;
+      cx=c-cz*nxy-cy*nx;
+      x0=cx>0?cx-1:0; x1c=cx<nx-1?cx+1:cx;
+      y0=cy>0?cy-1:0; y1c=cy<ny-1?cy+1:cy;
+      z0=cz>0?cz-1:0; z1c=cz<nz-1?cz+1:cz;
+      for (int zz=z0;zz<=z1c;zz++) {
+        for (int yy=y0;yy<=y1c;yy++) {
+          cc=yy*nx+zz*nxy;
+          for (int m=st[cc+x0],e=st[cc+x1c+1];m<e;m++) {
+            k=od[m];
+            if (k<=i) continue;
+            p2=points[k];
+            dx=p2.x-x1;
+            dy=p2.y-y1;
+            dz=p2.z-z1;
+            L2=dx*dx+dy*dy+dz*dz;
+            if (L2>=R2) continue;
+            // Both formulas as in the full loops, signed so that the force adds to p1.
+            if (fast) {
+              d = C + L2/C; 
+              d = (float)(d*.25 + L2/d);
+              d = (float)(S*(1-(C/d)));
+            } else {
+              d = (float)(-S*(C2/(L2+C2)-.5f));
+            }
+            lx=d*dx;
+            ly=d*dy;
+            lz=d*dz;
+            if (a==null) {
+              p1.sforce.x+=lx;
+              p1.sforce.y+=ly;
+              p1.sforce.z+=lz;
+              p2.sforce.x-=lx;
+              p2.sforce.y-=ly;
+              p2.sforce.z-=lz;
+            } else {
+              k3=3*k;
+              a[i3]+=lx;
+              a[i3+1]+=ly;
+              a[i3+2]+=lz;
+              a[k3]-=lx;
+              a[k3+1]-=ly;
+              a[k3+2]-=lz;
+            }
+          }
+        }
+      }
+    }
+  }
+  
+  // Neighbour list variant, as the grid variant over the listed pairs.
+  private final void nStepDist(Point[] points, float[] a, int start, int end, int stride) {
+    float d;
+    float L2,C2=C*C;
+    Point p1,p2;
+    float x1,y1,z1;
+    float dx,dy,dz,lx,ly,lz;
+    final int[] st=nl.start, nb=nl.list;
+    int k,i3,k3;
+    for (int i=start;i<end;i+=stride) {
+      p1=points[i];
+      x1=p1.x;
+      y1=p1.y;
+      z1=p1.z;
+      i3=3*i;
+      for (int m=st[i],e=st[i+1];m<e;m++) {
+        k=nb[m];
+        p2=points[k];
+        dx=p2.x-x1;
+        dy=p2.y-y1;
+        dz=p2.z-z1;
+        L2=dx*dx+dy*dy+dz*dz;
+        if (L2>=R2) continue;
+        if (fast) {
+          d = C + L2/C; 
+          d = (float)(d*.25 + L2/d);
+          d = (float)(S*(1-(C/d)));
+        } else {
+          d = (float)(-S*(C2/(L2+C2)-.5f));
+        }
+        lx=d*dx;
+        ly=d*dy;
+        lz=d*dz;
+        if (a==null) {
+          p1.sforce.x+=lx;
+          p1.sforce.y+=ly;
+          p1.sforce.z+=lz;
+          p2.sforce.x-=lx;
+          p2.sforce.y-=ly;
+          p2.sforce.z-=lz;
+        } else {
+          k3=3*k;
+          a[i3]+=lx;
+          a[i3+1]+=ly;
+          a[i3+2]+=lz;
+          a[k3]-=lx;
+          a[k3+1]-=ly;
+          a[k3+2]-=lz;
+        }
+      }
+    }
+  }
+}
\ No newline at end of file
@@ -0,0 +1,149 @@
+//  Copyright (c) 2010-2011, Ioannis (Yiannis) Chatzikonstantinou, ?All rights reserved.
+//  http://www.volatileprototypes.com
+// 
+//  Redistribution and use in source and binary forms, with or without modification, 
+//  are permitted provided that the following conditions are met:
+//  	- Redistributions of source code must retain the above copyright 
+//  notice, this list of conditions and the following disclaimer.
+//  	- Redistributions in binary form must reproduce the above copyright 
+//  notice, this list of conditions and the following disclaimer in the documentation 
+//  and/or other materials provided with the distribution.
+//  
+//  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY 
+//  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+//  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+//  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+//  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+//  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+//  PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+//  WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+//  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+//  OF SUCH DAMAGE.
+
+package volatileprototypes.fvlib;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * @author      Yiannis Chatzikonstantinou <contact@volatileprototypes.com>
+ * @version     0.5.9                                    
+ * @since       0.4          
+ */
+public final class BehaviorConstantForce extends Behavior {
+
+private Vec3 f;
+
+/**
+ * Constructor, generates a new class instance.
+ *
+ */
+  public BehaviorConstantForce() {
+    super();
+  }
+  
+/**
+ * Constructor, generates a new class instance using a copy of the supplied Point ArrayList.
+ *
+ * @param pointsin An ArrayList containing Point objects with which the object's list will be initialized.
+ * @param fin A Vec3 object representing the force to be applied to the Point objects.
+
+ *
+ */
+  public BehaviorConstantForce(ArrayList<? extends Point> pointsin, Vec3 fin) {
+    super(pointsin);
+    f=fin;
+  }
+  
+/**
+ * Constructor, generates a new class instance using the supplied Point array.
+ *
+ * @param pointsin An array containing Point objects with which the object's array will be initialized.
+ * @param fin A Vec3 object representing the force to be applied to the Point objects.
+ *
+ */
+  public BehaviorConstantForce(Point[] pointsin, Vec3 fin) {
+    super(pointsin);
+    f=fin;
+  }
+  
+/**
+ * Constructor, generates a new class instance applying the force to the points of the supplied buffer.
+ *
+ * @param pbin A PointBuffer holding the points.
+ * @param fin A Vec3 object representing the force to be applied to the Point objects.
+ *
+ */
+  public BehaviorConstantForce(PointBuffer pbin, Vec3 fin) {
+    super(pbin);
+    f=fin;
+  }
+
+/**
+ * Sets the force vector.
+ *
+ * @param fin The force vector.
+ */
+  public BehaviorConstantForce setF(Vec3 fin) {
+  	f=fin;
+  	return(this);
+  }
+
+/**
+ * Returns the current force vector.
+ *
+ * @return The range value.
+ */
+  public Vec3 getF() {
+  	return(f);
+  }
+  
+  @Override
+  protected final boolean pointLocal() {
+    return(true);
+  }
+  
+  @Override
+  protected final Partition partition() {
+    return(Partition.CONTIGUOUS);
+  }
+  
+  @Override
+  protected final boolean bufferPath() {
+    return(true);
+  }
+  
+  @Override
+  protected final void stepRange(int start, int end, int stride, int thread) {
+    if (pb!=null && pb.sleeping()) {
+      // Positions in the active list, a run of consecutive points at a time.
+      final int[] a=pb.active;
+      for (int i=start,j,k;i<end;i=j) {
+        j=pb.run(i,end,stride);
+        k=a[i];
+        aStepPoints(pb, k, stride==1?k+j-i:k+1, 1);
+      }
+    } else if (pb!=null) {aStepPoints(pb, start, end, stride);} else {stepPoints(points, start, end, stride);}
+  }
+  
+  private final void stepPoints(Point[] points, int start, int end, int stride) {
+    Point p;
+    for (int i=start;i<end;i+=stride) {
+      p=points[i];
+      p.sforce.x+=f.x*p.w;
+      p.sforce.y+=f.y*p.w;
+      p.sforce.z+=f.z*p.w;
+    }
+  }
+  
+  // Buffer variant.
+  private final void aStepPoints(PointBuffer b, int start, int end, int stride) {
+    final float[] fr=b.frc, w=b.w;
+    float fx=f.x, fy=f.y, fz=f.z;
+    for (int i=start,i3=3*i,s3=3*stride;i<end;i+=stride,i3+=s3) {
+      fr[i3]+=fx*w[i];
+      fr[i3+1]+=fy*w[i];
+      fr[i3+2]+=fz*w[i];
+    }
+  }
+}
\ No newline at end of file
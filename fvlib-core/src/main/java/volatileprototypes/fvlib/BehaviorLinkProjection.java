@@ -0,0 +1,599 @@
+//  Copyright (c) 2010-2011, Ioannis (Yiannis) Chatzikonstantinou, ?All rights reserved.
+//  http://www.volatileprototypes.com
+// 
+//  Redistribution and use in source and binary forms, with or without modification, 
+//  are permitted provided that the following conditions are met:
+//  	- Redistributions of source code must retain the above copyright 
+//  notice, this list of conditions and the following disclaimer.
+//  	- Redistributions in binary form must reproduce the above copyright 
+//  notice, this list of conditions and the following disclaimer in the documentation 
+//  and/or other materials provided with the distribution.
+//  
+//  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY 
+//  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+//  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+//  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+//  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+//  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+//  PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+//  WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+//  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+//  OF SUCH DAMAGE.
+// Enforces the rest lengths of links by moving their end points, instead of applying
+// spring forces: position based dynamics, as in Jakobsen's paper and in XPBD (Macklin,
+// Mueller and Chentanez, "XPBD: Position-Based Simulation of Compliant Constrained
+// Dynamics"). With the integrators of this library the velocity is the difference of
+// position and old position, so moving a point also changes its velocity as needed.
+// Rigid links (the default) keep their length however stiff the material, within a few
+// iterations, where springs stiff enough to do so would need many substeps. Compliant
+// links behave as springs of stiffness S, solved implicitly, so that they stay stable
+// at any timestep. Each link accumulates its Lagrange multiplier over the iterations
+// of a step, so the result does not depend on the number of iterations.
+//
+// Two ways to iterate are offered. Gauss-Seidel (the default) colours the links so that
+// links of a colour share no end points, and projects each colour as one parallel pass
+// that moves the points at once, which converges fastest. Jacobi computes the
+// corrections of all links in one pass, into per-thread buffers, and applies their
+// sum in a second pass over the points, which parallelizes over all links but needs
+// more iterations. Each link then applies only a share of its correction, the inverse
+// of the largest number of links at either end, so that no point overshoots, and its
+// multiplier grows by that same share, so that compliant links keep their stiffness.
+// Gauss-Seidel passes give the same result with any number of threads, Jacobi passes
+// with any scheduling.
+// Runs in the CONSTRAINTS phase of a World.
+
+package volatileprototypes.fvlib;
+
+import java.util.*;
+
+/**
+ * @author      Yiannis Chatzikonstantinou <contact@volatileprototypes.com>
+ * @version     0.5.9                                    
+ * @since       0.5.9          
+ */
+public final class BehaviorLinkProjection extends Solver {
+
+private Link[] links;			// Links set as Link objects, if not a LinkBuffer.
+private LinkBuffer lb;			// Link store projected on its PointBuffer, if set instead of links.
+private PointBuffer pb;			// Point store of lb.
+private Link[] ls;				// The links in the order the kernels run them, for Link objects.
+private Point[] nodes;			// Distinct link end points, for Link objects.
+private int[] ei;				// Indices of the two end points of each link in run order, in nodes or pb.
+private int[] perm;				// Index in lb of each link in run order, if lb is grouped by colour.
+private int[] cs;				// Start of each colour in run order, plus the end of the last colour.
+private int m;					// Number of links in run order.
+private int nv;					// Number of end points, in nodes or pb.
+private boolean dirty=true;		// The links were set since the run order was built.
+private int lv, pv;				// Versions of lb and pb that the run order was built for.
+private float[] lam;			// Lagrange multiplier of each link in run order, over the running step.
+private float[] wj;				// Share of its correction each link in run order applies in Jacobi mode, before over-relaxation.
+private float[] gw;				// Inverse weight of each end point along each axis, 0 along axes it may not move.
+private int iters=4;			// Iterations per step.
+private boolean jacobi=false;	// Iterate in Jacobi instead of coloured Gauss-Seidel passes.
+private float omega=1.5f;		// Over-relaxation of the averaged corrections in Jacobi mode.
+private boolean compliant=false;// Links are springs of compliance 1/S, instead of rigid.
+private float dt=1;				// Timestep of the integrator, for compliant links.
+private boolean mass=false;		// Divide the corrections by the point weights.
+private float[][] qs;			// Per-thread largest strain of the last iteration.
+private float strain=0;			// Largest strain of any link before the last iteration.
+
+/**
+ * Constructor, generates a new class instance using a copy of the supplied ArrayList.
+ *
+ * @param linksin An ArrayList containing Link objects.
+ *
+ */
+  public BehaviorLinkProjection(ArrayList<Link> linksin) {
+    setL(linksin);
+  }
+
+/**
+ * Constructor, generates a new class instance using the supplied array.
+ *
+ * @param linksin An array containing Link objects.
+ *
+ */
+  public BehaviorLinkProjection(Link[] linksin) {
+    setL(linksin);
+  }
+
+/**
+ * Constructor, generates a new class instance that projects the links of the supplied
+ * buffer directly on the arrays of its PointBuffer.
+ *
+ * @param lbin A LinkBuffer holding the links.
+ *
+ */
+  public BehaviorLinkProjection(LinkBuffer lbin) {
+    setL(lbin);
+  }
+
+/**
+ * Sets the object's Link array using a copy of the supplied ArrayList.
+ *
+ * @param linksin The ArrayList containing Link objects.
+ *
+ * @return The current object.
+ */
+  public BehaviorLinkProjection setL(ArrayList<Link> linksin) {
+    Link[] l=new Link[linksin.size()];
+    linksin.toArray(l);
+    return(setL(l));
+  }
+
+/**
+ * Sets the object's Link array using the supplied array. Call it again if the end points
+ * of the links are changed.
+ *
+ * @param linksin The array containing Link objects.
+ *
+ * @return The current object.
+ */
+  public BehaviorLinkProjection setL(Link[] linksin) {
+    links=linksin;
+    lb=null;
+    pb=null;
+    dirty=true;
+    return(this);
+  }
+
+/**
+ * Sets the links using the supplied LinkBuffer. Its points are moved on the arrays of
+ * its PointBuffer, so integrate them on the buffer as well.
+ *
+ * @param lbin The LinkBuffer holding the links.
+ *
+ * @return The current object.
+ */
+  public BehaviorLinkProjection setL(LinkBuffer lbin) {
+    lb=lbin;
+    pb=lb.pb;
+    links=null;
+    dirty=true;
+    return(this);
+  }
+
+/**
+ *  Get the links.
+ *
+ * @return The array of links.
+ */
+  public Link[] getL() {
+    return(lb!=null?lb.getL():links);
+  }
+
+/**
+ *  Get the link buffer.
+ *
+ * @return The current link buffer, or null if the links are set as Link objects.
+ */
+  public LinkBuffer getLinkBuffer() {
+    return(lb);
+  }
+
+/**
+ * Sets the number of iterations per step. The default is 4.
+ *
+ * @param iin The number of iterations.
+ *
+ * @return The current object.
+ */
+  public final BehaviorLinkProjection setIterations(int iin) {
+    iters=Math.max(iin,1);
+    return(this);
+  }
+
+/**
+ *  Get the number of iterations per step.
+ *
+ * @return The number of iterations.
+ */
+  public final int getIterations() {
+    return(iters);
+  }
+
+/**
+ * Sets whether to iterate in Jacobi passes instead of coloured Gauss-Seidel passes.
+ *
+ * Jacobi passes spread all links over the threads at once, with no passes per colour, but
+ * each link only applies its correction divided by the number of links at its busiest end
+ * point, so more iterations are needed. Off by default.
+ *
+ * @param jin A boolean representing whether to use Jacobi iterations.
+ *
+ * @return The current object.
+ */
+  public final BehaviorLinkProjection setJacobi(boolean jin) {
+    jacobi=jin;
+    return(this);
+  }
+
+/**
+ *  Get whether Jacobi iterations are used.
+ *
+ * @return A boolean representing whether Jacobi iterations are used.
+ */
+  public final boolean getJacobi() {
+    return(jacobi);
+  }
+
+/**
+ * Sets the over-relaxation of Jacobi iterations. Each link applies its share of its
+ * correction times this value. Values up to 2 are always stable. Dense
+ * networks, whose links partly cancel each other, converge faster with more. The default is 1.5.
+ *
+ * @param oin The over-relaxation factor.
+ *
+ * @return The current object.
+ */
+  public final BehaviorLinkProjection setRelaxation(float oin) {
+    omega=oin;
+    return(this);
+  }
+
+/**
+ *  Get the over-relaxation of Jacobi iterations.
+ *
+ * @return The over-relaxation factor.
+ */
+  public final float getRelaxation() {
+    return(omega);
+  }
+
+/**
+ * Sets whether links are compliant instead of rigid.
+ *
+ * Compliant links have a compliance of 1/S, so they behave as the springs of
+ * BehaviorSpringRelaxation with the same stiffness, but are solved implicitly and stay
+ * stable however stiff. Links with a stiffness of 0 are then skipped. The timestep must
+ * match that of the integrator (see setDt()). Links that do not converge within the
+ * iterations of a step come out softer, which takes more iterations with Jacobi passes
+ * than with Gauss-Seidel ones. Off by default.
+ *
+ * @param cin A boolean representing whether links are compliant.
+ *
+ * @return The current object.
+ */
+  public final BehaviorLinkProjection setCompliant(boolean cin) {
+    compliant=cin;
+    return(this);
+  }
+
+/**
+ *  Get whether links are compliant.
+ *
+ * @return A boolean representing whether links are compliant.
+ */
+  public final boolean getCompliant() {
+    return(compliant);
+  }
+
+/**
+ * Sets the timestep, which must be that of the integrator. Only used by compliant links.
+ * The default is 1.
+ *
+ * @param dtin The timestep.
+ *
+ * @return The current object.
+ */
+  public final BehaviorLinkProjection setDt(float dtin) {
+    dt=dtin;
+    return(this);
+  }
+
+/**
+ *  Get the timestep.
+ *
+ * @return The timestep.
+ */
+  public final float getDt() {
+    return(dt);
+  }
+
+/**
+ * Sets whether the corrections are divided by the weight of each point, so that heavy
+ * points move less. Off by default, as with the integrators. Unyielding points are
+ * moved only along the axes their multipliers allow.
+ *
+ * @param min A boolean representing whether to use the point weights.
+ *
+ * @return The current object.
+ */
+  public final BehaviorLinkProjection setMass(boolean min) {
+    mass=min;
+    return(this);
+  }
+
+/**
+ *  Get whether the corrections are divided by the point weights.
+ *
+ * @return A boolean representing whether the weights are used.
+ */
+  public final boolean getMass() {
+    return(mass);
+  }
+
+/**
+ *  Get the point buffer of the LinkBuffer.
+ *
+ * @return The point buffer, or null if the links are projected on Point objects.
+ */
+  @Override
+  public PointBuffer getBuffer() {
+    return(lb!=null?lb.pb:null);
+  }
+
+/**
+ *  Get the number of colours of the Gauss-Seidel passes, as of the last step.
+ *
+ * @return The number of colours.
+ */
+  public final int getColors() {
+    return(cs!=null?cs.length-1:0);
+  }
+
+/**
+ *  Get the largest strain, |L-C|/C, of any link before the last iteration of the last
+ *  step, which shows how far the iterations are from converging.
+ *
+ * @return The largest strain.
+ */
+  public final float getStrain() {
+    return(strain);
+  }
+
+  @Override
+  protected final int workSize() {
+    return(m);
+  }
+
+  @Override
+  protected final Partition partition() {
+    return(Partition.CONTIGUOUS);
+  }
+
+  @Override
+  protected final World.Phase phase() {
+    return(World.Phase.CONSTRAINTS);
+  }
+
+  @Override
+  protected final int passes() {
+    return(jacobi?2*iters:iters*(cs.length-1));
+  }
+
+  @Override
+  protected final void passFunction(int pass, int step, int offset) {
+    int s, n;
+    if (jacobi) {
+      if ((pass&1)==1) {
+        // Points take the sum of the corrections of the thread buffers, in thread order.
+        apply((int)((long)nv*offset/step), (int)((long)nv*(offset+1)/step));
+        return;
+      }
+      s=0;
+      n=m;
+    } else {
+      // Links of one colour share no end points, so their threads never move the same point.
+      int c=pass%(cs.length-1);
+      s=cs[c];
+      n=cs[c+1]-s;
+    }
+    float[] a=jacobi?accBuffer(offset, nv):null;
+    float[] q=pass>=passes()-(jacobi?2:cs.length-1)?qs[offset]:null;
+    int start=s+(int)((long)n*offset/step), end=s+(int)((long)n*(offset+1)/step);
+    if (pb!=null) {aStepLinks(start, end, a, q);} else {stepLinks(start, end, a, q);}
+  }
+
+  @Override
+  protected final void preStep() {
+    if (dirty || (lb!=null && (lv!=lb.version || pv!=pb.version))) order();
+    // Weights and unyielding multipliers may change between steps.
+    if (gw==null || gw.length<3*nv) gw=new float[3*nv];
+    final float[] g=gw;
+    float w;
+    if (pb!=null) {
+      final float[] u=pb.um;
+      for (int i=0;i<3*nv;i++) g[i]=mass?pb.w1[i/3]*u[i]:u[i];
+    } else {
+      Point p;
+      for (int i=0,i3=0;i<nv;i++,i3+=3) {
+        p=nodes[i];
+        w=mass?p.w1:1;
+        if (p.U) {
+          g[i3]=w*p.uMult.x; g[i3+1]=w*p.uMult.y; g[i3+2]=w*p.uMult.z;
+        } else {
+          g[i3]=g[i3+1]=g[i3+2]=w;
+        }
+      }
+    }
+    if (lam==null || lam.length<m) lam=new float[m];
+    Arrays.fill(lam, 0, m, 0);
+    if (qs==null || qs.length<getThreads()) qs=new float[getThreads()][1];
+    for (float[] q : qs) q[0]=0;
+  }
+
+  @Override
+  protected final void postStep() {
+    float q=0;
+    for (float[] a : qs) q=Math.max(q,a[0]);
+    strain=q;
+  }
+
+  // Builds the run order of the links, coloured for Gauss-Seidel passes, the indices of
+  // their end points and the share of its correction each link applies in Jacobi passes.
+  private final void order() {
+    int[] pi;
+    if (lb!=null) {
+      m=lb.m;
+      nv=pb.n;
+      lv=lb.version;
+      pv=pb.version;
+      pi=lb.ends;
+    } else {
+      m=links.length;
+      IdentityHashMap<Point,Integer> map=new IdentityHashMap<Point,Integer>();
+      ArrayList<Point> pts=new ArrayList<Point>();
+      pi=new int[2*m];
+      Point p;
+      Integer k;
+      for (int i=0;i<pi.length;i++) {
+        Link l=links[i>>1];
+        p=(i&1)==0?l.p1:l.p2;
+        k=map.get(p);
+        if (k==null) {
+          k=pts.size();
+          map.put(p,k);
+          pts.add(p);
+        }
+        pi[i]=k;
+      }
+      nodes=pts.toArray(new Point[pts.size()]);
+      nv=nodes.length;
+    }
+    int[][] oc=LinkBuffer.color(pi, nv);
+    int[] o=oc[0];
+    cs=oc[1];
+    ei=new int[2*m];
+    for (int i=0;i<m;i++) {
+      ei[2*i]=pi[2*o[i]];
+      ei[2*i+1]=pi[2*o[i]+1];
+    }
+    if (lb!=null) {
+      perm=o;
+      // Links join their end points into islands that sleep together.
+      pb.join(this, ei, m);
+    } else {
+      ls=new Link[m];
+      for (int i=0;i<m;i++) ls[i]=links[o[i]];
+    }
+    int[] deg=new int[nv];
+    for (int i=0;i<2*m;i++) deg[ei[i]]++;
+    wj=new float[m];
+    for (int i=0;i<m;i++) wj[i]=1f/Math.max(deg[ei[2*i]],deg[ei[2*i+1]]);
+    dirty=false;
+  }
+
+  // Projects links start to end on Link objects. With a, the corrections are added to
+  // a with 3 floats per node instead of moving the points, each scaled by the Jacobi
+  // share of its link, which the multiplier takes too. With q, q[0] keeps the
+  // largest strain.
+  private final void stepLinks(int start, int end, float[] a, float[] q) {
+    final Link[] links=ls;
+    final int[] e=ei;
+    final float[] g=gw, lm=lam, jw=wj;
+    final float h=compliant?1/(dt*dt):0, J=omega;
+    float dx,dy,dz,L2,L,c,at,W,dl,y=0;
+    Point p1,p2;
+    Link l;
+    int k1,k2;
+    for (int i=start;i<end;i++) {
+      l=links[i];
+      if (l.broken) continue;
+      at=0;
+      if (compliant) {
+        if (l.S<=0) continue;
+        at=h/l.S;
+      }
+      p1=l.p1; p2=l.p2;
+      dx=p2.x-p1.x;
+      dy=p2.y-p1.y;
+      dz=p2.z-p1.z;
+      L2=dx*dx+dy*dy+dz*dz;
+      if (L2==0) continue;
+      L=(float)Math.sqrt(L2);
+      c=L-l.C;
+      if (q!=null && Math.abs(c)>y*l.C) y=Math.abs(c)/l.C;
+      // Inverse weight of both end points along the link, then the XPBD multiplier update.
+      k1=3*e[2*i]; k2=3*e[2*i+1];
+      W=((g[k1]+g[k2])*dx*dx+(g[k1+1]+g[k2+1])*dy*dy+(g[k1+2]+g[k2+2])*dz*dz)/L2+at;
+      if (W<=0) continue;
+      dl=(-c-at*lm[i])/W;
+      if (a!=null) dl*=J*jw[i];
+      lm[i]+=dl;
+      dl/=L;
+      dx*=dl; dy*=dl; dz*=dl;
+      if (a==null) {
+        p1.x-=g[k1]*dx; p1.y-=g[k1+1]*dy; p1.z-=g[k1+2]*dz;
+        p2.x+=g[k2]*dx; p2.y+=g[k2+1]*dy; p2.z+=g[k2+2]*dz;
+      } else {
+        a[k1]-=g[k1]*dx; a[k1+1]-=g[k1+1]*dy; a[k1+2]-=g[k1+2]*dz;
+        a[k2]+=g[k2]*dx; a[k2+1]+=g[k2+1]*dy; a[k2+2]+=g[k2+2]*dz;
+      }
+    }
+    if (q!=null && y>q[0]) q[0]=y;
+  }
+
+  // Buffer variant. Links of sleeping islands are skipped.
+  private final void aStepLinks(int start, int end, float[] a, float[] q) {
+    final float[] ps=pb.pos, g=gw, rc=lb.c, rs=lb.s, lm=lam, jw=wj;
+    final int[] e=ei, o=perm;
+    final byte[] z=pb.sleeping()?pb.sl:null;
+    final float h=compliant?1/(dt*dt):0, J=omega;
+    float dx,dy,dz,L2,L,C,c,at,W,dl,y=0;
+    int k1,k2,j;
+    for (int i=start;i<end;i++) {
+      j=o[i];
+      k1=e[2*i]; k2=e[2*i+1];
+      if (z!=null && z[k1]!=0) continue;
+      at=0;
+      if (compliant) {
+        if (rs[j]<=0) continue;
+        at=h/rs[j];
+      }
+      k1*=3; k2*=3;
+      dx=ps[k2]-ps[k1];
+      dy=ps[k2+1]-ps[k1+1];
+      dz=ps[k2+2]-ps[k1+2];
+      L2=dx*dx+dy*dy+dz*dz;
+      if (L2==0) continue;
+      L=(float)Math.sqrt(L2);
+      C=rc[j];
+      c=L-C;
+      if (q!=null && Math.abs(c)>y*C) y=Math.abs(c)/C;
+      W=((g[k1]+g[k2])*dx*dx+(g[k1+1]+g[k2+1])*dy*dy+(g[k1+2]+g[k2+2])*dz*dz)/L2+at;
+      if (W<=0) continue;
+      dl=(-c-at*lm[i])/W;
+      if (a!=null) dl*=J*jw[i];
+      lm[i]+=dl;
+      dl/=L;
+      dx*=dl; dy*=dl; dz*=dl;
+      // Positions and thread buffers share the layout, so only the target differs.
+      final float[] t=a==null?ps:a;
+      t[k1]-=g[k1]*dx; t[k1+1]-=g[k1+1]*dy; t[k1+2]-=g[k1+2]*dz;
+      t[k2]+=g[k2]*dx; t[k2+1]+=g[k2+1]*dy; t[k2+2]+=g[k2+2]*dz;
+    }
+    if (q!=null && y>q[0]) q[0]=y;
+  }
+
+  // Moves points start to end by the sum of the corrections in the thread buffers, and
+  // clears the buffers.
+  private final void apply(int start, int end) {
+    final float[][] ac=acc;
+    final float[] ps=pb!=null?pb.pos:null;
+    float fx,fy,fz;
+    float[] a;
+    Point p;
+    for (int i=start,i3=3*start;i<end;i++,i3+=3) {
+      fx=fy=fz=0;
+      for (int t=0;t<ac.length;t++) {
+        a=ac[t];
+        if (a==null || a.length<i3+3) continue;
+        fx+=a[i3];
+        fy+=a[i3+1];
+        fz+=a[i3+2];
+        a[i3]=a[i3+1]=a[i3+2]=0;
+      }
+      if (ps!=null) {
+        ps[i3]+=fx;
+        ps[i3+1]+=fy;
+        ps[i3+2]+=fz;
+      } else {
+        p=nodes[i];
+        p.x+=fx;
+        p.y+=fy;
+        p.z+=fz;
+      }
+    }
+  }
+}
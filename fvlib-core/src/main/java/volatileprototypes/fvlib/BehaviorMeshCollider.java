@@ -0,0 +1,313 @@
+//  Copyright (c) 2010-2011, Ioannis (Yiannis) Chatzikonstantinou, ?All rights reserved.
+//  http://www.volatileprototypes.com
+// 
+//  Redistribution and use in source and binary forms, with or without modification, 
+//  are permitted provided that the following conditions are met:
+//  	- Redistributions of source code must retain the above copyright 
+//  notice, this list of conditions and the following disclaimer.
+//  	- Redistributions in binary form must reproduce the above copyright 
+//  notice, this list of conditions and the following disclaimer in the documentation 
+//  and/or other materials provided with the distribution.
+//  
+//  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY 
+//  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+//  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+//  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+//  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+//  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+//  PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+//  WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+//  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+//  OF SUCH DAMAGE.
+
+// Collides points with a static triangle mesh held in a MeshBVH. Each point looks up
+// the nearest triangle within the margin. Triangles are one-sided: their normal, by
+// the right-hand rule on the corner order, points out of the mesh. A point in front
+// of the triangle closer than the margin is moved out to the margin, and a point
+// behind it, having crossed it, is moved back to the margin in front. Velocity is
+// then handled as in BehaviorCollider, through the old position, with friction and
+// restitution. Points crossing more than the margin in one step are not caught, so
+// the margin should exceed the distance points move per step.
+// Points are independent, so they run in contiguous blocks on the solver threads,
+// each thread with its own traversal stack, by default in the CONSTRAINTS phase of a
+// World. The mesh must not be rebuilt while stepping.
+
+package volatileprototypes.fvlib;
+
+import java.util.*;
+
+/**
+ * @author      Yiannis Chatzikonstantinou <contact@volatileprototypes.com>
+ * @version     0.5.9                                    
+ * @since       0.5.9          
+ */
+public final class BehaviorMeshCollider extends Behavior {
+
+private MeshBVH mesh;				// The triangles.
+private float friction=0;			// Coulomb friction coefficient.
+private float restitution=0;		// Share of the normal speed kept, reversed, on impact.
+private float margin=1;				// Distance kept between points and triangles.
+private float[][] q;				// Per-thread scratch: position, old position and contact normal.
+private float[][] cq;				// Per-thread scratch of the nearest point queries.
+private int[][] stacks;				// Per-thread traversal stacks.
+private int[] hits;					// Per-thread count of points in contact.
+private int contacts;				// Points in contact during the last step.
+
+/**
+ * Constructor, generates a new class instance.
+ *
+ */
+  public BehaviorMeshCollider() {
+    super();
+  }
+  
+/**
+ * Constructor, generates a new class instance using a copy of the supplied Point ArrayList.
+ *
+ * @param pointsin An ArrayList containing Point objects with which the object's list will be initialized.
+ * @param meshin A MeshBVH holding the triangles to collide with.
+ *
+ */
+  public BehaviorMeshCollider(ArrayList<? extends Point> pointsin, MeshBVH meshin) {
+    super(pointsin);
+    mesh=meshin;
+  }
+  
+/**
+ * Constructor, generates a new class instance using the supplied Point array.
+ *
+ * @param pointsin An array containing Point objects with which the object's array will be initialized.
+ * @param meshin A MeshBVH holding the triangles to collide with.
+ *
+ */
+  public BehaviorMeshCollider(Point[] pointsin, MeshBVH meshin) {
+    super(pointsin);
+    mesh=meshin;
+  }
+  
+/**
+ * Constructor, generates a new class instance colliding the points of the supplied buffer.
+ *
+ * @param pbin A PointBuffer holding the points.
+ * @param meshin A MeshBVH holding the triangles to collide with.
+ *
+ */
+  public BehaviorMeshCollider(PointBuffer pbin, MeshBVH meshin) {
+    super(pbin);
+    mesh=meshin;
+  }
+
+/**
+ * Sets the mesh to collide with.
+ *
+ * @param meshin A MeshBVH holding the triangles.
+ *
+ * @return The current object.
+ */
+  public BehaviorMeshCollider setMesh(MeshBVH meshin) {
+  	mesh=meshin;
+  	return(this);
+  }
+
+/**
+ *  Get the mesh.
+ *
+ * @return The MeshBVH holding the triangles.
+ */
+  public MeshBVH getMesh() {
+  	return(mesh);
+  }
+
+/**
+ * Sets the friction coefficient. On contact, the tangential speed of a point is reduced
+ * by the friction times its normal speed, down to 0.
+ *
+ * @param fin The friction coefficient, 0 for a frictionless mesh.
+ *
+ * @return The current object.
+ */
+  public BehaviorMeshCollider setFriction(float fin) {
+  	friction=fin;
+  	return(this);
+  }
+
+/**
+ *  Get the friction coefficient.
+ *
+ * @return The friction coefficient.
+ */
+  public float getFriction() {
+  	return(friction);
+  }
+
+/**
+ * Sets the restitution. On impact, the normal speed of a point is reversed and scaled by it.
+ *
+ * @param rin The restitution, 0 for no bounce and 1 for a fully elastic one.
+ *
+ * @return The current object.
+ */
+  public BehaviorMeshCollider setRestitution(float rin) {
+  	restitution=rin;
+  	return(this);
+  }
+
+/**
+ *  Get the restitution.
+ *
+ * @return The restitution.
+ */
+  public float getRestitution() {
+  	return(restitution);
+  }
+
+/**
+ * Sets the margin, the distance points are kept in front of the triangles. It should exceed
+ * the distance points move per step. 1 by default.
+ *
+ * @param min The margin.
+ *
+ * @return The current object.
+ */
+  public BehaviorMeshCollider setMargin(float min) {
+  	margin=min;
+  	return(this);
+  }
+
+/**
+ *  Get the margin.
+ *
+ * @return The margin.
+ */
+  public float getMargin() {
+  	return(margin);
+  }
+
+/**
+ *  Get the number of points that were in contact with the mesh during the last step.
+ *
+ * @return The number of points in contact.
+ */
+  public int getContacts() {
+  	return(contacts);
+  }
+  
+  @Override
+  protected final World.Phase phase() {
+    return(World.Phase.CONSTRAINTS);
+  }
+  
+  @Override
+  protected final boolean pointLocal() {
+    return(true);
+  }
+  
+  @Override
+  protected final Partition partition() {
+    return(Partition.CONTIGUOUS);
+  }
+  
+  @Override
+  protected final boolean bufferPath() {
+    return(true);
+  }
+  
+  @Override
+  protected final void preStep() {
+    super.preStep();
+    int t=getThreads();
+    if (q==null || q.length<t) {
+      q=new float[t][9];
+      cq=new float[t][6];
+      stacks=new int[t][MeshBVH.STACK];
+      hits=new int[t];
+    }
+  }
+  
+  @Override
+  protected final void postStep() {
+    super.postStep();
+    int n=0;
+    for (int i=0;i<hits.length;i++) {
+      n+=hits[i];
+      hits[i]=0;
+    }
+    contacts=n;
+  }
+  
+  @Override
+  protected final void stepRange(int start, int end, int stride, int thread) {
+    if (mesh==null || mesh.nn==0) return;
+    if (pb!=null && pb.sleeping()) {
+      // Positions in the active list, a run of consecutive points at a time.
+      final int[] a=pb.active;
+      for (int i=start,j,k;i<end;i=j) {
+        j=pb.run(i,end,stride);
+        k=a[i];
+        aStepPoints(pb, k, stride==1?k+j-i:k+1, 1, thread);
+      }
+    } else if (pb!=null) {aStepPoints(pb, start, end, stride, thread);} else {stepPoints(points, start, end, stride, thread);}
+  }
+  
+  private final void stepPoints(Point[] points, int start, int end, int stride, int thread) {
+    final float[] s=q[thread], c=cq[thread];
+    final int[] st=stacks[thread];
+    Point p;
+    Vec3 o;
+    int n=0;
+    for (int i=start;i<end;i+=stride) {
+      p=points[i];
+      o=p.old;
+      s[0]=p.x; s[1]=p.y; s[2]=p.z;
+      s[3]=o.x; s[4]=o.y; s[5]=o.z;
+      if (collide(s, c, st)) {
+        p.x=s[0]; p.y=s[1]; p.z=s[2];
+        o.x=s[3]; o.y=s[4]; o.z=s[5];
+        n++;
+      }
+    }
+    hits[thread]+=n;
+  }
+  
+  // Buffer variant.
+  private final void aStepPoints(PointBuffer b, int start, int end, int stride, int thread) {
+    final float[] ps=b.pos, ol=b.old, s=q[thread], c=cq[thread];
+    final int[] st=stacks[thread];
+    int n=0;
+    for (int i=start,i3=3*i,s3=3*stride;i<end;i+=stride,i3+=s3) {
+      s[0]=ps[i3]; s[1]=ps[i3+1]; s[2]=ps[i3+2];
+      s[3]=ol[i3]; s[4]=ol[i3+1]; s[5]=ol[i3+2];
+      if (collide(s, c, st)) {
+        ps[i3]=s[0]; ps[i3+1]=s[1]; ps[i3+2]=s[2];
+        ol[i3]=s[3]; ol[i3+1]=s[4]; ol[i3+2]=s[5];
+        n++;
+      }
+    }
+    hits[thread]+=n;
+  }
+  
+  // Collides the point with position s[0..2] and old position s[3..5] with the nearest
+  // triangle within the margin. Returns whether there was one. The bounds test at the
+  // root of the tree lets points away from the mesh skip it.
+  private final boolean collide(float[] s, float[] c, int[] st) {
+    final MeshBVH m=mesh;
+    final float r=margin;
+    int k=m.nearest(s[0], s[1], s[2], r, st, c);
+    if (k<0) return(false);
+    float nx=m.td[12*k+9], ny=m.td[12*k+10], nz=m.td[12*k+11];
+    float dx=s[0]-c[0], dy=s[1]-c[1], dz=s[2]-c[2];
+    float d=(float)Math.sqrt(dx*dx+dy*dy+dz*dz);
+    // In front, the point moves away from the nearest point; behind, to the front along the normal.
+    if (d>0 && dx*nx+dy*ny+dz*nz>0) {
+      nx=dx/d; ny=dy/d; nz=dz/d;
+    }
+    dx=c[0]+nx*r-s[0];
+    dy=c[1]+ny*r-s[1];
+    dz=c[2]+nz*r-s[2];
+    d=(float)Math.sqrt(dx*dx+dy*dy+dz*dz);
+    if (d==0) return(false);
+    s[6]=dx/d; s[7]=dy/d; s[8]=dz/d;
+    BehaviorCollider.resolve(s, d, friction, restitution);
+    return(true);
+  }
+}
@@ -0,0 +1,508 @@
+//  Copyright (c) 2010-2011, Ioannis (Yiannis) Chatzikonstantinou, ?All rights reserved.
+//  http://www.volatileprototypes.com
+// 
+//  Redistribution and use in source and binary forms, with or without modification, 
+//  are permitted provided that the following conditions are met:
+//  	- Redistributions of source code must retain the above copyright 
+//  notice, this list of conditions and the following disclaimer.
+//  	- Redistributions in binary form must reproduce the above copyright 
+//  notice, this list of conditions and the following disclaimer in the documentation 
+//  and/or other materials provided with the distribution.
+//  
+//  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY 
+//  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+//  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+//  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+//  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+//  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+//  PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+//  WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+//  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+//  OF SUCH DAMAGE.
+
+// Short-range repulsion between the points of a deformable body, so that it does not pass
+// through itself. Pairs are found on a grid with the contact distance as cell size, rebuilt
+// every step. Pairs joined by a Link are excluded, and cells where no point moves are skipped.
+
+package volatileprototypes.fvlib;
+
+import java.util.*;
+
+/**
+ * @author      Yiannis Chatzikonstantinou <contact@volatileprototypes.com>
+ * @version     0.5.9                                    
+ * @since       0.5.9          
+ */
+public final class BehaviorSelfCollision extends Behavior {
+
+private float R = 1.00f, R2 = R*R;				// Contact distance.
+private float S = 0.25f;						// Stiffness.
+private float sleep = 0, sleep2 = 0;			// Speed below which a point is at rest, 0 to disable.
+private final SpatialGrid sg=new SpatialGrid();	// Broadphase grid, with the contact distance as cell size.
+private byte[] awake=new byte[0];				// Per cell, 1 if any of its points moves.
+private boolean empty=true;						// Set when there is nothing to collide.
+
+private Link[] ls;								// Links whose end points are excluded, if set.
+private LinkBuffer lb;							// Or a LinkBuffer holding them.
+private int lv=-1, pv=-1;						// Link and point buffer versions the exclusion was built for.
+private boolean stale=false;					// Set when the exclusion has to be rebuilt.
+// The exclusion is stored with the lower index of each pair. Pairs less than 65 indices
+// apart, which is most of them once the points are in space-filling curve order, are bits
+// of near[i]; bit d-1 marks the pair i,i+d. The rest are sorted in far[fo[i]..fo[i+1]).
+private long[] near;
+private int[] fo, far;
+  
+/**
+ * Constructor, generates a new class instance.
+ *
+ */
+  public BehaviorSelfCollision() {
+    super();
+  }
+  
+/**
+ * Constructor, generates a new class instance using a copy of the supplied Point ArrayList.
+ *
+ * @param pointsin An ArrayList containing Point objects with which the object's list will be initialized.
+ *
+ */
+  public BehaviorSelfCollision(ArrayList<? extends Point> pointsin) {
+    super(pointsin);
+  }
+  
+/**
+ * Constructor.
+ *
+ * Constructor, generates a new class instance using the supplied array.
+ *
+ * @param pointsin An array containing Point objects with which the object's list will be initialized.
+ *
+ */
+  public BehaviorSelfCollision(Point[] pointsin) {
+    super(pointsin);
+  }
+  
+/**
+ * Constructor.
+ *
+ * Constructor, generates a new class instance that works directly on the arrays of the
+ * supplied buffer.
+ *
+ * @param pbin A PointBuffer holding the points.
+ *
+ */
+  public BehaviorSelfCollision(PointBuffer pbin) {
+    super(pbin);
+  }
+  
+/**
+ * Sets the contact distance, below which two points repel each other.
+ *
+ * @param rin A float representing the new contact distance.
+ *
+ * @return The current object.
+ */
+  public BehaviorSelfCollision setRange(float rin) {
+	R = rin;
+	R2 = R * R;
+	return(this);
+  }
+
+/**
+ * Sets the stiffness of the repulsion.
+ *
+ * As in BehaviorConstantDistance, the stiffness is a float value between 0.0 and 0.5,
+ * with 0.5 pushing a pair apart to the contact distance in one step.
+ *
+ * @param sin A float representing the new stiffness value.
+ *
+ * @return The current object.
+ */
+  public BehaviorSelfCollision setS(float sin) {
+	S = sin;
+	return(this);
+  }
+
+/**
+ * Sets the speed below which a point is considered at rest.
+ *
+ * The speed is the length of Point.getV(). Pairs are not tested when the cells of both
+ * points only hold points at rest, so that resting regions cost little more than the grid.
+ * Two resting points that overlap are then left as they are until one of them moves.
+ * 0, the default, tests all pairs.
+ *
+ * @param sin A float representing the new rest speed.
+ *
+ * @return The current object.
+ */
+  public BehaviorSelfCollision setSleep(float sin) {
+	sleep = sin;
+	sleep2 = sin * sin;
+	return(this);
+  }
+
+/**
+ * Sets the Links whose end points do not collide with each other.
+ *
+ * The exclusion is built from the Links when the behavior is stepped, and again whenever the
+ * point buffer is reordered. Links broken by a plastic BehaviorSpringRelaxation are left out;
+ * call this again to take newly broken Links into account.
+ *
+ * @param lin An array containing the Links.
+ *
+ * @return The current object.
+ */
+  public BehaviorSelfCollision setL(Link[] lin) {
+	ls = lin;
+	lb = null;
+	stale = true;
+	return(this);
+  }
+
+/**
+ * Sets the Links whose end points do not collide with each other.
+ *
+ * @param lin An ArrayList containing the Links.
+ *
+ * @return The current object.
+ */
+  public BehaviorSelfCollision setL(ArrayList<Link> lin) {
+	return(setL(lin.toArray(new Link[lin.size()])));
+  }
+
+/**
+ * Sets the LinkBuffer whose end points do not collide with each other.
+ *
+ * The exclusion is rebuilt whenever the LinkBuffer or the point buffer changes order.
+ *
+ * @param lin The LinkBuffer holding the links.
+ *
+ * @return The current object.
+ */
+  public BehaviorSelfCollision setL(LinkBuffer lin) {
+	ls = null;
+	lb = lin;
+	stale = true;
+	return(this);
+  }
+
+/**
+ * Returns the contact distance.
+ *
+ * @return The contact distance.
+ */
+  public float getRange() {
+	return(R);
+  }
+
+/**
+ * Returns the stiffness of the repulsion.
+ *
+ * @return The stiffness value.
+ */
+  public float getS() {
+	return(S);
+  }
+
+/**
+ * Returns the speed below which a point is considered at rest.
+ *
+ * @return The rest speed, 0 if all pairs are tested.
+ */
+  public float getSleep() {
+	return(sleep);
+  }
+  
+  // Rows of points cost about the same.
+  @Override
+  protected final Partition partition() {
+    return(Partition.CONTIGUOUS);
+  }
+  
+  @Override
+  protected final boolean bufferPath() {
+    return(true);
+  }
+  
+  @Override
+  protected final void preStep() {
+    empty=!(R>0) || points.length<2 || (pb!=null && pb.na==0);
+    if (empty) return;
+    if (ls!=null || lb!=null) {
+      if (stale || (lb!=null && lv!=lb.version) || (pb!=null && pv!=pb.version)) exclude();
+    } else {near=null;}
+    if (pb!=null) {sg.build(pb, R);} else {sg.build(points, R);}
+    if (sleep2>0) wake();
+  }
+  
+  @Override
+  protected final void stepRange(int start, int end, int stride, int thread) {
+    if (empty) return;
+    if (pb!=null) {
+      // The buffer kernel writes to the buffer forces or, in deterministic mode, to the thread's buffer.
+      aStepPoints(pb, getDeterministic()?accBuffer(thread, pb.n):pb.frc, start, end, stride);
+    } else {
+      bStepPoints(points, getDeterministic()?accBuffer(thread, points.length):null, start, end, stride);
+    }
+  }
+  
+  // Flags the cells that hold at least one moving point.
+  private final void wake() {
+    final SpatialGrid g=sg;
+    final int[] cl=g.cell;
+    int cells=g.nxy*g.nz;
+    if (awake.length<cells) awake=new byte[cells];
+    final byte[] aw=awake;
+    Arrays.fill(aw, 0, cells, (byte)0);
+    float dx,dy,dz;
+    if (pb!=null) {
+      final float[] ps=pb.pos, ol=pb.old;
+      for (int i=0,i3=0,n=pb.n;i<n;i++,i3+=3) {
+        dx=ps[i3]-ol[i3];
+        dy=ps[i3+1]-ol[i3+1];
+        dz=ps[i3+2]-ol[i3+2];
+        if (dx*dx+dy*dy+dz*dz>=sleep2) aw[cl[i]]=1;
+      }
+    } else {
+      Point p;
+      for (int i=0;i<points.length;i++) {
+        p=points[i];
+        dx=p.x-p.old.x;
+        dy=p.y-p.old.y;
+        dz=p.z-p.old.z;
+        if (dx*dx+dy*dy+dz*dz>=sleep2) aw[cl[i]]=1;
+      }
+    }
+  }
+  
+  // Builds the exclusion from the end points of the Links.
+  private final void exclude() {
+    int n=points.length;
+    int[] a, b;
+    int m=0;
+    if (lb!=null) {
+      int[] e=lb.ends;
+      Point[] bp=lb.pb.points;
+      a=new int[lb.m];
+      b=new int[lb.m];
+      if (pb==lb.pb) {
+        for (int i=0;i<lb.m;i++) {
+          a[m]=e[2*i];
+          b[m++]=e[2*i+1];
+        }
+      } else {
+        IdentityHashMap<Point,Integer> im=indexMap();
+        Integer i1,i2;
+        for (int i=0;i<lb.m;i++) {
+          i1=im.get(bp[e[2*i]]);
+          i2=im.get(bp[e[2*i+1]]);
+          if (i1==null || i2==null) continue;
+          a[m]=i1;
+          b[m++]=i2;
+        }
+      }
+      lv=lb.version;
+    } else {
+      a=new int[ls.length];
+      b=new int[ls.length];
+      IdentityHashMap<Point,Integer> im=pb!=null?null:indexMap();
+      Integer i1,i2;
+      for (Link l : ls) {
+        if (l.broken) continue;
+        if (pb!=null) {
+          if (l.p1.buf!=pb || l.p2.buf!=pb) continue;
+          a[m]=l.p1.idx;
+          b[m++]=l.p2.idx;
+        } else {
+          i1=im.get(l.p1);
+          i2=im.get(l.p2);
+          if (i1==null || i2==null) continue;
+          a[m]=i1;
+          b[m++]=i2;
+        }
+      }
+    }
+    if (pb!=null) pv=pb.version;
+    stale=false;
+    // Near pairs go to the bit masks, far pairs are counted, then placed and sorted per point.
+    long[] nm=new long[n];
+    int[] o=new int[n+1];
+    int lo,hi,d;
+    for (int i=0;i<m;i++) {
+      lo=Math.min(a[i],b[i]);
+      hi=Math.max(a[i],b[i]);
+      d=hi-lo;
+      if (d==0) continue;
+      if (d<=64) {nm[lo]|=1L<<(d-1);} else {o[lo+1]++;}
+    }
+    for (int i=0;i<n;i++) o[i+1]+=o[i];
+    int[] f=new int[o[n]];
+    int[] next=Arrays.copyOf(o, n);
+    for (int i=0;i<m;i++) {
+      lo=Math.min(a[i],b[i]);
+      hi=Math.max(a[i],b[i]);
+      if (hi-lo>64) f[next[lo]++]=hi;
+    }
+    for (int i=0;i<n;i++) {
+      if (o[i+1]-o[i]>1) Arrays.sort(f, o[i], o[i+1]);
+    }
+    near=nm;
+    fo=o;
+    far=f;
+  }
+  
+  private final IdentityHashMap<Point,Integer> indexMap() {
+    IdentityHashMap<Point,Integer> im=new IdentityHashMap<Point,Integer>(2*points.length);
+    for (int i=0;i<points.length;i++) im.put(points[i], i);
+    return(im);
+  }
+  
+  // Whether points i and k are joined by a Link.
+  private final boolean joined(int i, int k) {
+    if (k<i) return(joined(k,i));
+    int d=k-i;
+    if (d<=64) return(((near[i]>>>(d-1))&1L)!=0);
+    return(Arrays.binarySearch(far, fo[i], fo[i+1], k)>=0);
+  }
+  
+  // Visits the 27 cells around each point, and only the points with a higher index so that
+  // every pair is handled once. A point in a resting cell only looks into the moving cells.
+  // The pair is pushed apart along its axis, by S times the penetration on each side.
+  // Forces are added to a (3 floats per point index), or to Point.sforce if a is null.
+  private final void bStepPoints(Point[] points, float[] a, int start, int end, int stride) {
+    float d2,d;
+    Point p1,p2;
+    float x1,y1,z1;
+    float dx,dy,dz,lx,ly,lz;
+    final float r2=R2, r=R, s=S;
+    final SpatialGrid g=sg;
+    final int[] st=g.start, od=g.order, cl=g.cell;
+    final int nx=g.nx, ny=g.ny, nz=g.nz, nxy=g.nxy;
+    final byte[] aw=awake;
+    final boolean sl=sleep2>0, ex=near!=null;
+    boolean rest;
+    int c,cx,cy,cz,x0,x1c,y0,y1c,z0,z1c,cc,k,i3,k3;
+    for (int i=start;i<end;i+=stride) {
+      p1=points[i];
+      x1=p1.x;
+      y1=p1.y;
+      z1=p1.z;
+      i3=3*i;
+      c=cl[i];
+      rest=sl && aw[c]==0;
+      cz=c/nxy;
+      cy=(c-cz*nxy)/nx;
+      cx=c-cz*nxy-cy*nx;
+      x0=cx>0?cx-1:0; x1c=cx<nx-1?cx+1:cx;
+      y0=cy>0?cy-1:0; y1c=cy<ny-1?cy+1:cy;
+      z0=cz>0?cz-1:0; z1c=cz<nz-1?cz+1:cz;
+      for (int zz=z0;zz<=z1c;zz++) {
+        for (int yy=y0;yy<=y1c;yy++) {
+          cc=yy*nx+zz*nxy;
+          for (int xx=x0;xx<=x1c;xx++) {
+            if (rest && aw[cc+xx]==0) continue;
+            for (int m=st[cc+xx],e=st[cc+xx+1];m<e;m++) {
+              k=od[m];
+              if (k<=i) continue;
+              p2=points[k];
+              dx=p2.x-x1;
+              dy=p2.y-y1;
+              dz=p2.z-z1;
+              d2=dx*dx+dy*dy+dz*dz;
+              if (d2<r2 && d2>0) {
+                if (ex && joined(i,k)) continue;
+                d=(float)Math.sqrt(d2);
+                d=s*(r-d)/d;
+                lx=dx*d;
+                ly=dy*d;
+                lz=dz*d;
+                if (a==null) {
+                  p1.sforce.x-=lx;
+                  p1.sforce.y-=ly;
+                  p1.sforce.z-=lz;
+                  p2.sforce.x+=lx;
+                  p2.sforce.y+=ly;
+                  p2.sforce.z+=lz;
+                } else {
+                  k3=3*k;
+                  a[i3]-=lx;
+                  a[i3+1]-=ly;
+                  a[i3+2]-=lz;
+                  a[k3]+=lx;
+                  a[k3+1]+=ly;
+                  a[k3+2]+=lz;
+                }
+              }
+            }
+          }
+        }
+      }
+    }
+  }
+  
+  // Buffer variant.
+  private final void aStepPoints(PointBuffer b, float[] f, int start, int end, int stride) {
+    final float[] ps=b.pos;
+    float d2,d;
+    float x1,y1,z1;
+    float dx,dy,dz,lx,ly,lz;
+    final float r2=R2, r=R, s=S;
+    final SpatialGrid g=sg;
+    final int[] st=g.start, od=g.order, cl=g.cell;
+    final int nx=g.nx, ny=g.ny, nz=g.nz, nxy=g.nxy;
+    final byte[] aw=awake;
+    final boolean sl=sleep2>0, ex=near!=null;
+    // While points of the buffer sleep, only the awake ones are visited, and pair with
+    // sleeping points on both sides of their index.
+    final int[] act=b.sleeping()?b.active:null;
+    final byte[] zs=act!=null?b.sl:null;
+    boolean rest;
+    int c,cx,cy,cz,x0,x1c,y0,y1c,z0,z1c,cc,k,i3,k3;
+    for (int q=start,i;q<end;q+=stride) {
+      i=act!=null?act[q]:q;
+      i3=3*i;
+      x1=ps[i3];
+      y1=ps[i3+1];
+      z1=ps[i3+2];
+      c=cl[i];
+      rest=sl && aw[c]==0;
+      cz=c/nxy;
+      cy=(c-cz*nxy)/nx;
+      cx=c-cz*nxy-cy*nx;
+      x0=cx>0?cx-1:0; x1c=cx<nx-1?cx+1:cx;
+      y0=cy>0?cy-1:0; y1c=cy<ny-1?cy+1:cy;
+      z0=cz>0?cz-1:0; z1c=cz<nz-1?cz+1:cz;
+      for (int zz=z0;zz<=z1c;zz++) {
+        for (int yy=y0;yy<=y1c;yy++) {
+          cc=yy*nx+zz*nxy;
+          for (int xx=x0;xx<=x1c;xx++) {
+            if (rest && aw[cc+xx]==0) continue;
+            for (int m=st[cc+xx],e=st[cc+xx+1];m<e;m++) {
+              k=od[m];
+              if (k<=i && (zs==null || k==i || zs[k]==0)) continue;
+              k3=3*k;
+              dx=ps[k3]-x1;
+              dy=ps[k3+1]-y1;
+              dz=ps[k3+2]-z1;
+              d2=dx*dx+dy*dy+dz*dz;
+              if (d2<r2 && d2>0) {
+                if (ex && joined(i,k)) continue;
+                d=(float)Math.sqrt(d2);
+                d=s*(r-d)/d;
+                lx=dx*d;
+                ly=dy*d;
+                lz=dz*d;
+                f[i3]-=lx;
+                f[i3+1]-=ly;
+                f[i3+2]-=lz;
+                f[k3]+=lx;
+                f[k3+1]+=ly;
+                f[k3+2]+=lz;
+              }
+            }
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,1155 @@
+//  Copyright (c) 2010-2011, Ioannis (Yiannis) Chatzikonstantinou, ?All rights reserved.
+//  http://www.volatileprototypes.com
+// 
+//  Redistribution and use in source and binary forms, with or without modification, 
+//  are permitted provided that the following conditions are met:
+//  	- Redistributions of source code must retain the above copyright 
+//  notice, this list of conditions and the following disclaimer.
+//  	- Redistributions in binary form must reproduce the above copyright 
+//  notice, this list of conditions and the following disclaimer in the documentation 
+//  and/or other materials provided with the distribution.
+//  
+//  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY 
+//  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+//  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+//  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+//  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+//  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+//  PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+//  WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+//  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+//  OF SUCH DAMAGE.
+
+// This library uses portions of code and examples from Thomas Jakobsen's
+// paper "Advanced Character Physics".
+
+package volatileprototypes.fvlib;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+public final class BehaviorSpringRelaxation extends Solver {
+
+private Link[] links;			// array that holds points
+private LinkBuffer lb;			// Link store streamed by the buffer path, if set instead of links.
+private Link[] ls;				// The links in the order the kernels run them: links, or links grouped by colour.
+private int[] perm;				// Index in lb of each link in run order, if lb is grouped by colour.
+private boolean colored=false;	// Relax links in colour batches that share no end points.
+private int[] cs;				// Start of each colour in ls, plus the end of the last colour.
+private boolean fast=false;		// Option for fast/accurate spring solver.
+private Point[] nodes;			// Distinct link end points, built on demand for deterministic mode.
+private int[] li;				// Indices of the two end points of each link in nodes.
+private PointBuffer pb;			// Point store streamed by the buffer path, if set.
+private int[] bi;				// Indices of the two end points of each link in pb.
+private int pv;					// Version of pb that bi was built for.
+private boolean simd=true;		// Use the vector kernels on the buffer path, if available.
+private int[] e1,e2;			// Position offsets of the end points of each link, one plane per coordinate, for the vector kernels.
+private float[] rc,rs;			// Rest length and stiffness of each link in run order, for the buffer kernels.
+private float[][] tmp;			// Per-thread scratch of the vector kernels.
+private int na;					// Number of intact links in run order.
+private int lv;					// Version of lb that the run order was built for.
+private boolean plastic=false;	// Update rest lengths and break links in the kernels.
+private float flow=0;			// Share of the difference to the current length the rest length follows each step.
+private float ycomp=Float.POSITIVE_INFINITY, ytens=Float.POSITIVE_INFINITY;	// Compressive and tensile yield strains.
+private float yrate=0;			// Share of the difference the rest length follows each step past yield.
+private float frac=0;			// Fracture strain, 0 for unbreakable links.
+private boolean[] brk;			// Links in run order that broke during the step.
+private int[] nb;				// Per-thread count of links that broke during the step.
+private int[] al;				// Positions in run order of the links with an awake end point, while points of pb sleep.
+private int nl;					// Number of links in al.
+private boolean asl=false;		// Whether the kernels run the links of al.
+private float[] kmax;			// Largest stiffness per point, unweighted and weighted, or null until computed for the current links.
+private int sv=-1;				// Sleep version of pb that al was built for.
+private float[][] qs;			// Per-thread largest and smallest strain factor of the kernels in the step.
+private float strain=0;			// Largest strain of any link in the last step.
+protected float peak=0;			// Largest strain since an AdaptiveStepper last cleared it.
+
+/**
+ * Constructor, generates a new class instance.
+ *
+ */
+  public BehaviorSpringRelaxation() {
+    links=new Link[0];
+    order();
+  }
+  
+/**
+ * Constructor, generates a new class instance using a copy of the supplied Link ArrayList.
+ *
+ * @param linksin An ArrayList containing Link objects with which the object's list will be initialized.
+ *
+ */
+  public BehaviorSpringRelaxation(ArrayList<Link> linksin) {
+    links=new Link[linksin.size()];
+    linksin.toArray(links);
+    order();
+  }
+  
+/**
+ * Constructor, generates a new class instance using the supplied Link array.
+ *
+ * @param linksin An array containing Link objects with which the object's array will be initialized.
+ *
+ */
+  public BehaviorSpringRelaxation(Link[] linksin) {
+    links=linksin;
+    order();
+  }
+  
+/**
+ * Constructor, generates a new class instance using the supplied LinkBuffer.
+ *
+ * @param lbin A LinkBuffer holding the links; its PointBuffer becomes the point buffer of this object.
+ *
+ */
+  public BehaviorSpringRelaxation(LinkBuffer lbin) {
+    setL(lbin);
+  }
+  
+/**
+ * Sets the object's Link array using a copy of the supplied ArrayList.
+ *
+ * @param linksin The ArrayList containing Link objects.
+ *
+ * @return The current object.
+ */
+  public BehaviorSpringRelaxation setL(ArrayList<Link> linksin) {
+    links=new Link[linksin.size()];
+  	linksin.toArray(links);
+  	lb=null;
+  	order();
+  	return(this);
+  }
+
+/**
+ * Sets the object's Link array using the supplied array.
+ *
+ * @param linksin The array containing Link objects.
+ *
+ * @return The current object.
+ */
+  public BehaviorSpringRelaxation setL(Link[] linksin) {
+  	links=linksin;
+  	lb=null;
+  	order();
+  	return(this);
+  }
+
+/**
+ * Sets the links using the supplied LinkBuffer.
+ *
+ * Springs are then relaxed on the buffer arrays of the LinkBuffer and of its PointBuffer, which
+ * becomes the point buffer of this object, without touching Link objects. Call setL() again
+ * after moving link end points.
+ *
+ * @param lbin The LinkBuffer holding the links.
+ *
+ * @return The current object.
+ */
+  public BehaviorSpringRelaxation setL(LinkBuffer lbin) {
+  	lb=lbin;
+  	links=null;
+  	pb=lb.pb;
+  	order();
+  	return(this);
+  }
+
+/**
+ * Sets the PointBuffer holding the end points of the links.
+ *
+ * Springs are then relaxed directly on the buffer arrays, using the buffer index of each end point.
+ * Every end point must be part of the buffer. Pass null to work on the Point objects again.
+ * Not needed when the links are set as a LinkBuffer.
+ *
+ * @param pbin The PointBuffer holding the end points, or null.
+ *
+ * @return The current object.
+ */
+  public BehaviorSpringRelaxation setBuffer(PointBuffer pbin) {
+  	if (lb!=null && pbin!=lb.pb) throw new IllegalArgumentException("The links are stored in a LinkBuffer over another PointBuffer.");
+  	pb=pbin;
+  	bi=null;
+  	if (pb!=null) bind();
+  	return(this);
+  }
+
+/**
+ *  Get the current point buffer.
+ *
+ * @return The current point buffer, or null if the links are relaxed on Point objects.
+ */
+  @Override
+  public PointBuffer getBuffer() {
+  	return(pb);
+  }
+
+/**
+ *  Get the current Link array.
+ *
+ * @return The current Link array, or the Link views of the LinkBuffer if one is set.
+ */
+  public Link[] getL() {
+  	return(lb!=null?lb.getL():links);
+  }
+
+/**
+ *  Get the current link buffer.
+ *
+ * @return The current link buffer, or null if the links are set as Link objects.
+ */
+  public LinkBuffer getLinkBuffer() {
+  	return(lb);
+  }
+  
+/**
+ * Sets whether to use a faster solver or the normal one.
+ *
+ * In fvlib, a fast solver is implemented for spring interactions that uses just one Newton iteration to approximate
+ * the square root of the squared length between points using the rest length as reference. The faster solver reduces precision but increases
+ * simulation speed noticeably.
+ *
+ * @param fin A boolean representing whether to use fast sqrt.
+ *
+ * @return The current object.
+ */
+  public final BehaviorSpringRelaxation setFast(boolean fin) {
+  	fast=fin;
+  	return(this);
+  }
+  
+/**
+ * Sets whether to relax springs in colour batches.
+ *
+ * The link graph is coloured so that no two links of a colour share an end point. Each colour is then
+ * relaxed as one parallel pass, with every thread writing straight to the forces of its links' end points:
+ * there are no data races and no per-thread force buffers, and the result does not depend on the number
+ * of threads, so this mode is also deterministic. The colouring is built here and again on each setL(),
+ * so call setL() if link end points are changed in place.
+ *
+ * @param cin A boolean representing whether to relax springs in colour batches.
+ *
+ * @return The current object.
+ */
+  public final BehaviorSpringRelaxation setColored(boolean cin) {
+  	if (cin!=colored) {
+  	  colored=cin;
+  	  order();
+  	}
+  	return(this);
+  }
+
+/**
+ *  Get whether springs are relaxed in colour batches.
+ *
+ * @return A boolean representing whether springs are relaxed in colour batches.
+ */
+  public final boolean getColored() {
+  	return(colored);
+  }
+
+/**
+ *  Get the number of colours of the link graph.
+ *
+ * @return The number of colour batches relaxed per step, or 0 if colour batches are not used.
+ */
+  public final int getColors() {
+  	return(colored?cs.length-1:0);
+  }
+
+/**
+ * Sets whether to relax springs with the Vector API kernels.
+ *
+ * The vector kernels run on the buffer path only (see setBuffer()), and only if Simd.available().
+ * Otherwise the scalar kernels are used. Enabled by default.
+ *
+ * @param sin A boolean representing whether to use the vector kernels.
+ *
+ * @return The current object.
+ */
+  public final BehaviorSpringRelaxation setSimd(boolean sin) {
+  	simd=sin;
+  	return(this);
+  }
+
+/**
+ *  Get whether the vector kernels are enabled.
+ *
+ * @return A boolean representing whether the vector kernels are enabled.
+ */
+  public final boolean getSimd() {
+  	return(simd);
+  }
+
+/**
+ * Sets whether springs are plastic.
+ *
+ * In plastic mode the kernels compute the exact current length of each link in the same pass as its force,
+ * store it in the L field of Link objects, and update the rest length with the rules set by setPlasticity()
+ * and setFracture(). This replaces calling updateL() and adjusting C on every Link after each step.
+ * The fast solver and the vector kernels do not apply in this mode.
+ *
+ * @param pin A boolean representing whether springs are plastic.
+ *
+ * @return The current object.
+ */
+  public final BehaviorSpringRelaxation setPlastic(boolean pin) {
+  	if (pin!=plastic) {
+  	  plastic=pin;
+  	  order();
+  	}
+  	return(this);
+  }
+
+/**
+ *  Get whether springs are plastic.
+ *
+ * @return A boolean representing whether springs are plastic.
+ */
+  public final boolean getPlastic() {
+  	return(plastic);
+  }
+
+/**
+ * Sets the plastic flow and yield rules, and makes springs plastic.
+ *
+ * Each step, the rest length C moves by flow*(L-C) towards the current length L. When the link is
+ * compressed past L*(1+compression)<C or stretched past L*(1-tension)>C, it yields and C moves by
+ * a further rate*(L-C). By default there is no flow and no yield.
+ *
+ * @param flowin The share of the difference the rest length follows each step, 0 for none.
+ * @param compression The compressive yield strain.
+ * @param tension The tensile yield strain.
+ * @param ratein The share of the difference the rest length follows each step past yield.
+ *
+ * @return The current object.
+ */
+  public final BehaviorSpringRelaxation setPlasticity(float flowin, float compression, float tension, float ratein) {
+  	flow=flowin;
+  	ycomp=compression;
+  	ytens=tension;
+  	yrate=ratein;
+  	return(setPlastic(true));
+  }
+
+/**
+ *  Get the plastic flow factor.
+ *
+ * @return The share of the difference the rest length follows each step.
+ */
+  public final float getFlow() {
+  	return(flow);
+  }
+
+/**
+ *  Get the compressive yield strain.
+ *
+ * @return The compressive yield strain.
+ */
+  public final float getYieldCompression() {
+  	return(ycomp);
+  }
+
+/**
+ *  Get the tensile yield strain.
+ *
+ * @return The tensile yield strain.
+ */
+  public final float getYieldTension() {
+  	return(ytens);
+  }
+
+/**
+ *  Get the yield rate.
+ *
+ * @return The share of the difference the rest length follows each step past yield.
+ */
+  public final float getYieldRate() {
+  	return(yrate);
+  }
+
+/**
+ * Sets the fracture strain, and makes springs plastic.
+ *
+ * A link whose length differs from its rest length by more than strain*C at the start of a step breaks:
+ * it applies no force, isBroken() becomes true, and it is dropped from the links relaxed from then on.
+ * Links of a LinkBuffer are removed from the buffer. Dropping links does not rebuild any arrays; the
+ * remaining links are moved down in place, at the end of steps in which links broke.
+ *
+ * @param strain The fracture strain, 0 for unbreakable links.
+ *
+ * @return The current object.
+ */
+  public final BehaviorSpringRelaxation setFracture(float strain) {
+  	frac=strain;
+  	return(setPlastic(true));
+  }
+
+/**
+ *  Get the fracture strain.
+ *
+ * @return The fracture strain, 0 for unbreakable links.
+ */
+  public final float getFracture() {
+  	return(frac);
+  }
+
+/**
+ *  Get the largest strain, |L-C|/C, of any link in the last step. Computed by the kernels
+ *  along with the forces, from the same estimate of the length as the force.
+ *
+ * @return The largest strain.
+ */
+  public final float getStrain() {
+  	return(strain);
+  }
+
+/**
+ *  Get the largest sum of the stiffness of the links of any point, optionally divided by
+ *  its weight. Explicit integration keeps the springs stable with timesteps up to about
+ *  sqrt(2/K), as long as the other behaviors are softer. Computed once for the current links,
+ *  and again when they are set, reordered or break; call setL() again after changing link
+ *  stiffness or point weights in place.
+ *
+ * @param win Whether to divide by the point weights, as integrators with setMass() do.
+ *
+ * @return The largest stiffness per point.
+ */
+  public final float getStiffness(boolean win) {
+    if (kmax==null || (lb!=null && lv!=lb.version)) kmax=stiffness();
+    return(kmax[win?1:0]);
+  }
+
+  // Computes the largest stiffness per point, unweighted and weighted, in one pass.
+  private final float[] stiffness() {
+    float[] k=new float[2];
+    if (lb!=null) {
+      // Gershgorin bound of the stiffness matrix, halved: each link adds S to both ends.
+      float[] a=new float[pb.n], w1=pb.w1;
+      int[] e=lb.ends;
+      for (int i=0;i<lb.m;i++) {
+        a[e[2*i]]+=lb.s[i];
+        a[e[2*i+1]]+=lb.s[i];
+      }
+      for (int i=0;i<a.length;i++) {
+        k[0]=Math.max(k[0],a[i]);
+        k[1]=Math.max(k[1],a[i]*w1[i]);
+      }
+    } else if (links!=null) {
+      IdentityHashMap<Point,float[]> map=new IdentityHashMap<Point,float[]>();
+      for (Link l : links) {
+        if (l.broken) continue;
+        stiffness(map,l.p1,l.S);
+        stiffness(map,l.p2,l.S);
+      }
+      for (Map.Entry<Point,float[]> m : map.entrySet()) {
+        float a=m.getValue()[0];
+        k[0]=Math.max(k[0],a);
+        k[1]=Math.max(k[1],a*m.getKey().w1);
+      }
+    }
+    return(k);
+  }
+
+  // Adds s to the stiffness of p.
+  private static final void stiffness(IdentityHashMap<Point,float[]> map, Point p, float s) {
+    float[] a=map.get(p);
+    if (a==null) map.put(p,a=new float[1]);
+    a[0]+=s;
+  }
+
+/**
+ *  Get the number of links that have not broken.
+ *
+ * @return The number of links relaxed each step.
+ */
+  public final int getActive() {
+  	return(na);
+  }
+
+  @Override
+  protected final int workSize() {
+    return(asl?nl:na);
+  }
+  
+  @Override
+  protected final Partition partition() {
+    return(Partition.CONTIGUOUS);
+  }
+  
+  @Override
+  protected final int passes() {
+    return(colored?cs.length-1:1);
+  }
+  
+  @Override
+  protected final void passFunction(int pass, int step, int offset) {
+    if (!colored) {
+      run(step,offset);
+      return;
+    }
+    // Links of one colour share no end points, so their threads never write the same force.
+    int s=cs[pass], n=cs[pass+1]-s;
+    relax(s+(int)((long)n*offset/step), s+(int)((long)n*(offset+1)/step), 1, offset, false);
+  }
+  
+  @Override
+  protected final void preStep() {
+    if (lb!=null && (lv!=lb.version || pv!=pb.version)) {
+      // The points were reordered, or links removed from the LinkBuffer. It has sorted or
+      // moved its links, so colour them again too.
+      order();
+    } else if (pb!=null && pv!=pb.version) {
+      bind();
+    }
+    if (getDeterministic() && !colored && pb==null && nodes==null) index();
+    if (pb!=null && simd && Simd.available() && (tmp==null || tmp.length<getThreads())) {
+      tmp=new float[getThreads()][3*Simd.BLOCK];
+    }
+    if (qs==null || qs.length<getThreads()) qs=new float[getThreads()][2];
+    for (float[] q : qs) q[0]=q[1]=0;
+    if (plastic) {
+      if (brk==null || brk.length<na) brk=new boolean[na];
+      if (nb==null || nb.length<getThreads()) nb=new int[getThreads()];
+    }
+    // Coloured batches keep their partition and skip the sleeping links in the kernels.
+    asl=pb!=null && !colored && pb.sleeping();
+    if (asl && sv!=pb.sv) awake();
+  }
+
+  // The kernels record the extremes of their strain factor, which are turned into the
+  // strain of the longest and shortest links here.
+  @Override
+  protected final void postStep() {
+    float qx=0,qn=0;
+    for (float[] q : qs) {
+      if (q[0]>qx) qx=q[0];
+      if (q[1]<qn) qn=q[1];
+    }
+    // The factor is 1-C/L, or C^2/(L^2+C^2)-1/2 in the fast kernels, 0 at rest length.
+    if (fast && !plastic) {
+      strain=(float)Math.max(Math.sqrt((.5f-qn)/(.5f+qn))-1, 1-Math.sqrt((.5f-qx)/(.5f+qx)));
+    } else {
+      strain=Math.max(qx/(1-qx), -qn/(1-qn));
+    }
+    if (strain>peak) peak=strain;
+    if (!plastic) return;
+    int n=0;
+    for (int i=0;i<nb.length;i++) {
+      n+=nb[i];
+      nb[i]=0;
+    }
+    if (n>0) compact();
+  }
+
+  @Override
+  protected final void stepRange(int start, int end, int stride, int thread) {
+    // Only reached with colour batches when there is a single colour, which is free of conflicts.
+    boolean acc=getDeterministic() && !colored;
+    if (asl) {
+      // Positions in al, relaxed a run of consecutive links at a time.
+      final int[] a=al;
+      for (int i=start,j,k;i<end;i=j) {
+        if (stride==1) {
+          for (j=i+1;j<end && a[j]==a[j-1]+1;j++);
+        } else {
+          j=i+stride;
+        }
+        k=a[i];
+        relax(k, stride==1?k+j-i:k+1, 1, thread, acc);
+      }
+      return;
+    }
+    relax(start, end, stride, thread, acc);
+  }
+  
+  // Lists the links in run order that have an awake end point.
+  private final void awake() {
+    final byte[] z=pb.sl;
+    final int[] b=bi;
+    if (al==null || al.length<na) al=new int[na];
+    int n=0;
+    for (int i=0;i<na;i++) {
+      if (z[b[2*i]]==0 || z[b[2*i+1]]==0) al[n++]=i;
+    }
+    nl=n;
+    sv=pb.sv;
+  }
+
+  // Relaxes links start, start+stride, ... below end of ls. With acc set, forces go to
+  // the thread's buffer for a later reduce, else straight to the points.
+  private final void relax(int start, int end, int stride, int thread, boolean acc) {
+    Link[] links=ls;
+    float[] m=qs[thread];
+    if (plastic) {
+      int n;
+      if (pb!=null) {
+        refresh(start, end, stride);
+        n=pStepLinks(pb.pos, bi, rc, rs, acc?accBuffer(thread, pb.n):pb.frc, colored && pb.sleeping()?pb.sl:null, start, end, stride, m);
+      } else {
+        n=pbStepLinks(links, acc?li:null, acc?accBuffer(thread, nodes.length):null, start, end, stride, m);
+      }
+      nb[thread]+=n;
+      return;
+    }
+    if (pb!=null) {
+      // The buffer kernels write to the buffer forces or, in deterministic mode, to the thread's buffer.
+      float[] f=acc?accBuffer(thread, pb.n):pb.frc;
+      // Coloured batches skip the links between two sleeping points in the scalar kernels.
+      byte[] z=colored && pb.sleeping()?pb.sl:null;
+      refresh(start, end, stride);
+      if (stride==1 && z==null && simd && Simd.available()) {
+        Simd.VEC.springs(pb.pos, e1, e2, rc, rs, fast, f, tmp[thread], m, start, end);
+        return;
+      }
+      if (fast) {faStepLinks(pb.pos, bi, rc, rs, f, z, start, end, stride, m);} else {aStepLinks(pb.pos, bi, rc, rs, f, z, start, end, stride, m);}
+    } else if (acc) {
+      float[] a=accBuffer(thread, nodes.length);
+      if (fast) {fbStepLinks(links, li, a, start, end, stride, m);} else {bStepLinks(links, li, a, start, end, stride, m);}
+    } else if (fast) {fStepLinks(links, start, end, stride, m);} else {stepLinks(links, start, end, stride, m);}
+  }
+  
+  @Override
+  protected final void reduceFunction(int step, int offset) {
+    if (colored) return;
+    if (pb!=null) {reduce(pb.frc, pb.n, step, offset);} else {reduce(nodes, step, offset);}
+  }
+  
+  // Copies rest length and stiffness of links start, start+stride, ... below end into
+  // the packed arrays, unless these are the arrays of the LinkBuffer. Links own their
+  // slots, so each thread refreshes its own range.
+  private final void refresh(int start, int end, int stride) {
+    float[] c=rc, s=rs;
+    if (lb==null) {
+      Link l;
+      for (int i=start;i<end;i+=stride) {
+        l=ls[i];
+        c[i]=l.C;
+        s[i]=l.S;
+      }
+    } else if (perm!=null) {
+      int[] o=perm;
+      for (int i=start;i<end;i+=stride) {
+        c[i]=lb.c[o[i]];
+        s[i]=lb.s[o[i]];
+      }
+    }
+  }
+  
+  // Sets the order in which the kernels run the links, colouring them if needed,
+  // and drops the indices built for the previous order. Broken links are left out,
+  // and in plastic mode ls is a copy, so that dropping links never changes links.
+  private final void order() {
+    kmax=null;
+    cs=null;
+    perm=null;
+    if (lb!=null) {
+      ls=null;
+      na=lb.m;
+      lv=lb.version;
+      if (colored) perm=color(lb.ends, lb.pb.n);
+    } else {
+      Link[] src=links;
+      int k=0;
+      for (Link l : links) if (!l.broken) k++;
+      if (k<links.length) {
+        src=new Link[k];
+        k=0;
+        for (Link l : links) if (!l.broken) src[k++]=l;
+      }
+      na=src.length;
+      if (colored) {
+        IdentityHashMap<Point,Integer> map=new IdentityHashMap<Point,Integer>();
+        int[] pi=new int[2*src.length];
+        Point p;
+        Integer j;
+        for (int i=0;i<pi.length;i++) {
+          Link l=src[i>>1];
+          p=(i&1)==0?l.p1:l.p2;
+          j=map.get(p);
+          if (j==null) {
+            j=map.size();
+            map.put(p,j);
+          }
+          pi[i]=j;
+        }
+        int[] o=color(pi, map.size());
+        ls=new Link[o.length];
+        for (int i=0;i<o.length;i++) ls[i]=src[o[i]];
+      } else {
+        ls=plastic && src==links?links.clone():src;
+      }
+    }
+    nodes=null;
+    if (pb!=null) bind();
+  }
+  
+  // Drops the links that broke during the step from the run order, and from the
+  // LinkBuffer if one is set. The remaining links move down in place, keeping their
+  // order and colour, so no index or colouring is rebuilt.
+  private final void compact() {
+    kmax=null;
+    boolean[] b=brk;
+    int[] map=null;
+    if (lb!=null) {
+      // The LinkBuffer keeps the run order unless the links are coloured.
+      boolean[] d=b;
+      if (perm!=null) {
+        d=new boolean[lb.m];
+        for (int i=0;i<na;i++) if (b[i]) d[perm[i]]=true;
+      }
+      map=lb.remove(d);
+      lv=lb.version;
+    }
+    boolean own=pb!=null && bi!=(lb!=null?lb.ends:null), idx=pb==null && nodes!=null, vec=pb!=null && e1!=null;
+    int M=vec?e1.length/3:0, nc=colored?cs.length-1:1, w=0, s, e;
+    for (int c=0;c<nc;c++) {
+      s=colored?cs[c]:0;
+      e=colored?cs[c+1]:na;
+      if (colored) cs[c]=w;
+      for (int i=s;i<e;i++) {
+        if (b[i]) {
+          b[i]=false;
+          if (ls!=null) ls[i].broken=true;
+          continue;
+        }
+        if (w!=i) {
+          if (ls!=null) ls[w]=ls[i];
+          if (perm!=null) perm[w]=perm[i];
+          if (own) {
+            bi[2*w]=bi[2*i];
+            bi[2*w+1]=bi[2*i+1];
+          }
+          if (idx) {
+            li[2*w]=li[2*i];
+            li[2*w+1]=li[2*i+1];
+          }
+          if (vec) {
+            for (int k=0;k<3;k++) {
+              e1[k*M+w]=e1[k*M+i];
+              e2[k*M+w]=e2[k*M+i];
+            }
+          }
+        }
+        if (perm!=null) perm[w]=map[perm[w]];
+        w++;
+      }
+    }
+    if (colored) cs[nc]=w;
+    if (ls!=null) Arrays.fill(ls, w, na, null);
+    na=w;
+    sv=-1;
+    // Broken links may split islands of sleeping points.
+    if (pb!=null) pb.join(this, bi, na);
+  }
+  
+  // Colours the links (see LinkBuffer.color()), sets cs and returns the links sorted by colour.
+  private final int[] color(int[] pi, int np) {
+    int[][] oc=LinkBuffer.color(pi, np);
+    cs=oc[1];
+    return(oc[0]);
+  }
+
+  
+  // Looks up the buffer index of the two end points of each link, and sets up the
+  // packed rest length and stiffness arrays.
+  private final void bind() {
+    int m;
+    pv=pb.version;
+    sv=-1;
+    if (lb!=null) {
+      m=lb.m;
+      if (perm==null) {
+        bi=lb.ends;
+        rc=lb.c;
+        rs=lb.s;
+      } else {
+        int[] idx=new int[2*m];
+        for (int i=0;i<m;i++) {
+          idx[2*i]=lb.ends[2*perm[i]];
+          idx[2*i+1]=lb.ends[2*perm[i]+1];
+        }
+        bi=idx;
+        rc=new float[m];
+        rs=new float[m];
+      }
+      pb.join(this, bi, m);
+    } else {
+      Link[] links=ls;
+      m=na;
+      int[] idx=new int[2*m];
+      Point p;
+      for (int i=0;i<idx.length;i++) {
+        Link l=links[i>>1];
+        p=(i&1)==0?l.p1:l.p2;
+        if (p.buf!=pb) throw new IllegalArgumentException("Link end point is not part of the PointBuffer.");
+        idx[i]=p.idx;
+      }
+      bi=idx;
+      rc=new float[m];
+      rs=new float[m];
+      pb.join(this, bi, m);
+    }
+    e1=e2=null;
+    if (Simd.available()) {
+      e1=new int[3*m];
+      e2=new int[3*m];
+      for (int i=0;i<m;i++) {
+        for (int k=0;k<3;k++) {
+          e1[k*m+i]=3*bi[2*i]+k;
+          e2[k*m+i]=3*bi[2*i+1]+k;
+        }
+      }
+    }
+  }
+  
+  // Collects the distinct end points of the links and the index of each end point,
+  // so that deterministic mode can address per-thread force buffers.
+  // Rebuilt after setL(); call setL() again if link end points are changed in place.
+  private final void index() {
+    Link[] links=ls;
+    IdentityHashMap<Point,Integer> map=new IdentityHashMap<Point,Integer>();
+    ArrayList<Point> pts=new ArrayList<Point>();
+    int[] idx=new int[2*na];
+    Point p;
+    Integer k;
+    for (int i=0;i<idx.length;i++) {
+      Link l=links[i>>1];
+      p=(i&1)==0?l.p1:l.p2;
+      k=map.get(p);
+      if (k==null) {
+        k=pts.size();
+        map.put(p,k);
+        pts.add(p);
+      }
+      idx[i]=k;
+    }
+    li=idx;
+    nodes=pts.toArray(new Point[pts.size()]);
+  }
+  
+  //Dynamic relaxation solver for springs
+  //for details see:
+  //Jakobsen, Thomas - Advanced Character Physics
+  private final void stepLinks(Link[] links, int start, int end, int stride, float[] m) {
+    float d,q,qx=0,qn=0;
+    float L2,C;
+    Point p1,p2;
+    float dx,dy,dz,lx,ly,lz;
+    Link l;
+    for (int i=start;i<end;i+=stride) {
+      l=links[i];
+      p1=l.p1; p2=l.p2;
+      dx=p2.x-p1.x;
+      dy=p2.y-p1.y;
+      dz=p2.z-p1.z;
+      L2 = dx*dx+dy*dy+dz*dz;
+      C = l.C;
+      d = C + L2/C; 
+      d = (float)(d*.25 + L2/d);
+      q = 1-(C/d);
+      if (q>qx) qx=q; else if (q<qn) qn=q;
+      d = (float)(l.S*q);
+      lx=d*dx;
+      ly=d*dy;
+      lz=d*dz;
+      p1.sforce.x+=lx;
+      p1.sforce.y+=ly;
+      p1.sforce.z+=lz;
+      p2.sforce.x-=lx;
+      p2.sforce.y-=ly;
+      p2.sforce.z-=lz;
+    }
+    if (qx>m[0]) m[0]=qx;
+    if (qn<m[1]) m[1]=qn;
+  }
+  
+  // Faster variant with one Newton iteration.
+  private final void fStepLinks(Link[] links, int start, int end, int stride, float[] m) {
+    float d,q,qx=0,qn=0;
+    float L2,C2;
+    Point p1,p2;
+    float dx,dy,dz,lx,ly,lz;
+    Link l;
+    for (int i=start;i<end;i+=stride) {
+      l=links[i];
+      p1=l.p1; p2=l.p2;
+      dx=p2.x-p1.x;
+      dy=p2.y-p1.y;
+      dz=p2.z-p1.z;
+      L2 = dx*dx+dy*dy+dz*dz;
+      C2 = l.C; 
+      C2*= C2;
+      q = C2/(L2+C2)-.5f;
+      if (q>qx) qx=q; else if (q<qn) qn=q;
+      d = (float)(l.S*q);
+      lx=d*dx;
+      ly=d*dy;
+      lz=d*dz;
+      p1.sforce.x-=lx;
+      p1.sforce.y-=ly;
+      p1.sforce.z-=lz;
+      p2.sforce.x+=lx;
+      p2.sforce.y+=ly;
+      p2.sforce.z+=lz;
+    }
+    if (qx>m[0]) m[0]=qx;
+    if (qn<m[1]) m[1]=qn;
+  }
+  
+  // Deterministic variants. Forces go to the thread's buffer, 3 floats per end point index.
+  private final void bStepLinks(Link[] links, int[] li, float[] a, int start, int end, int stride, float[] m) {
+    float d,q,qx=0,qn=0;
+    float L2,C;
+    Point p1,p2;
+    float dx,dy,dz,lx,ly,lz;
+    Link l;
+    int i1,i2;
+    for (int i=start;i<end;i+=stride) {
+      l=links[i];
+      p1=l.p1; p2=l.p2;
+      i1=3*li[2*i]; i2=3*li[2*i+1];
+      dx=p2.x-p1.x;
+      dy=p2.y-p1.y;
+      dz=p2.z-p1.z;
+      L2 = dx*dx+dy*dy+dz*dz;
+      C = l.C;
+      d = C + L2/C; 
+      d = (float)(d*.25 + L2/d);
+      q = 1-(C/d);
+      if (q>qx) qx=q; else if (q<qn) qn=q;
+      d = (float)(l.S*q);
+      lx=d*dx;
+      ly=d*dy;
+      lz=d*dz;
+      a[i1]+=lx;
+      a[i1+1]+=ly;
+      a[i1+2]+=lz;
+      a[i2]-=lx;
+      a[i2+1]-=ly;
+      a[i2+2]-=lz;
+    }
+    if (qx>m[0]) m[0]=qx;
+    if (qn<m[1]) m[1]=qn;
+  }
+  
+  private final void fbStepLinks(Link[] links, int[] li, float[] a, int start, int end, int stride, float[] m) {
+    float d,q,qx=0,qn=0;
+    float L2,C2;
+    Point p1,p2;
+    float dx,dy,dz,lx,ly,lz;
+    Link l;
+    int i1,i2;
+    for (int i=start;i<end;i+=stride) {
+      l=links[i];
+      p1=l.p1; p2=l.p2;
+      i1=3*li[2*i]; i2=3*li[2*i+1];
+      dx=p2.x-p1.x;
+      dy=p2.y-p1.y;
+      dz=p2.z-p1.z;
+      L2 = dx*dx+dy*dy+dz*dz;
+      C2 = l.C; 
+      C2*= C2;
+      q = C2/(L2+C2)-.5f;
+      if (q>qx) qx=q; else if (q<qn) qn=q;
+      d = (float)(l.S*q);
+      lx=d*dx;
+      ly=d*dy;
+      lz=d*dz;
+      a[i1]-=lx;
+      a[i1+1]-=ly;
+      a[i1+2]-=lz;
+      a[i2]+=lx;
+      a[i2+1]+=ly;
+      a[i2+2]+=lz;
+    }
+    if (qx>m[0]) m[0]=qx;
+    if (qn<m[1]) m[1]=qn;
+  }
+  
+  // Buffer variants. Read positions from ps, rest length and stiffness from c and s,
+  // and write to f, 3 floats per point index. Links whose end points both sleep in z
+  // are skipped, if z is set.
+  private final void aStepLinks(float[] ps, int[] bi, float[] c, float[] s, float[] f, byte[] z, int start, int end, int stride, float[] m) {
+    float d,q,qx=0,qn=0;
+    float L2,C;
+    float dx,dy,dz,lx,ly,lz;
+    int i1,i2;
+    for (int i=start;i<end;i+=stride) {
+      i1=bi[2*i]; i2=bi[2*i+1];
+      if (z!=null && z[i1]!=0 && z[i2]!=0) continue;
+      i1*=3; i2*=3;
+      dx=ps[i2]-ps[i1];
+      dy=ps[i2+1]-ps[i1+1];
+      dz=ps[i2+2]-ps[i1+2];
+      L2 = dx*dx+dy*dy+dz*dz;
+      C = c[i];
+      d = C + L2/C; 
+      d = (float)(d*.25 + L2/d);
+      q = 1-(C/d);
+      if (q>qx) qx=q; else if (q<qn) qn=q;
+      d = (float)(s[i]*q);
+      lx=d*dx;
+      ly=d*dy;
+      lz=d*dz;
+      f[i1]+=lx;
+      f[i1+1]+=ly;
+      f[i1+2]+=lz;
+      f[i2]-=lx;
+      f[i2+1]-=ly;
+      f[i2+2]-=lz;
+    }
+    if (qx>m[0]) m[0]=qx;
+    if (qn<m[1]) m[1]=qn;
+  }
+  
+  private final void faStepLinks(float[] ps, int[] bi, float[] c, float[] s, float[] f, byte[] z, int start, int end, int stride, float[] m) {
+    float d,q,qx=0,qn=0;
+    float L2,C2;
+    float dx,dy,dz,lx,ly,lz;
+    int i1,i2;
+    for (int i=start;i<end;i+=stride) {
+      i1=bi[2*i]; i2=bi[2*i+1];
+      if (z!=null && z[i1]!=0 && z[i2]!=0) continue;
+      i1*=3; i2*=3;
+      dx=ps[i2]-ps[i1];
+      dy=ps[i2+1]-ps[i1+1];
+      dz=ps[i2+2]-ps[i1+2];
+      L2 = dx*dx+dy*dy+dz*dz;
+      C2 = c[i]; 
+      C2*= C2;
+      q = C2/(L2+C2)-.5f;
+      if (q>qx) qx=q; else if (q<qn) qn=q;
+      d = (float)(s[i]*q);
+      lx=d*dx;
+      ly=d*dy;
+      lz=d*dz;
+      f[i1]-=lx;
+      f[i1+1]-=ly;
+      f[i1+2]-=lz;
+      f[i2]+=lx;
+      f[i2+1]+=ly;
+      f[i2+2]+=lz;
+    }
+    if (qx>m[0]) m[0]=qx;
+    if (qn<m[1]) m[1]=qn;
+  }  
+  // Plastic variants. Compute the exact current length along with the force. A link
+  // strained past the fracture limit is marked in brk and applies no force; otherwise
+  // its rest length flows, and yields, towards the current length. Return the number
+  // of links that broke.
+  private final int pStepLinks(float[] ps, int[] bi, float[] c, float[] s, float[] f, byte[] z, int start, int end, int stride, float[] m) {
+    final Link[] lk=ls;
+    final int[] o=perm;
+    final float[] lc=lb!=null?lb.c:null;
+    final boolean[] b=brk;
+    float d,q,qx=0,qn=0;
+    float L,C;
+    float dx,dy,dz,lx,ly,lz;
+    int i1,i2,n=0;
+    for (int i=start;i<end;i+=stride) {
+      i1=bi[2*i]; i2=bi[2*i+1];
+      if (z!=null && z[i1]!=0 && z[i2]!=0) continue;
+      i1*=3; i2*=3;
+      dx=ps[i2]-ps[i1];
+      dy=ps[i2+1]-ps[i1+1];
+      dz=ps[i2+2]-ps[i1+2];
+      L = (float)Math.sqrt(dx*dx+dy*dy+dz*dz);
+      C = c[i];
+      if (lk!=null) lk[i].L=L;
+      if (L>0) {
+        q = 1-C/L;
+        if (q>qx) qx=q; else if (q<qn) qn=q;
+      }
+      if (frac>0 && Math.abs(L-C)>frac*C) {
+        b[i]=true;
+        n++;
+        continue;
+      }
+      C = rest(C, L);
+      // Write back to the Link, or to the LinkBuffer if c is a copy in colour order.
+      c[i]=C;
+      if (lk!=null) {
+        lk[i].C=C;
+      } else if (o!=null) {
+        lc[o[i]]=C;
+      }
+      if (L==0) continue;
+      d = s[i]*(1-C/L);
+      lx=d*dx;
+      ly=d*dy;
+      lz=d*dz;
+      f[i1]+=lx;
+      f[i1+1]+=ly;
+      f[i1+2]+=lz;
+      f[i2]-=lx;
+      f[i2+1]-=ly;
+      f[i2+2]-=lz;
+    }
+    if (qx>m[0]) m[0]=qx;
+    if (qn<m[1]) m[1]=qn;
+    return(n);
+  }
+  
+  // On Point objects. With a set, forces go to the thread's buffer at the indices in li.
+  private final int pbStepLinks(Link[] links, int[] li, float[] a, int start, int end, int stride, float[] m) {
+    final boolean[] b=brk;
+    float d,q,qx=0,qn=0;
+    float L,C;
+    Point p1,p2;
+    float dx,dy,dz,lx,ly,lz;
+    Link l;
+    int i1,i2,n=0;
+    for (int i=start;i<end;i+=stride) {
+      l=links[i];
+      p1=l.p1; p2=l.p2;
+      dx=p2.x-p1.x;
+      dy=p2.y-p1.y;
+      dz=p2.z-p1.z;
+      L = (float)Math.sqrt(dx*dx+dy*dy+dz*dz);
+      C = l.C;
+      l.L=L;
+      if (L>0) {
+        q = 1-C/L;
+        if (q>qx) qx=q; else if (q<qn) qn=q;
+      }
+      if (frac>0 && Math.abs(L-C)>frac*C) {
+        b[i]=true;
+        n++;
+        continue;
+      }
+      C = rest(C, L);
+      l.C=C;
+      if (L==0) continue;
+      d = l.S*(1-C/L);
+      lx=d*dx;
+      ly=d*dy;
+      lz=d*dz;
+      if (a==null) {
+        p1.sforce.x+=lx;
+        p1.sforce.y+=ly;
+        p1.sforce.z+=lz;
+        p2.sforce.x-=lx;
+        p2.sforce.y-=ly;
+        p2.sforce.z-=lz;
+      } else {
+        i1=3*li[2*i]; i2=3*li[2*i+1];
+        a[i1]+=lx;
+        a[i1+1]+=ly;
+        a[i1+2]+=lz;
+        a[i2]-=lx;
+        a[i2+1]-=ly;
+        a[i2+2]-=lz;
+      }
+    }
+    if (qx>m[0]) m[0]=qx;
+    if (qn<m[1]) m[1]=qn;
+    return(n);
+  }
+  
+  // Rest length C after plastic flow and yield towards current length L.
+  private final float rest(float C, float L) {
+    C+=flow*(L-C);
+    if (L*(1+ycomp)<C || L*(1-ytens)>C) C+=yrate*(L-C);
+    return(C);
+  }
+}
\ No newline at end of file
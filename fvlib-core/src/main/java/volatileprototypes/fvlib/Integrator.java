@@ -0,0 +1,351 @@
+//  Copyright (c) 2010-2011, Ioannis (Yiannis) Chatzikonstantinou, ?All rights reserved.
+//  http://www.volatileprototypes.com
+// 
+//  Redistribution and use in source and binary forms, with or without modification, 
+//  are permitted provided that the following conditions are met:
+//  	- Redistributions of source code must retain the above copyright 
+//  notice, this list of conditions and the following disclaimer.
+//  	- Redistributions in binary form must reproduce the above copyright 
+//  notice, this list of conditions and the following disclaimer in the documentation 
+//  and/or other materials provided with the distribution.
+//  
+//  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY 
+//  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+//  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+//  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+//  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+//  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+//  PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+//  WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+//  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+//  OF SUCH DAMAGE.
+
+// Base of the integrators. Velocity is kept as the position minus the old position, as
+// the colliders and PointBuffer sleep expect, and every step moves each point by
+//   x += ((x-old)*fv + f*fa/w)*u
+// where fv carries the velocity over (friction and the ratio of this timestep to the
+// previous one) and fa turns the force into a displacement. Integrators differ in fa.
+
+package volatileprototypes.fvlib;
+
+import java.util.*;
+
+/**
+ * @author      Yiannis Chatzikonstantinou <contact@volatileprototypes.com>
+ * @version     0.5.9                                    
+ * @since       0.5.9          
+ */
+public abstract class Integrator extends Behavior {
+
+protected float F=.99f;			// Friction Constant, per unit of time.
+protected boolean simd=true;	// Use the vector kernel on the buffer path, if available.
+protected boolean mass=false;	// Divide forces by the point weight.
+protected float dt=1, dt0=0;	// Timestep, and that of the previous step (0 before the first).
+private float fv=1, fa=1;		// Velocity and force factors of the current step.
+private float[] vs=new float[0];	// Per-thread largest displacement of any coordinate in the step.
+private float speed=0;			// Largest velocity component of the last step.
+protected float peak=0;			// Largest velocity component since an AdaptiveStepper last cleared it.
+  
+/**
+ * Constructor, generates a new class instance.
+ *
+ */
+  public Integrator() {
+    super();
+  }
+  
+/**
+ * Constructor, generates a new class instance using a copy of the supplied Point ArrayList.
+ *
+ * @param pointsin An ArrayList containing Point objects with which the object's list will be initialized.
+ *
+ */
+  public Integrator(ArrayList<? extends Point> pointsin) {
+    super(pointsin);
+  }
+  
+/**
+ * Constructor.
+ *
+ * Constructor, generates a new class instance using the supplied array.
+ *
+ * @param pointsin An array containing Point objects with which the object's list will be initialized.
+ *
+ */
+  public Integrator(Point[] pointsin) {
+    super(pointsin);
+  }
+  
+/**
+ * Constructor.
+ *
+ * Constructor, generates a new class instance that integrates the points of the supplied buffer
+ * directly on its arrays.
+ *
+ * @param pbin A PointBuffer holding the points.
+ *
+ */
+  public Integrator(PointBuffer pbin) {
+    super(pbin);
+  }
+  
+/**
+ * Sets the friction value. 0 = max friction, 1 = no friction.
+ *
+ * The value applies per unit of time, so it is the same with any timestep.
+ *
+ * @param fin The friction value.
+ */
+  public Integrator setF(float fin) {
+  	F=fin;
+  	return(this);
+  }
+
+/**
+ * Returns the friction value. 0 = max friction, 1 = no friction.
+ *
+ * @return The friction value.
+ */
+  public final float getF() {
+  	return(F);
+  }
+
+/**
+ * Sets the timestep.
+ *
+ * Forces are accelerations times weight (see setMass()), so a point moves by about
+ * force*dt^2 per step. The default of 1 keeps the per step units of the behaviors.
+ * The timestep may change between steps.
+ *
+ * @param dtin The timestep.
+ *
+ * @return The current object.
+ */
+  public Integrator setDt(float dtin) {
+  	dt=dtin;
+  	return(this);
+  }
+
+/**
+ *  Get the timestep.
+ *
+ * @return The timestep.
+ */
+  public final float getDt() {
+  	return(dt);
+  }
+
+/**
+ * Sets whether forces are divided by the weight of each point.
+ *
+ * Off by default, in which case all points move as if their weight were 1. Weights must be
+ * positive when enabled.
+ *
+ * @param min A boolean representing whether to integrate with the point weights.
+ *
+ * @return The current object.
+ */
+  public Integrator setMass(boolean min) {
+  	mass=min;
+  	return(this);
+  }
+
+/**
+ *  Get whether forces are divided by the point weights.
+ *
+ * @return A boolean representing whether the weights are used.
+ */
+  public final boolean getMass() {
+  	return(mass);
+  }
+
+/**
+ * Sets whether to integrate with the Vector API kernel.
+ *
+ * The vector kernel runs on the buffer path only, and only if Simd.available().
+ * Otherwise the scalar loop is used. Enabled by default.
+ *
+ * @param sin A boolean representing whether to use the vector kernel.
+ *
+ * @return The current object.
+ */
+  public Integrator setSimd(boolean sin) {
+  	simd=sin;
+  	return(this);
+  }
+
+/**
+ *  Get whether the vector kernel is enabled.
+ *
+ * @return A boolean representing whether the vector kernel is enabled.
+ */
+  public final boolean getSimd() {
+  	return(simd);
+  }
+  
+  // Force factor of a step of dt following one of d0, where damp is the friction over dt.
+  protected abstract float force(float damp, float d0);
+
+/**
+ *  Get the largest velocity component of any point in the last step, in distance per
+ *  unit of time. Computed along with the positions.
+ *
+ * @return The largest velocity component.
+ */
+  public final float getSpeed() {
+    return(speed);
+  }
+
+  @Override
+  protected final World.Phase phase() {
+    return(World.Phase.INTEGRATE);
+  }
+  
+  @Override
+  protected final boolean pointLocal() {
+    return(true);
+  }
+  
+  @Override
+  protected final Partition partition() {
+    return(Partition.CONTIGUOUS);
+  }
+  
+  @Override
+  protected final boolean bufferPath() {
+    return(true);
+  }
+  
+  // Friction applies per unit of time, and the velocity is rescaled when the timestep
+  // changes. At the unit timestep fv is just F.
+  @Override
+  protected final void preStep() {
+    super.preStep();
+    float d0=dt0>0?dt0:dt;
+    float damp=dt==1?F:(float)Math.pow(F,dt);
+    fv=damp*dt/d0;
+    fa=force(damp,d0);
+    if (vs.length<getThreads()) vs=new float[getThreads()];
+    Arrays.fill(vs,0);
+  }
+  
+  // Tracks the points that come to rest or wake up (see PointBuffer.setSleep()).
+  @Override
+  protected final void postStep() {
+    float m=0;
+    for (float v : vs) {
+      if (v>m) m=v;
+    }
+    speed=m/dt;
+    if (speed>peak) peak=speed;
+    dt0=dt;
+    if (pb!=null) pb.settle();
+  }
+  
+  // Each loop:
+  // 1.Current position gets copied to temp position.
+  // 2.New position is defined by adding the difference
+  //   from the previous and adding forces.
+  // 3.Temp position is copied to the old position.
+  // 4.Forces are reset.
+  // If the point is flagged as unyielding, the displacement
+  // is scaled by its multiplier.
+  
+  // The largest displacement is kept per thread, as fused passes call this once per tile.
+  @Override
+  protected final void stepRange(int start, int end, int stride, int thread) {
+    float m=0;
+    if (pb!=null) {
+      if (pb.sleeping()) {
+        // Positions in the active list, integrated a run of consecutive points at a time.
+        final int[] a=pb.active;
+        for (int i=start,j,k;i<end;i=j) {
+          j=pb.run(i,end,stride);
+          k=a[i];
+          m=Math.max(m, aStepFunction(pb, k, stride==1?k+j-i:k+1, 1));
+        }
+      } else {
+        m=aStepFunction(pb, start, end, stride);
+      }
+      if (m>vs[thread]) vs[thread]=m;
+      return;
+    }
+    float tx,ty,tz,a,w;
+    final float V=fv, A=fa;
+    Point p;
+    Vec3 o,f,u;
+	for (int i=start;i<end;i+=stride) {
+		p=points[i];
+		o=p.old;
+		f=p.sforce;
+		tx=p.x;
+		ty=p.y;
+		tz=p.z;
+		a=mass?A*p.w1:A;
+		if (!p.U) {
+			p.x+=(tx-o.x)*V+f.x*a;
+			p.y+=(ty-o.y)*V+f.y*a;
+			p.z+=(tz-o.z)*V+f.z*a;
+			
+		} 
+		else {
+			u=p.uMult;
+			p.x+=((tx-o.x)*V+f.x*a)*u.x;
+			p.y+=((ty-o.y)*V+f.y*a)*u.y;
+			p.z+=((tz-o.z)*V+f.z*a)*u.z;
+		}
+		w=Math.abs(p.x-tx); if (w>m) m=w;
+		w=Math.abs(p.y-ty); if (w>m) m=w;
+		w=Math.abs(p.z-tz); if (w>m) m=w;
+		o.x=tx;
+		o.y=ty;
+		o.z=tz;
+		f.x=f.y=f.z=0;
+	}
+	if (m>vs[thread]) vs[thread]=m;
+  }
+  
+  // Buffer variant. Coordinates are independent, so a contiguous block of points is
+  // streamed as one run over the position, old position, force and multiplier arrays.
+  // Points that are not unyielding have a multiplier of 1. With weights, the forces of
+  // the run are divided by them first. Returns the largest displacement of any coordinate.
+  private final float aStepFunction(PointBuffer b, int start, int end, int stride) {
+    final float[] ps=b.pos, ol=b.old, f=b.frc, u=b.um, w1=b.w1;
+    final float V=fv, A=fa;
+    float t,a,w,m=0;
+    if (stride==1) {
+      if (mass) {
+        for (int i=start,k=3*start;i<end;i++) {
+          a=w1[i];
+          f[k++]*=a;
+          f[k++]*=a;
+          f[k++]*=a;
+        }
+      }
+      if (simd && Simd.available()) {
+        return(Simd.VEC.verlet(ps, ol, f, u, V, A, 3*start, 3*end));
+      }
+      for (int i=3*start,e=3*end;i<e;i++) {
+        t=ps[i];
+        w=((t-ol[i])*V+f[i]*A)*u[i];
+        ps[i]=t+w;
+        if (Math.abs(w)>m) m=Math.abs(w);
+        ol[i]=t;
+        f[i]=0;
+      }
+      return(m);
+    }
+    for (int i=start;i<end;i+=stride) {
+      a=mass?A*w1[i]:A;
+      for (int k=3*i,e=k+3;k<e;k++) {
+        t=ps[k];
+        w=((t-ol[k])*V+f[k]*a)*u[k];
+        ps[k]=t+w;
+        if (Math.abs(w)>m) m=Math.abs(w);
+        ol[k]=t;
+        f[k]=0;
+      }
+    }
+    return(m);
+  }
+}
@@ -20,26 +20,27 @@
 //  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
 //  OF SUCH DAMAGE.
 
+// Semi-implicit (symplectic) Euler integration. The velocity is updated with the force
+// first, then damped and used to move the point. Friction damps the whole new velocity,
+// which makes this the most dissipative of the integrators for the same value.
+
 package volatileprototypes.fvlib;
 
-import processing.core.*;
 import java.util.*;
 import java.util.concurrent.*;
 
 /**
  * @author      Yiannis Chatzikonstantinou <contact@volatileprototypes.com>
  * @version     0.5.9                                    
- * @since       0.4          
+ * @since       0.5.9          
  */
-public final class BehaviorConstantForce extends Behavior {
-
-private PVector f;
-
+public final class IntegratorEuler extends Integrator {
+  
 /**
  * Constructor, generates a new class instance.
  *
  */
-  public BehaviorConstantForce() {
+  public IntegratorEuler() {
     super();
   }
   
@@ -47,58 +48,69 @@ private PVector f;
  * Constructor, generates a new class instance using a copy of the supplied Point ArrayList.
  *
  * @param pointsin An ArrayList containing Point objects with which the object's list will be initialized.
- * @param fin A PVector object representing the force to be applied to the Point objects.
-
  *
  */
-  public BehaviorConstantForce(ArrayList<? extends Point> pointsin, PVector fin) {
+  public IntegratorEuler(ArrayList<? extends Point> pointsin) {
     super(pointsin);
-    f=fin;
   }
   
 /**
- * Constructor, generates a new class instance using the supplied Point array.
+ * Constructor.
+ *
+ * Constructor, generates a new class instance using the supplied array.
  *
- * @param pointsin An array containing Point objects with which the object's array will be initialized.
- * @param fin A PVector object representing the force to be applied to the Point objects.
+ * @param pointsin An array containing Point objects with which the object's list will be initialized.
  *
  */
-  public BehaviorConstantForce(Point[] pointsin, PVector fin) {
+  public IntegratorEuler(Point[] pointsin) {
     super(pointsin);
-    f=fin;
   }
-
+  
 /**
- * Sets the force vector.
+ * Constructor.
+ *
+ * Constructor, generates a new class instance that integrates the points of the supplied buffer
+ * directly on its arrays.
+ *
+ * @param pbin A PointBuffer holding the points.
  *
- * @param fin The force vector.
  */
-  public BehaviorConstantForce setF(PVector fin) {
-  	f=fin;
+  public IntegratorEuler(PointBuffer pbin) {
+    super(pbin);
+  }
+  
+  @Override
+  public final IntegratorEuler setF(float fin) {
+  	super.setF(fin);
   	return(this);
   }
 
 /**
- * Returns the current force vector.
- *
- * @return The range value.
+ * {@inheritDoc}
+ * The velocity carried over is kept when the timestep changes. The step is first order
+ * accurate when it does.
  */
-  public PVector getF() {
-  	return(f);
+  @Override
+  public final IntegratorEuler setDt(float dtin) {
+  	super.setDt(dtin);
+  	return(this);
   }
-  
+
   @Override
-  protected final void stepFunction(int step, int offset) {
-    stepPoints(points, step, offset);
+  public final IntegratorEuler setMass(boolean min) {
+  	super.setMass(min);
+  	return(this);
+  }
+
+  @Override
+  public final IntegratorEuler setSimd(boolean sin) {
+  	super.setSimd(sin);
+  	return(this);
   }
   
-  private final void stepPoints(Point[] points, int step, int offset) {
-    Point p;
-    for (int i=offset,j=points.length;i<j;i+=step) {
-      p=points[i];
-      p.sforce.x+=f.x*p.w;
-      p.sforce.y+=f.y*p.w;
-      p.sforce.z+=f.z*p.w;
-    }
+  // v=(v+a*dt)*damp, then x+=v*dt. Friction also damps the force of the step.
+  @Override
+  protected final float force(float damp, float d0) {
+    return(damp*dt*dt);
   }
 }
\ No newline at end of file
@@ -0,0 +1,119 @@
+//  Copyright (c) 2010-2011, Ioannis (Yiannis) Chatzikonstantinou, ?All rights reserved.
+//  http://www.volatileprototypes.com
+// 
+//  Redistribution and use in source and binary forms, with or without modification, 
+//  are permitted provided that the following conditions are met:
+//  	- Redistributions of source code must retain the above copyright 
+//  notice, this list of conditions and the following disclaimer.
+//  	- Redistributions in binary form must reproduce the above copyright 
+//  notice, this list of conditions and the following disclaimer in the documentation 
+//  and/or other materials provided with the distribution.
+//  
+//  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY 
+//  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+//  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+//  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+//  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+//  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+//  PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+//  WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+//  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+//  OF SUCH DAMAGE.
+
+// Velocity Verlet integration. The velocity half a step behind the position is completed
+// with half of the new force, damped, and then used with the other half to move the
+// point, so friction acts on the velocity at the position rather than between steps.
+// This is the only difference from IntegratorVerlet: without friction (F=1) both move
+// the points the same way.
+
+package volatileprototypes.fvlib;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * @author      Yiannis Chatzikonstantinou <contact@volatileprototypes.com>
+ * @version     0.5.9                                    
+ * @since       0.5.9          
+ */
+public final class IntegratorVelocityVerlet extends Integrator {
+  
+/**
+ * Constructor, generates a new class instance.
+ *
+ */
+  public IntegratorVelocityVerlet() {
+    super();
+  }
+  
+/**
+ * Constructor, generates a new class instance using a copy of the supplied Point ArrayList.
+ *
+ * @param pointsin An ArrayList containing Point objects with which the object's list will be initialized.
+ *
+ */
+  public IntegratorVelocityVerlet(ArrayList<? extends Point> pointsin) {
+    super(pointsin);
+  }
+  
+/**
+ * Constructor.
+ *
+ * Constructor, generates a new class instance using the supplied array.
+ *
+ * @param pointsin An array containing Point objects with which the object's list will be initialized.
+ *
+ */
+  public IntegratorVelocityVerlet(Point[] pointsin) {
+    super(pointsin);
+  }
+  
+/**
+ * Constructor.
+ *
+ * Constructor, generates a new class instance that integrates the points of the supplied buffer
+ * directly on its arrays.
+ *
+ * @param pbin A PointBuffer holding the points.
+ *
+ */
+  public IntegratorVelocityVerlet(PointBuffer pbin) {
+    super(pbin);
+  }
+  
+  @Override
+  public final IntegratorVelocityVerlet setF(float fin) {
+  	super.setF(fin);
+  	return(this);
+  }
+
+/**
+ * {@inheritDoc}
+ * Each half of the velocity update uses the timestep of its own step when the timestep
+ * changes.
+ */
+  @Override
+  public final IntegratorVelocityVerlet setDt(float dtin) {
+  	super.setDt(dtin);
+  	return(this);
+  }
+
+  @Override
+  public final IntegratorVelocityVerlet setMass(boolean min) {
+  	super.setMass(min);
+  	return(this);
+  }
+
+  @Override
+  public final IntegratorVelocityVerlet setSimd(boolean sin) {
+  	super.setSimd(sin);
+  	return(this);
+  }
+  
+  // Completes the velocity at the start of the step, v=(v+a*dt0/2)*damp, then
+  // x+=v*dt+a*dt^2/2. The half of the step taken before the friction is not damped.
+  @Override
+  protected final float force(float damp, float d0) {
+    return(.5f*dt*(damp*d0+dt));
+  }
+}
\ No newline at end of file
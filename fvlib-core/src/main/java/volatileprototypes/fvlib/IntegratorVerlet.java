@@ -25,7 +25,6 @@
 
 package volatileprototypes.fvlib;
 
-import processing.core.*;
 import java.util.*;
 import java.util.concurrent.*;
 
@@ -34,9 +33,7 @@ import java.util.concurrent.*;
  * @version     0.5.9                                    
  * @since       0.2.0          
  */
-public final class IntegratorVerlet extends Behavior {
-
-private float F=.99f;			// Friction Constant.
+public final class IntegratorVerlet extends Integrator {
   
 /**
  * Constructor, generates a new class instance.
@@ -69,62 +66,51 @@ private float F=.99f;			// Friction Constant.
   }
   
 /**
- * Sets the friction value. 0 = max friction, 1 = no friction.
+ * Constructor.
+ *
+ * Constructor, generates a new class instance that integrates the points of the supplied buffer
+ * directly on its arrays.
+ *
+ * @param pbin A PointBuffer holding the points.
  *
- * @param fin The friction value.
  */
+  public IntegratorVerlet(PointBuffer pbin) {
+    super(pbin);
+  }
+  
+  @Override
   public final IntegratorVerlet setF(float fin) {
-  	F=fin;
+  	super.setF(fin);
   	return(this);
   }
 
 /**
- * Returns the friction value. 0 = max friction, 1 = no friction.
- *
- * @return The friction value.
+ * {@inheritDoc}
+ * The velocity carried over is rescaled and the force is weighted by the mean of both
+ * timesteps when the timestep changes, which keeps the step second order.
  */
-  public final float getF() {
-  	return(F);
+  @Override
+  public final IntegratorVerlet setDt(float dtin) {
+  	super.setDt(dtin);
+  	return(this);
+  }
+
+  @Override
+  public final IntegratorVerlet setMass(boolean min) {
+  	super.setMass(min);
+  	return(this);
+  }
+
+  @Override
+  public final IntegratorVerlet setSimd(boolean sin) {
+  	super.setSimd(sin);
+  	return(this);
   }
   
- // Verlet Integration function for stepping points.
-  // Each loop:
-  // 1.Current position gets copied to temp position.
-  // 2.New position is defined by adding the difference
-  //   from the previous and adding forces.
-  // 3.Temp position is copied to the old position.
-  // 4.Forces are reset.
-  // If the point is flagged as unyielding, the current
-  // position is set to the old one.
-  
+  // Time corrected Verlet, x+=(x-old)*dt/dt0+a*dt*(dt+dt0)/2, which is x+=(x-old)+f
+  // at the unit timestep.
   @Override
-  protected final void stepFunction(int step, int offset) {
-    float tx,ty,tz;
-    Point p;
-    PVector o,f,u;
-	for (int i=offset,j=points.length;i<j;i+=step) {
-		p=points[i];
-		o=p.old;
-		f=p.sforce;
-		tx=p.x;
-		ty=p.y;
-		tz=p.z;
-		if (!p.U) {
-			p.x+=(tx-o.x)*F+f.x;
-			p.y+=(ty-o.y)*F+f.y;
-			p.z+=(tz-o.z)*F+f.z;
-			
-		} 
-		else {
-			u=p.uMult;
-			p.x+=((tx-o.x)*F+f.x)*u.x;
-			p.y+=((ty-o.y)*F+f.y)*u.y;
-			p.z+=((tz-o.z)*F+f.z)*u.z;
-		}
-		o.x=tx;
-		o.y=ty;
-		o.z=tz;
-		f.x=f.y=f.z=0;
-	}
+  protected final float force(float damp, float d0) {
+    return(.5f*dt*(dt+d0));
   }
 }
\ No newline at end of file
@@ -26,7 +26,6 @@
 package volatileprototypes.fvlib;
 
 import java.lang.Math.*;
-import processing.core.*;
 
 /**
  * @author      Yiannis Chatzikonstantinou <contact@volatileprototypes.com>
@@ -41,6 +40,9 @@ public class Link {
 				// more control over processor resources.
   				// One must call getL(true) to get the current
   				// L-value.
+  protected LinkBuffer buf;	// Buffer this Link is a view of, if any.
+  protected int idx=-1;		// Index in the buffer.
+  protected boolean broken;	// Set when the Link fractures in a plastic BehaviorSpringRelaxation.
 
 /**
  * Constructor.
@@ -69,6 +71,7 @@ public class Link {
  */
   public final Link setC(float cin) {
   	C=cin;
+  	if (buf!=null) buf.c[idx]=cin;
   	return(this);
   }
   
@@ -82,6 +85,30 @@ public class Link {
   	return(C);
   }
   
+/**
+ * Set the stiffness to the specified value.
+ *
+ * @param sin The new stiffness value.
+ * 
+ * @return The current object.
+ *
+ */
+  public final Link setS(float sin) {
+  	S=sin;
+  	if (buf!=null) buf.s[idx]=sin;
+  	return(this);
+  }
+  
+/**
+ * Get the stiffness.
+ * 
+ * @return The stiffness.
+ *
+ */
+  public final float getS() {
+  	return(S);
+  }
+  
 /**
  * Get the current (cached) length value.
  * 
@@ -127,6 +154,7 @@ public class Link {
  * @param p1in The 1st point.
  */
   public final Link setP1(Point p1in) {
+  	if (buf!=null) buf.setEnd(idx,0,p1in);
   	p1=p1in;
   	return(this);
   }
@@ -137,6 +165,7 @@ public class Link {
  * @param p2in The 2nd point.
  */
   public final Link setP2(Point p2in) {
+  	if (buf!=null) buf.setEnd(idx,1,p2in);
   	p2=p2in;
   	return(this);
   }
@@ -160,12 +189,42 @@ public class Link {
   }
   
 /**
- *  Get a PVector of the current coordinates.
+ * Get the LinkBuffer this Link is a view of.
+ *
+ * @return The buffer, or null if the Link is not part of one.
+ *
+ */
+  public final LinkBuffer getBuffer() {
+  	return(buf);
+  }
+
+/**
+ * Get the index of this Link in its LinkBuffer.
+ *
+ * @return The index, or -1 if the Link is not part of a buffer.
+ *
+ */
+  public final int getIndex() {
+  	return(idx);
+  }
+
+/**
+ * Get whether this Link has fractured. Broken links are no longer relaxed.
+ *
+ * @return A boolean representing whether the Link is broken.
+ *
+ */
+  public final boolean isBroken() {
+  	return(broken);
+  }
+  
+/**
+ *  Get a Vec3 of the current coordinates.
  *
- * @return The PVector of the current coordinates.
+ * @return The Vec3 of the current coordinates.
  */
-  public final PVector get() {
-  	PVector r=p2.get();
+  public final Vec3 get() {
+  	Vec3 r=p2.get();
   	r.sub(p1);
   	return(r);
   }
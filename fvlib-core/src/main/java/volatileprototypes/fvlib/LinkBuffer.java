@@ -0,0 +1,413 @@
+//  Copyright (c) 2010-2011, Ioannis (Yiannis) Chatzikonstantinou, ?All rights reserved.
+//  http://www.volatileprototypes.com
+// 
+//  Redistribution and use in source and binary forms, with or without modification, 
+//  are permitted provided that the following conditions are met:
+//  	- Redistributions of source code must retain the above copyright 
+//  notice, this list of conditions and the following disclaimer.
+//  	- Redistributions in binary form must reproduce the above copyright 
+//  notice, this list of conditions and the following disclaimer in the documentation 
+//  and/or other materials provided with the distribution.
+//  
+//  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY 
+//  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+//  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+//  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+//  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+//  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+//  PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+//  WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+//  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+//  OF SUCH DAMAGE.
+
+// Structure-of-arrays store for Link state.
+// The two end points of each link are kept as indices into a PointBuffer, two ints
+// per link, and rest length and stiffness as one float per link. Links are sorted by
+// their lower and then their higher end point index, so that neighbouring links touch
+// neighbouring points in the point arrays. BehaviorSpringRelaxation set up with a
+// LinkBuffer streams these arrays instead of following references through every Link.
+//
+// Links can be supplied as Link objects, which become views of their slot, or as an
+// array of end point indices, in which case views are only created if getL() is called.
+// setC() and setS() on a view write through to the arrays; call load() after changing
+// the C or S fields of views directly, and store() to copy the arrays back into them.
+//
+// When the PointBuffer is reordered, the end point indices are rewritten and the links
+// sorted again, so link indices change as well. Links that fracture are removed, and
+// the links after them move down.
+
+package volatileprototypes.fvlib;
+
+import java.util.*;
+
+/**
+ * @author      Yiannis Chatzikonstantinou <contact@volatileprototypes.com>
+ * @version     0.5.9                                    
+ * @since       0.5.9          
+ */
+public final class LinkBuffer {
+
+  protected final PointBuffer pb;		// Buffer holding the end points.
+  protected int m;						// Number of links.
+  protected final int[] ends;			// Buffer indices of the two end points, 2 ints per link.
+  protected final float[] c, s;			// Rest length and stiffness.
+  protected int version;				// Incremented when the links are remapped and sorted again.
+  private Link[] links;					// The Link views, in buffer order, created on demand.
+
+/**
+ * Constructor.
+ *
+ * Constructor, generates a new buffer holding the supplied links, which become views of the buffer.
+ * Every end point must be part of the supplied PointBuffer. A Link can be part of one buffer only.
+ *
+ * @param pbin The PointBuffer holding the end points.
+ * @param linksin An array containing Link objects.
+ *
+ */
+  public LinkBuffer(PointBuffer pbin, Link[] linksin) {
+    pb=pbin;
+    m=linksin.length;
+    int[] e=new int[2*m];
+    Point p;
+    for (int i=0;i<e.length;i++) {
+      Link l=linksin[i>>1];
+      p=(i&1)==0?l.p1:l.p2;
+      if (p.buf!=pb) throw new IllegalArgumentException("Link end point is not part of the PointBuffer.");
+      e[i]=p.idx;
+    }
+    int[] o=sort(e, pb.n);
+    ends=new int[2*m];
+    c=new float[m];
+    s=new float[m];
+    links=new Link[m];
+    for (int i=0;i<m;i++) {
+      Link l=linksin[o[i]];
+      ends[2*i]=e[2*o[i]];
+      ends[2*i+1]=e[2*o[i]+1];
+      l.buf=this;
+      l.idx=i;
+      links[i]=l;
+    }
+    load();
+    pb.attach(this);
+  }
+
+/**
+ * Constructor.
+ *
+ * Constructor, generates a new buffer using a copy of the supplied Link ArrayList.
+ *
+ * @param pbin The PointBuffer holding the end points.
+ * @param linksin An ArrayList containing Link objects.
+ *
+ */
+  public LinkBuffer(PointBuffer pbin, ArrayList<Link> linksin) {
+    this(pbin, linksin.toArray(new Link[linksin.size()]));
+  }
+
+/**
+ * Constructor.
+ *
+ * Constructor, generates a new buffer from end point indices, without creating Link objects.
+ * The rest length of each link is its current length.
+ *
+ * @param pbin The PointBuffer holding the end points.
+ * @param endsin The buffer indices of the end points, two per link.
+ * @param st A float value indicating stiffness.
+ *
+ */
+  public LinkBuffer(PointBuffer pbin, int[] endsin, float st) {
+    pb=pbin;
+    if ((endsin.length&1)!=0) throw new IllegalArgumentException("End point array must hold two indices per link.");
+    m=endsin.length/2;
+    for (int i=0;i<endsin.length;i++) {
+      if (endsin[i]<0 || endsin[i]>=pb.n) throw new IllegalArgumentException("End point index out of range.");
+    }
+    int[] o=sort(endsin, pb.n);
+    ends=new int[2*m];
+    c=new float[m];
+    s=new float[m];
+    for (int i=0;i<m;i++) {
+      ends[2*i]=endsin[2*o[i]];
+      ends[2*i+1]=endsin[2*o[i]+1];
+      c[i]=length(i);
+      s[i]=st;
+    }
+    pb.attach(this);
+  }
+
+  // Orders links by their lower end point index, then by their higher one, with two
+  // stable counting sorts. Returns the input index of each link in sorted order.
+  private static int[] sort(int[] e, int n) {
+    int m=e.length/2;
+    int[] cnt=new int[n+1], a=new int[m], b=new int[m];
+    for (int i=0;i<m;i++) cnt[Math.max(e[2*i],e[2*i+1])+1]++;
+    for (int k=0;k<n;k++) cnt[k+1]+=cnt[k];
+    for (int i=0;i<m;i++) a[cnt[Math.max(e[2*i],e[2*i+1])]++]=i;
+    Arrays.fill(cnt, 0);
+    for (int i=0;i<m;i++) cnt[Math.min(e[2*i],e[2*i+1])+1]++;
+    for (int k=0;k<n;k++) cnt[k+1]+=cnt[k];
+    for (int j=0,i;j<m;j++) {
+      i=a[j];
+      b[cnt[Math.min(e[2*i],e[2*i+1])]++]=i;
+    }
+    return(b);
+  }
+
+  // Rewrites the end points after the PointBuffer moved point i to slot inv[i], and
+  // sorts the links again.
+  protected final void remap(int[] inv) {
+    int[] e=new int[2*m];
+    for (int i=0;i<e.length;i++) e[i]=inv[ends[i]];
+    int[] o=sort(e, pb.n);
+    float[] c0=c.clone(), s0=s.clone();
+    Link[] l0=links==null?null:links.clone();
+    for (int i=0;i<m;i++) {
+      int k=o[i];
+      ends[2*i]=e[2*k];
+      ends[2*i+1]=e[2*k+1];
+      c[i]=c0[k];
+      s[i]=s0[k];
+      if (l0!=null) {
+        links[i]=l0[k];
+        links[i].idx=i;
+      }
+    }
+    version++;
+  }
+
+  // Removes the links flagged in drop, which broke, moving the others down in place.
+  // Their views are detached and marked broken. Returns the new index of each link,
+  // or -1 for removed ones.
+  protected final int[] remove(boolean[] drop) {
+    int[] map=new int[m];
+    int w=0;
+    for (int i=0;i<m;i++) {
+      if (drop[i]) {
+        map[i]=-1;
+        if (links!=null) {
+          links[i].buf=null;
+          links[i].idx=-1;
+          links[i].broken=true;
+        }
+        continue;
+      }
+      map[i]=w;
+      if (w!=i) {
+        ends[2*w]=ends[2*i];
+        ends[2*w+1]=ends[2*i+1];
+        c[w]=c[i];
+        s[w]=s[i];
+        if (links!=null) {
+          links[w]=links[i];
+          links[w].idx=w;
+        }
+      }
+      w++;
+    }
+    if (links!=null && w<m) links=Arrays.copyOf(links, w);
+    m=w;
+    version++;
+    return(map);
+  }
+
+/**
+ * Copies rest length and stiffness of the Link views into the buffer.
+ *
+ * @return The current object.
+ */
+  public LinkBuffer load() {
+    if (links==null) return(this);
+    for (int i=0;i<m;i++) {
+      c[i]=links[i].C;
+      s[i]=links[i].S;
+    }
+    return(this);
+  }
+
+/**
+ * Copies rest length and stiffness from the buffer back into the Link views.
+ *
+ * @return The current object.
+ */
+  public LinkBuffer store() {
+    if (links==null) return(this);
+    for (int i=0;i<m;i++) {
+      links[i].C=c[i];
+      links[i].S=s[i];
+    }
+    return(this);
+  }
+
+/**
+ * Get the Link views of this buffer, creating them if the buffer was built from indices.
+ *
+ * @return The link array, in buffer order.
+ */
+  public Link[] getL() {
+    if (links==null) {
+      Link[] ls=new Link[m];
+      Point[] pts=pb.points;
+      for (int i=0;i<m;i++) {
+        Link l=new Link(pts[ends[2*i]], pts[ends[2*i+1]], s[i]);
+        l.C=c[i];
+        l.buf=this;
+        l.idx=i;
+        ls[i]=l;
+      }
+      links=ls;
+    }
+    return(links);
+  }
+
+/**
+ * Get the PointBuffer holding the end points.
+ *
+ * @return The point buffer.
+ */
+  public PointBuffer getBuffer() {
+    return(pb);
+  }
+
+/**
+ * Get the number of links in this buffer.
+ *
+ * @return The number of links.
+ */
+  public int size() {
+    return(m);
+  }
+
+/**
+ * Get the buffer index of an end point of a link.
+ *
+ * @param i The link index.
+ * @param k 0 for the 1st end point, 1 for the 2nd.
+ *
+ * @return The index of the end point in the PointBuffer.
+ */
+  public int getEnd(int i, int k) {
+    return(ends[2*i+k]);
+  }
+
+  // Moves an end point of a link, for Link views. Behaviors copy the end points
+  // when the buffer is set, so they must be given the buffer again.
+  protected final void setEnd(int i, int k, Point p) {
+    if (p.buf!=pb) throw new IllegalArgumentException("Link end point is not part of the PointBuffer.");
+    ends[2*i+k]=p.idx;
+  }
+
+/**
+ * Get the rest length of a link.
+ *
+ * @param i The link index.
+ *
+ * @return The rest length.
+ */
+  public float getC(int i) {
+    return(c[i]);
+  }
+
+/**
+ * Set the rest length of a link.
+ *
+ * @param i The link index.
+ * @param cin The new rest length value.
+ *
+ * @return The current object.
+ */
+  public LinkBuffer setC(int i, float cin) {
+    c[i]=cin;
+    if (links!=null) links[i].C=cin;
+    return(this);
+  }
+
+/**
+ * Get the stiffness of a link.
+ *
+ * @param i The link index.
+ *
+ * @return The stiffness.
+ */
+  public float getS(int i) {
+    return(s[i]);
+  }
+
+/**
+ * Set the stiffness of a link.
+ *
+ * @param i The link index.
+ * @param sin The new stiffness value.
+ *
+ * @return The current object.
+ */
+  public LinkBuffer setS(int i, float sin) {
+    s[i]=sin;
+    if (links!=null) links[i].S=sin;
+    return(this);
+  }
+
+/**
+ * Get the current length of a link, from the positions in the PointBuffer.
+ *
+ * @param i The link index.
+ *
+ * @return The current length.
+ */
+  public float length(int i) {
+    float[] ps=pb.pos;
+    int i1=3*ends[2*i], i2=3*ends[2*i+1];
+    float dx=ps[i2]-ps[i1], dy=ps[i2+1]-ps[i1+1], dz=ps[i2+2]-ps[i1+2];
+    return((float)Math.sqrt(dx*dx+dy*dy+dz*dz));
+  }
+
+  // Greedy edge colouring: each link takes the lowest colour that neither end point has
+  // yet. Colours are tracked as 64-bit masks per point; links finding all 64 colours of a
+  // round taken are deferred to the next round, which starts 64 colours higher.
+  // pi holds the indices (below np) of the two end points of each link. Returns the links
+  // sorted by colour, keeping their order within a colour, and the start of each colour
+  // in that order plus the end of the last.
+  static final int[][] color(int[] pi, int np) {
+    int m=pi.length/2;
+    int[] col=new int[m], todo=new int[m], next=new int[m], t;
+    for (int i=0;i<m;i++) todo[i]=i;
+    int n=m, nn, base=0, nc=1, i, a, b, c;
+    long u;
+    long[] used=new long[np];
+    while (n>0) {
+      Arrays.fill(used, 0);
+      nn=0;
+      for (int j=0;j<n;j++) {
+        i=todo[j];
+        a=pi[2*i]; b=pi[2*i+1];
+        u=used[a]|used[b];
+        if (u==-1L) {
+          next[nn++]=i;
+          continue;
+        }
+        c=Long.numberOfTrailingZeros(~u);
+        used[a]|=1L<<c;
+        used[b]|=1L<<c;
+        col[i]=base+c;
+        nc=Math.max(nc, base+c+1);
+      }
+      t=todo; todo=next; next=t;
+      n=nn;
+      base+=64;
+    }
+    // Counting sort by colour. Rounds leave no gaps, and with no links one empty colour remains.
+    int[] cnt=new int[nc], at=new int[nc], st=new int[nc+1];
+    for (i=0;i<m;i++) cnt[col[i]]++;
+    for (c=0,a=0,b=0;c<nc;c++) {
+      at[c]=a;
+      if (cnt[c]>0 || b==0) {
+        st[b++]=a;
+        a+=cnt[c];
+      }
+    }
+    st[b]=m;
+    int[] o=new int[m];
+    for (i=0;i<m;i++) o[at[col[i]]++]=i;
+    return(new int[][] {o, Arrays.copyOf(st, b+1)});
+  }
+}
@@ -0,0 +1,460 @@
+//  Copyright (c) 2010-2011, Ioannis (Yiannis) Chatzikonstantinou, ?All rights reserved.
+//  http://www.volatileprototypes.com
+// 
+//  Redistribution and use in source and binary forms, with or without modification, 
+//  are permitted provided that the following conditions are met:
+//  	- Redistributions of source code must retain the above copyright 
+//  notice, this list of conditions and the following disclaimer.
+//  	- Redistributions in binary form must reproduce the above copyright 
+//  notice, this list of conditions and the following disclaimer in the documentation 
+//  and/or other materials provided with the distribution.
+//  
+//  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY 
+//  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+//  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+//  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+//  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+//  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+//  PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+//  WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+//  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+//  OF SUCH DAMAGE.
+
+// Bounding volume hierarchy over a static triangle mesh, used by BehaviorMeshCollider
+// to find the triangle nearest to a point within a given distance.
+// Nodes are axis-aligned boxes split at the median triangle (by centroid) along their
+// longest axis, down to leaves of at most LEAF triangles. As the split is always at
+// the median, a subtree of m triangles always takes the same number of nodes, so node
+// ranges are known before building and the tree is laid out in depth-first order in
+// flat arrays: 6 floats of bounds and 2 ints per node, the left child right after its
+// parent. The triangles are copied in tree order, 12 floats each (the three corners
+// and the unit normal), so that the triangles of a leaf are contiguous.
+// The build runs in one dispatch on a SolverRuntime: the threads gather triangles in
+// blocks, thread 0 splits the top levels and queues the subtrees below them, every
+// thread then builds queued subtrees, and thread 0 finally sums the bounds of the top
+// levels. The result does not depend on the number of threads.
+
+package volatileprototypes.fvlib;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * @author      Yiannis Chatzikonstantinou <contact@volatileprototypes.com>
+ * @version     0.5.9                                    
+ * @since       0.5.9          
+ */
+public final class MeshBVH {
+
+  protected static final int LEAF=4;			// Most triangles in a leaf.
+  protected static final int STACK=64;			// Traversal stack size, more than the depth of any tree.
+  protected int nt=0;							// Number of triangles.
+  protected int nn=0;							// Number of nodes.
+  protected float[] td=new float[0];			// Corners and unit normal of each triangle, 12 floats each, in tree order.
+  protected float[] bb=new float[0];			// Bounds of each node, 6 floats each.
+  protected int[] nd=new int[0];				// First triangle and count of a leaf, or right child and 0 of an inner node.
+  private SolverRuntime rt;						// Runtime the build runs on, or null for the default.
+  private float[] src=new float[0];			// Corners of each triangle, 9 floats each, in input order.
+  private float[] cen=new float[0];			// Centroid of each triangle.
+  private int[] ix=new int[0];					// Input index of each triangle, in tree order once built.
+  private int tasks;							// Subtrees queued by the top levels.
+  private int[] tn=new int[0], ts=tn, te=tn;	// Queued subtree node and triangle range.
+  private int tops;								// Top nodes, in the order they were split.
+  private int[] top=new int[0];
+  private final AtomicInteger next=new AtomicInteger();	// Next subtree to build.
+
+/**
+ * Constructor, generates a new empty hierarchy.
+ *
+ */
+  public MeshBVH() {
+  }
+
+/**
+ * Sets the runtime whose workers run the build.
+ *
+ * @param rtin The runtime, or null for the shared default runtime.
+ *
+ * @return The current object.
+ */
+  public MeshBVH setRuntime(SolverRuntime rtin) {
+    rt=rtin;
+    return(this);
+  }
+
+/**
+ * Builds the hierarchy over a triangle mesh.
+ *
+ * @param vertices The vertex coordinates, 3 floats per vertex.
+ * @param triangles The indices of the corners of each triangle, 3 per triangle.
+ *
+ * @return The current object.
+ */
+  public MeshBVH build(float[] vertices, int[] triangles) {
+    if (vertices.length%3!=0) throw new IllegalArgumentException("Vertex array must hold three coordinates per vertex.");
+    if (triangles.length%3!=0) throw new IllegalArgumentException("Triangle array must hold three indices per triangle.");
+    int nv=vertices.length/3;
+    for (int i=0;i<triangles.length;i++) {
+      if (triangles[i]<0 || triangles[i]>=nv) throw new IllegalArgumentException("Vertex index out of range.");
+    }
+    run(vertices, triangles, triangles.length/3);
+    return(this);
+  }
+
+/**
+ * Builds the hierarchy over a polygon mesh, such as the faces of an OBJ file.
+ * Polygons are split into triangle fans; faces of less than three vertices are skipped.
+ *
+ * @param vertices The vertices.
+ * @param faces The indices of the vertices of each polygon.
+ *
+ * @return The current object.
+ */
+  public MeshBVH build(List<? extends Vec3> vertices, int[][] faces) {
+    float[] v=new float[3*vertices.size()];
+    for (int i=0;i<vertices.size();i++) {
+      Vec3 p=vertices.get(i);
+      v[3*i]=p.x;
+      v[3*i+1]=p.y;
+      v[3*i+2]=p.z;
+    }
+    int m=0;
+    for (int[] f : faces) m+=Math.max(0, f.length-2);
+    int[] t=new int[3*m];
+    int k=0;
+    for (int[] f : faces) {
+      for (int j=2;j<f.length;j++) {
+        t[k++]=f[0];
+        t[k++]=f[j-1];
+        t[k++]=f[j];
+      }
+    }
+    return(build(v, t));
+  }
+
+/**
+ * Get the number of triangles in the hierarchy.
+ *
+ * @return The number of triangles.
+ */
+  public int size() {
+    return(nt);
+  }
+
+/**
+ * Get the number of nodes in the hierarchy.
+ *
+ * @return The number of nodes.
+ */
+  public int getNodeCount() {
+    return(nn);
+  }
+
+  // Number of nodes of a subtree of m triangles. Median splits keep the subtrees at one
+  // depth within one triangle of each other, so all of them split down to the first depth
+  // d whose smaller subtrees fit in a leaf, and the m%2^d larger ones split once more if
+  // they do not. A binary tree of l leaves has 2l-1 nodes.
+  private static int nodes(int m) {
+    int d=0;
+    while ((m>>d)>LEAF) d++;
+    int l=1<<d;
+    if ((m>>d)+1>LEAF) l+=m-((m>>d)<<d);
+    return(2*l-1);
+  }
+
+  private final void run(final float[] v, final int[] t, final int n) {
+    nt=n;
+    nn=n>0?nodes(n):0;
+    if (src.length<9*n) {
+      src=new float[9*n];
+      cen=new float[3*n];
+      ix=new int[n];
+    }
+    if (td.length<12*n) td=new float[12*n];
+    if (nd.length<2*nn) {
+      bb=new float[6*nn];
+      nd=new int[2*nn];
+    }
+    if (n==0) return;
+    final SolverRuntime r=rt!=null?rt:SolverRuntime.getDefault();
+    final int T=r.size();
+    final AtomicBoolean failed=new AtomicBoolean();
+    r.run(new SolverRuntime.Task() {
+      // After an error the threads skip the remaining stages but still attend every
+      // barrier, so that none waits forever, and each rethrows its own error.
+      public void run(int thread) {
+        Throwable err=null;
+        for (int s=0;s<4;s++) {
+          if (s>0) r.sync(thread);
+          if (failed.get()) continue;
+          try {
+            stage(s, thread, T, v, t, n);
+          } catch (Throwable e) {
+            err=e;
+            failed.set(true);
+          }
+        }
+        if (err instanceof RuntimeException) throw (RuntimeException)err;
+        if (err!=null) throw (Error)err;
+      }
+    });
+  }
+
+  // Stage s of the parallel build, run by every thread between barriers.
+  private final void stage(int s, int thread, int T, float[] v, int[] t, int n) {
+    switch (s) {
+      case 0:
+        gather(v, t, (int)((long)n*thread/T), (int)((long)n*(thread+1)/T));
+        break;
+      case 1:
+        if (thread==0) split(Math.max(LEAF, n/(4*T)));
+        break;
+      case 2:
+        int j;
+        while ((j=next.getAndIncrement())<tasks) build(tn[j], ts[j], te[j]);
+        break;
+      default:
+        if (thread==0) finish();
+    }
+  }
+
+  // Copies the corners of triangles start to end and computes their centroids.
+  private final void gather(float[] v, int[] t, int start, int end) {
+    int a, b, c;
+    for (int i=start;i<end;i++) {
+      a=3*t[3*i]; b=3*t[3*i+1]; c=3*t[3*i+2];
+      for (int k=0;k<3;k++) {
+        src[9*i+k]=v[a+k];
+        src[9*i+3+k]=v[b+k];
+        src[9*i+6+k]=v[c+k];
+        cen[3*i+k]=(v[a+k]+v[b+k]+v[c+k])/3;
+      }
+      ix[i]=i;
+    }
+  }
+
+  // Splits the top levels on one thread, down to subtrees of at most size triangles,
+  // and queues those.
+  private final void split(int size) {
+    tasks=tops=0;
+    next.set(0);
+    int cap=Math.max(16, 4*nt/size);
+    if (tn.length<cap) {
+      tn=new int[cap];
+      ts=new int[cap];
+      te=new int[cap];
+      top=new int[cap];
+    }
+    split(0, 0, nt, size);
+  }
+
+  private final void split(int node, int s, int e, int size) {
+    if (e-s<=size) {
+      tn[tasks]=node;
+      ts[tasks]=s;
+      te[tasks++]=e;
+      return;
+    }
+    int m=divide(node, s, e);
+    top[tops++]=node;
+    split(node+1, s, m, size);
+    split(nd[2*node], m, e, size);
+  }
+
+  // Builds the subtree at node over the triangles s to e of ix.
+  private final void build(int node, int s, int e) {
+    if (e-s<=LEAF) {
+      leaf(node, s, e);
+      return;
+    }
+    int m=divide(node, s, e);
+    build(node+1, s, m);
+    build(nd[2*node], m, e);
+    union(node);
+  }
+
+  // Sums the bounds of the top levels, children first.
+  private final void finish() {
+    for (int i=tops-1;i>=0;i--) union(top[i]);
+  }
+
+  // Makes node an inner node: orders triangles s to e so that the lower half by centroid
+  // along the longest axis of their centroids comes first, and sets the right child.
+  // Returns the start of the right half.
+  private final int divide(int node, int s, int e) {
+    float x0, y0, z0, x1, y1, z1, x, y, z;
+    int i=3*ix[s];
+    x0=x1=cen[i]; y0=y1=cen[i+1]; z0=z1=cen[i+2];
+    for (int k=s+1;k<e;k++) {
+      i=3*ix[k];
+      x=cen[i]; y=cen[i+1]; z=cen[i+2];
+      if (x<x0) x0=x; else if (x>x1) x1=x;
+      if (y<y0) y0=y; else if (y>y1) y1=y;
+      if (z<z0) z0=z; else if (z>z1) z1=z;
+    }
+    x=x1-x0; y=y1-y0; z=z1-z0;
+    int axis=x>=y && x>=z?0:y>=z?1:2;
+    int m=s+((e-s)>>1);
+    select(s, e, m, axis);
+    nd[2*node]=node+1+nodes(m-s);
+    nd[2*node+1]=0;
+    return(m);
+  }
+
+  // Orders ix[s..e) so that the triangle at m has its centroid at rank m along axis,
+  // with none above it before m and none below it after m.
+  private final void select(int s, int e, int m, int axis) {
+    final int[] a=ix;
+    final float[] c=cen;
+    int lo=s, hi=e-1, i, j, t;
+    float p;
+    while (hi>lo) {
+      // Median of three as the pivot.
+      int mid=(lo+hi)>>>1;
+      float u=c[3*a[lo]+axis], v=c[3*a[mid]+axis], w=c[3*a[hi]+axis];
+      p=u<v?(v<w?v:(u<w?w:u)):(u<w?u:(v<w?w:v));
+      i=lo; j=hi;
+      while (i<=j) {
+        while (c[3*a[i]+axis]<p) i++;
+        while (c[3*a[j]+axis]>p) j--;
+        if (i<=j) {
+          t=a[i]; a[i]=a[j]; a[j]=t;
+          i++; j--;
+        }
+      }
+      if (m<=j) {hi=j;} else if (m>=i) {lo=i;} else {break;}
+    }
+  }
+
+  // Makes node a leaf of triangles s to e, copying them in tree order.
+  private final void leaf(int node, int s, int e) {
+    nd[2*node]=s;
+    nd[2*node+1]=e-s;
+    float x0=Float.POSITIVE_INFINITY, y0=x0, z0=x0, x1=Float.NEGATIVE_INFINITY, y1=x1, z1=x1;
+    float ax, ay, az, ux, uy, uz, vx, vy, vz, nx, ny, nz, l;
+    for (int k=s;k<e;k++) {
+      int i=9*ix[k], o=12*k;
+      System.arraycopy(src, i, td, o, 9);
+      for (int j=0;j<9;j+=3) {
+        x0=Math.min(x0, src[i+j]); x1=Math.max(x1, src[i+j]);
+        y0=Math.min(y0, src[i+j+1]); y1=Math.max(y1, src[i+j+1]);
+        z0=Math.min(z0, src[i+j+2]); z1=Math.max(z1, src[i+j+2]);
+      }
+      ax=src[i]; ay=src[i+1]; az=src[i+2];
+      ux=src[i+3]-ax; uy=src[i+4]-ay; uz=src[i+5]-az;
+      vx=src[i+6]-ax; vy=src[i+7]-ay; vz=src[i+8]-az;
+      nx=uy*vz-uz*vy; ny=uz*vx-ux*vz; nz=ux*vy-uy*vx;
+      l=(float)Math.sqrt(nx*nx+ny*ny+nz*nz);
+      if (l>0) {
+        nx/=l; ny/=l; nz/=l;
+      }
+      td[o+9]=nx; td[o+10]=ny; td[o+11]=nz;
+    }
+    int b=6*node;
+    bb[b]=x0; bb[b+1]=y0; bb[b+2]=z0;
+    bb[b+3]=x1; bb[b+4]=y1; bb[b+5]=z1;
+  }
+
+  // Sets the bounds of an inner node to those of its children.
+  private final void union(int node) {
+    int b=6*node, l=6*(node+1), r=6*nd[2*node];
+    for (int k=0;k<3;k++) {
+      bb[b+k]=Math.min(bb[l+k], bb[r+k]);
+      bb[b+3+k]=Math.max(bb[l+3+k], bb[r+3+k]);
+    }
+  }
+
+  // Squared distance from x,y,z to the bounds of node.
+  private final float box(int node, float x, float y, float z) {
+    int b=6*node;
+    float dx=x<bb[b]?bb[b]-x:x>bb[b+3]?x-bb[b+3]:0;
+    float dy=y<bb[b+1]?bb[b+1]-y:y>bb[b+4]?y-bb[b+4]:0;
+    float dz=z<bb[b+2]?bb[b+2]-z:z>bb[b+5]?z-bb[b+5]:0;
+    return(dx*dx+dy*dy+dz*dz);
+  }
+
+  // Finds the triangle nearest to x,y,z closer than r. Returns its index in tree order,
+  // or -1 if there is none, and leaves the nearest point on it in out[0..2].
+  // stack needs STACK ints; each thread passes its own.
+  protected final int nearest(float x, float y, float z, float r, int[] stack, float[] out) {
+    if (nn==0) return(-1);
+    float best=r*r, d, dl, dr;
+    int hit=-1, sp=0, node, l, rc;
+    if (box(0, x, y, z)>=best) return(-1);
+    stack[sp++]=0;
+    while (sp>0) {
+      node=stack[--sp];
+      if (box(node, x, y, z)>=best) continue;
+      if (nd[2*node+1]>0) {
+        for (int k=nd[2*node],e=k+nd[2*node+1];k<e;k++) {
+          d=closest(12*k, x, y, z, out, 3);
+          if (d<best) {
+            best=d;
+            hit=k;
+            out[0]=out[3]; out[1]=out[4]; out[2]=out[5];
+          }
+        }
+        continue;
+      }
+      // Nearer child on top.
+      l=node+1; rc=nd[2*node];
+      dl=box(l, x, y, z); dr=box(rc, x, y, z);
+      if (dl<dr) {
+        if (dr<best) stack[sp++]=rc;
+        if (dl<best) stack[sp++]=l;
+      } else {
+        if (dl<best) stack[sp++]=l;
+        if (dr<best) stack[sp++]=rc;
+      }
+    }
+    return(hit);
+  }
+
+  // Nearest point to x,y,z on the triangle at o in td, into out[k..k+2]. Returns the
+  // squared distance. See Ericson, Real-Time Collision Detection, 5.1.5.
+  private final float closest(int o, float x, float y, float z, float[] out, int k) {
+    final float[] t=td;
+    float ax=t[o], ay=t[o+1], az=t[o+2];
+    float abx=t[o+3]-ax, aby=t[o+4]-ay, abz=t[o+5]-az;
+    float acx=t[o+6]-ax, acy=t[o+7]-ay, acz=t[o+8]-az;
+    float apx=x-ax, apy=y-ay, apz=z-az;
+    float d1=abx*apx+aby*apy+abz*apz, d2=acx*apx+acy*apy+acz*apz;
+    float cx, cy, cz, v, w;
+    if (d1<=0 && d2<=0) {
+      cx=ax; cy=ay; cz=az;
+    } else {
+      float bpx=x-t[o+3], bpy=y-t[o+4], bpz=z-t[o+5];
+      float d3=abx*bpx+aby*bpy+abz*bpz, d4=acx*bpx+acy*bpy+acz*bpz;
+      float cpx=x-t[o+6], cpy=y-t[o+7], cpz=z-t[o+8];
+      float d5=abx*cpx+aby*cpy+abz*cpz, d6=acx*cpx+acy*cpy+acz*cpz;
+      float vc=d1*d4-d3*d2, vb=d5*d2-d1*d6, va=d3*d6-d5*d4;
+      if (d3>=0 && d4<=d3) {
+        cx=t[o+3]; cy=t[o+4]; cz=t[o+5];
+      } else if (d6>=0 && d5<=d6) {
+        cx=t[o+6]; cy=t[o+7]; cz=t[o+8];
+      } else if (vc<=0 && d1>=0 && d3<=0) {
+        v=d1/(d1-d3);
+        cx=ax+v*abx; cy=ay+v*aby; cz=az+v*abz;
+      } else if (vb<=0 && d2>=0 && d6<=0) {
+        w=d2/(d2-d6);
+        cx=ax+w*acx; cy=ay+w*acy; cz=az+w*acz;
+      } else if (va<=0 && (d4-d3)>=0 && (d5-d6)>=0) {
+        w=(d4-d3)/((d4-d3)+(d5-d6));
+        cx=t[o+3]+w*(t[o+6]-t[o+3]); cy=t[o+4]+w*(t[o+7]-t[o+4]); cz=t[o+5]+w*(t[o+8]-t[o+5]);
+      } else {
+        float den=va+vb+vc;
+        if (den==0) {
+          // Degenerate triangle; its corner a stands in for it.
+          cx=ax; cy=ay; cz=az;
+        } else {
+          den=1/den;
+          v=vb*den; w=vc*den;
+          cx=ax+abx*v+acx*w; cy=ay+aby*v+acy*w; cz=az+abz*v+acz*w;
+        }
+      }
+    }
+    out[k]=cx; out[k+1]=cy; out[k+2]=cz;
+    cx=x-cx; cy=y-cy; cz=z-cz;
+    return(cx*cx+cy*cy+cz*cz);
+  }
+}
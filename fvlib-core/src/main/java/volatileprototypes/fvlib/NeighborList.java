@@ -0,0 +1,294 @@
+//  Copyright (c) 2010-2011, Ioannis (Yiannis) Chatzikonstantinou, ?All rights reserved.
+//  http://www.volatileprototypes.com
+// 
+//  Redistribution and use in source and binary forms, with or without modification, 
+//  are permitted provided that the following conditions are met:
+//  	- Redistributions of source code must retain the above copyright 
+//  notice, this list of conditions and the following disclaimer.
+//  	- Redistributions in binary form must reproduce the above copyright 
+//  notice, this list of conditions and the following disclaimer in the documentation 
+//  and/or other materials provided with the distribution.
+//  
+//  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY 
+//  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+//  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+//  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+//  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+//  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+//  PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+//  WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+//  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+//  OF SUCH DAMAGE.
+
+// Verlet neighbour list for the range-limited pairwise behaviors. Holds, for each point,
+// the points with a higher index within the range plus a skin, as one compressed row
+// array (CSR): the neighbours of point i are list[start[i]] to list[start[i+1]-1].
+// The list is found through a SpatialGrid, and kept until the points may have moved
+// more than half the skin since then, since no other pair can have come in range before
+// that. The distance moved is bounded by summing the largest step of any point, taken
+// from its previous position, so the check needs no copy of the positions.
+
+package volatileprototypes.fvlib;
+
+import java.util.*;
+
+/**
+ * @author      Yiannis Chatzikonstantinou <contact@volatileprototypes.com>
+ * @version     0.5.9                                    
+ * @since       0.5.9          
+ */
+public final class NeighborList {
+
+  protected int[] start=new int[1];				// Start of each row in list[], n+1 entries.
+  protected int[] list=new int[0];				// Neighbours of each point with a higher index.
+  protected int n=0;							// Number of points listed.
+  protected int version=0;						// Incremented on every rebuild.
+  private float R=1, skin=.1f;					// Range and extra distance covered by the list.
+  private float drift=0;						// Bound on the distance moved since the build.
+  private boolean stale=true;					// Rebuild on the next update.
+  private Object src;							// Point array or buffer the list was built for.
+  private int sv;								// Version of the buffer when built.
+  private final SpatialGrid sg=new SpatialGrid();
+  private float[] xs=new float[0];				// Scratch positions of a Point array.
+
+/**
+ * Constructor, generates a new empty list.
+ *
+ */
+  public NeighborList() {
+  }
+
+/**
+ * Constructor, generates a new empty list with the given range and skin.
+ *
+ * @param rin The range.
+ * @param sin The skin.
+ */
+  public NeighborList(float rin, float sin) {
+    setRange(rin);
+    setSkin(sin);
+  }
+
+/**
+ * Sets the range of the list. Behaviors consuming the list raise it to their own range if needed.
+ *
+ * @param rin A float representing the new range.
+ *
+ * @return The current object.
+ */
+  public NeighborList setRange(float rin) {
+    if (rin!=R) stale=true;
+    R=rin;
+    return(this);
+  }
+
+/**
+ *  Get the range of the list.
+ *
+ * @return The range.
+ */
+  public float getRange() {
+    return(R);
+  }
+
+/**
+ * Sets the skin, the distance beyond the range that pairs are listed for.
+ *
+ * A larger skin keeps the list for more steps but lists more pairs that are out of range.
+ * 0 rebuilds the list on every step the points move. The default is 0.1.
+ *
+ * @param sin A float representing the new skin.
+ *
+ * @return The current object.
+ */
+  public NeighborList setSkin(float sin) {
+    sin=Math.max(sin,0);
+    if (sin!=skin) stale=true;
+    skin=sin;
+    return(this);
+  }
+
+/**
+ *  Get the skin of the list.
+ *
+ * @return The skin.
+ */
+  public float getSkin() {
+    return(skin);
+  }
+
+/**
+ * Marks the list for a rebuild on the next update.
+ *
+ * Moves that leave the previous position alongside the new one (as setPos() does)
+ * are not seen by the check, so call this after placing points by hand.
+ *
+ * @return The current object.
+ */
+  public NeighborList invalidate() {
+    stale=true;
+    return(this);
+  }
+
+/**
+ * Brings the list up to date with the supplied points, rebuilding it if needed.
+ *
+ * Call once per step before using the list. Each call adds the largest step any point
+ * has taken since its previous position to the distance moved.
+ *
+ * @param points The array containing Point objects.
+ *
+ * @return Whether the list was rebuilt.
+ */
+  public boolean update(Point[] points) {
+    if (!stale && points==src && points.length==n) {
+      float m=0,dx,dy,dz,d2;
+      Point p;
+      for (int i=0;i<n;i++) {
+        p=points[i];
+        dx=p.x-p.old.x;
+        dy=p.y-p.old.y;
+        dz=p.z-p.old.z;
+        d2=dx*dx+dy*dy+dz*dz;
+        if (d2>m) m=d2;
+      }
+      if (holds(m)) return(false);
+    }
+    int np=points.length;
+    if (xs.length<3*np) xs=new float[3*np];
+    Point p;
+    for (int i=0,i3=0;i<np;i++,i3+=3) {
+      p=points[i];
+      xs[i3]=p.x;
+      xs[i3+1]=p.y;
+      xs[i3+2]=p.z;
+    }
+    sg.build(points, R+skin);
+    src=points;
+    build(xs, np);
+    return(true);
+  }
+
+/**
+ * Brings the list up to date with the points of the supplied buffer, rebuilding it if needed.
+ *
+ * Indices are those of the buffer. The list is also rebuilt after the buffer is reordered.
+ *
+ * @param b The PointBuffer holding the points.
+ *
+ * @return Whether the list was rebuilt.
+ */
+  public boolean update(PointBuffer b) {
+    final float[] ps=b.pos;
+    if (!stale && b==src && b.n==n && b.version==sv) {
+      final float[] ol=b.old;
+      float m=0,dx,dy,dz,d2;
+      for (int i3=0,e=3*n;i3<e;i3+=3) {
+        dx=ps[i3]-ol[i3];
+        dy=ps[i3+1]-ol[i3+1];
+        dz=ps[i3+2]-ol[i3+2];
+        d2=dx*dx+dy*dy+dz*dz;
+        if (d2>m) m=d2;
+      }
+      if (holds(m)) return(false);
+    }
+    sg.build(b, R+skin);
+    src=b;
+    sv=b.version;
+    build(ps, b.n);
+    return(true);
+  }
+
+  // Lists the pairs within range and skin from the positions ps, 3 floats per point,
+  // visiting the 27 cells around each point as the grid kernels of the behaviors do.
+  private final void build(float[] ps, int np) {
+    final SpatialGrid g=sg;
+    final int[] st=g.start, od=g.order, cl=g.cell;
+    final int nx=g.nx, ny=g.ny, nz=g.nz, nxy=g.nxy;
+    final float c2=(R+skin)*(R+skin);
+    if (start.length<np+1) start=new int[np+1];
+    if (list.length==0) list=new int[Math.max(16,8*np)];
+    int[] l=list;
+    float x1,y1,z1,dx,dy,dz;
+    int c,cx,cy,cz,x0,x1c,y0,y1c,z0,z1c,cc,k,k3,e=0;
+    for (int i=0,i3=0;i<np;i++,i3+=3) {
+      start[i]=e;
+      x1=ps[i3];
+      y1=ps[i3+1];
+      z1=ps[i3+2];
+      c=cl[i];
+      cz=c/nxy;
+      cy=(c-cz*nxy)/nx;
+      cx=c-cz*nxy-cy*nx;
+      x0=cx>0?cx-1:0; x1c=cx<nx-1?cx+1:cx;
+      y0=cy>0?cy-1:0; y1c=cy<ny-1?cy+1:cy;
+      z0=cz>0?cz-1:0; z1c=cz<nz-1?cz+1:cz;
+      for (int zz=z0;zz<=z1c;zz++) {
+        for (int yy=y0;yy<=y1c;yy++) {
+          cc=yy*nx+zz*nxy;
+          for (int m=st[cc+x0],me=st[cc+x1c+1];m<me;m++) {
+            k=od[m];
+            if (k<=i) continue;
+            k3=3*k;
+            dx=ps[k3]-x1;
+            dy=ps[k3+1]-y1;
+            dz=ps[k3+2]-z1;
+            if (dx*dx+dy*dy+dz*dz>=c2) continue;
+            if (e==l.length) l=list=Arrays.copyOf(l,2*e);
+            l[e++]=k;
+          }
+        }
+      }
+    }
+    start[np]=e;
+    n=np;
+    drift=0;
+    stale=false;
+    version++;
+  }
+
+  // Adds the largest squared step to the distance moved, and whether the list still holds.
+  private final boolean holds(float m2) {
+    if (m2==0) return(true);
+    drift+=(float)Math.sqrt(m2);
+    return(2*drift<=skin);
+  }
+
+/**
+ *  Get the row starts of the list, n+1 entries. The neighbours of point i are
+ *  getList()[getStart()[i]] to getList()[getStart()[i+1]-1].
+ *
+ * @return The row start array.
+ */
+  public int[] getStart() {
+    return(start);
+  }
+
+/**
+ *  Get the neighbours of all points, row after row. Each pair appears once, in the row
+ *  of its lower index.
+ *
+ * @return The neighbour array.
+ */
+  public int[] getList() {
+    return(list);
+  }
+
+/**
+ *  Get the number of listed pairs.
+ *
+ * @return The number of pairs.
+ */
+  public int getPairs() {
+    return(start[n]);
+  }
+
+/**
+ *  Get the number of rebuilds so far, so that consumers can tell when the list has changed.
+ *
+ * @return The version.
+ */
+  public int getVersion() {
+    return(version);
+  }
+}
@@ -0,0 +1,411 @@
+//  Copyright (c) 2010-2011, Ioannis (Yiannis) Chatzikonstantinou, ?All rights reserved.
+//  http://www.volatileprototypes.com
+// 
+//  Redistribution and use in source and binary forms, with or without modification, 
+//  are permitted provided that the following conditions are met:
+//  	- Redistributions of source code must retain the above copyright 
+//  notice, this list of conditions and the following disclaimer.
+//  	- Redistributions in binary form must reproduce the above copyright 
+//  notice, this list of conditions and the following disclaimer in the documentation 
+//  and/or other materials provided with the distribution.
+//  
+//  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY 
+//  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+//  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+//  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+//  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+//  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+//  PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+//  WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+//  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+//  OF SUCH DAMAGE.
+
+// Octree over a point cloud, used by BehaviorCharge for the Barnes-Hut approximation of
+// long-range forces. Each node keeps the total positive and negative charge of its
+// points and the centre of each, so that a distant node can stand in for its points as
+// two point charges. Keeping the signs apart keeps mixed charges accurate.
+// Nodes are stored in flat arrays with the children of a node next to each other, and
+// the point data is copied in tree order so that the points of a leaf are contiguous.
+// The tree is built in stages so that the lower levels can be built in parallel:
+// gather() and split() on one thread build the top levels and queue the subtrees below
+// them, buildTasks() is then called by every thread, and finish() sums the top levels.
+// A node whose points all fall in one octant is shrunk instead of getting a single
+// child, so every inner node has at least two children and m points never take more
+// than 2m nodes. This is what lets each queued subtree get its own node range up front.
+// Built over a PointBuffer whose points partly sleep, the tree also flags the sleeping
+// points and the nodes whose points all sleep.
+
+package volatileprototypes.fvlib;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * @author      Yiannis Chatzikonstantinou <contact@volatileprototypes.com>
+ * @version     0.5.9                                    
+ * @since       0.5.9          
+ */
+public final class Octree {
+
+  static final int LEAF=8;						// Most points in a leaf, unless at the depth limit.
+  static final int DEPTH=21;					// Depth limit, so coincident points are not split forever.
+
+  protected int n=0;							// Number of points.
+  protected float[] x=new float[0], y=x, z=x, c=x, r2=x;		// Point data, in input order.
+  protected int[] idx=new int[0];				// Input index of each point, in tree order.
+  protected float[] sx=x, sy=x, sz=x, sc=x, sr2=x;			// Point data, in tree order.
+  protected float r2max;						// Largest squared range.
+  protected int[] first=new int[0];			// First child, or first point (tree order) of a leaf.
+  protected int[] count=first;					// Number of children, or minus the number of points of a leaf.
+  protected float[] pq=x, px=x, py=x, pz=x;	// Total positive charge and its centre.
+  protected float[] nq=x, nx=x, ny=x, nz=x;	// Total negative charge and its centre.
+  protected float[] bx=x, by=x, bz=x, bs=x;	// Minimum corner and side of the node cube.
+  protected float[] qr2=x;						// Largest squared range in the node.
+  protected byte[] zs=new byte[0];				// 1 for each sleeping point, in tree order.
+  protected byte[] za=zs;						// 1 for each node whose points all sleep.
+  private byte[] zin;							// Sleep flags of the buffer in input order, while some points sleep.
+  private float minx, miny, minz, side;			// Bounding cube of the points.
+  private int pending;							// Top nodes left to sum by finish().
+  private int tasks;							// Subtrees queued by split().
+  private int[] tn=new int[0], ts=tn, te=tn, td=tn, tb=tn;	// Queued subtree node, points, depth and node range.
+  private float[] tx=new float[0], ty=tx, tz=tx, tw=tx;		// Queued subtree cube.
+  private final AtomicInteger next=new AtomicInteger();		// Next subtree to build.
+  private int[][] scratch=new int[0][];		// Per-thread octant bounds, 9 per depth.
+  private int[][] stacks=new int[0][];			// Per-thread traversal stacks.
+
+/**
+ * Constructor, generates a new empty tree.
+ *
+ */
+  public Octree() {
+  }
+
+/**
+ * Builds the tree over the supplied points on the calling thread.
+ *
+ * @param points The array containing Point objects.
+ *
+ * @return The current object.
+ */
+  public Octree build(Point[] points) {
+    gather(points);
+    split(1);
+    finish();
+    return(this);
+  }
+
+/**
+ * Builds the tree over the points of the supplied buffer on the calling thread.
+ *
+ * @param b The PointBuffer holding the points.
+ *
+ * @return The current object.
+ */
+  public Octree build(PointBuffer b) {
+    gather(b);
+    split(1);
+    finish();
+    return(this);
+  }
+
+/**
+ * Get the number of points in the tree.
+ *
+ * @return The number of points.
+ */
+  public int size() {
+    return(n);
+  }
+
+  // Copies positions, charges and ranges of the points.
+  final void gather(Point[] points) {
+    alloc(points.length);
+    Point p;
+    for (int i=0;i<n;i++) {
+      p=points[i];
+      x[i]=p.x;
+      y[i]=p.y;
+      z[i]=p.z;
+      c[i]=p.c;
+      r2[i]=p.r2;
+    }
+    zin=null;
+    bounds();
+  }
+  
+  final void gather(PointBuffer b) {
+    alloc(b.n);
+    final float[] ps=b.pos;
+    for (int i=0,i3=0;i<n;i++,i3+=3) {
+      x[i]=ps[i3];
+      y[i]=ps[i3+1];
+      z[i]=ps[i3+2];
+    }
+    System.arraycopy(b.c,0,c,0,n);
+    System.arraycopy(b.r2,0,r2,0,n);
+    zin=b.sleeping()?b.sl:null;
+    bounds();
+  }
+  
+  // Sizes the arrays for np points: up to 2*np nodes for the top levels and as many
+  // for the queued subtrees.
+  private void alloc(int np) {
+    n=np;
+    if (x.length<np) {
+      x=new float[np]; y=new float[np]; z=new float[np]; c=new float[np]; r2=new float[np];
+      sx=new float[np]; sy=new float[np]; sz=new float[np]; sc=new float[np]; sr2=new float[np];
+      idx=new int[np];
+      zs=new byte[np];
+    }
+    int m=4*np+1;
+    if (first.length<m) {
+      first=new int[m]; count=new int[m];
+      pq=new float[m]; px=new float[m]; py=new float[m]; pz=new float[m];
+      nq=new float[m]; nx=new float[m]; ny=new float[m]; nz=new float[m];
+      bx=new float[m]; by=new float[m]; bz=new float[m]; bs=new float[m]; qr2=new float[m];
+      za=new byte[m];
+    }
+    for (int i=0;i<np;i++) idx[i]=i;
+  }
+  
+  // Bounding cube and largest range.
+  private void bounds() {
+    float ax,ay,az,r=0;
+    minx=miny=minz=ax=ay=az=0;
+    if (n>0) {
+      minx=ax=x[0];
+      miny=ay=y[0];
+      minz=az=z[0];
+    }
+    for (int i=0;i<n;i++) {
+      if (x[i]<minx) minx=x[i]; else if (x[i]>ax) ax=x[i];
+      if (y[i]<miny) miny=y[i]; else if (y[i]>ay) ay=y[i];
+      if (z[i]<minz) minz=z[i]; else if (z[i]>az) az=z[i];
+      if (r2[i]>r) r=r2[i];
+    }
+    // Grow the cube slightly so that the largest coordinates fall inside it.
+    side=Math.max(ax-minx,Math.max(ay-miny,az-minz))*1.0001f+Float.MIN_NORMAL;
+    r2max=r;
+  }
+  
+  // Builds the top levels of the tree on the calling thread, queueing subtrees small
+  // enough to give every thread several of them. With one thread the whole tree is
+  // built here.
+  final void split(int threads) {
+    if (scratch.length<threads) {
+      scratch=new int[threads][9*(DEPTH+2)];
+      stacks=new int[threads][8*(DEPTH+2)];
+    }
+    tasks=0;
+    next.set(0);
+    pending=0;
+    if (n==0) return;
+    int spawn=threads>1?Math.max(8*LEAF,n/(4*threads)):0;
+    int top=node(0,0,n,minx,miny,minz,side,0,scratch[0],spawn,1);
+    if (spawn>0) pending=top;
+    for (int k=0,base=top;k<tasks;k++) {
+      tb[k]=base;
+      base+=2*(te[k]-ts[k]);
+    }
+  }
+  
+  // Builds queued subtrees until none are left. Called by every thread after split().
+  final void buildTasks(int thread) {
+    int[] s=scratch[thread];
+    for (int k;(k=next.getAndIncrement())<tasks;) {
+      node(tn[k],ts[k],te[k],tx[k],ty[k],tz[k],tw[k],td[k],s,0,tb[k]);
+    }
+  }
+  
+  // Sums the top levels once all subtrees are built. Children always come after
+  // their parent, so going backwards sums every node after its children.
+  final void finish() {
+    for (int nd=pending-1;nd>=0;nd--) {
+      if (count[nd]>0) sum(nd);
+    }
+    pending=0;
+  }
+  
+  // Traversal stack of the given thread, deep enough for any tree.
+  final int[] stack(int thread) {
+    return(stacks[thread]);
+  }
+  
+  // Builds node nd over the points s..e (tree order) in the given cube at depth d,
+  // allocating children from cur on. Subtrees of up to spawn points are queued
+  // instead (spawn 0 builds everything). Returns the next free node.
+  private int node(int nd, int s, int e, float x0, float y0, float z0, float w, int d, int[] sc, int spawn, int cur) {
+    for (;;) {
+      if (e-s<=LEAF || d>=DEPTH) {
+        leaf(nd,s,e,x0,y0,z0,w);
+        return(cur);
+      }
+      if (spawn>0 && e-s<=spawn) {
+        queue(nd,s,e,x0,y0,z0,w,d);
+        return(cur);
+      }
+      float h=w*.5f;
+      int o=9*d;
+      // Octant m=4*xb+2*yb+zb holds points sc[o+m]..sc[o+m+1].
+      int a=part(x,x0+h,s,e), b0=part(y,y0+h,s,a), b1=part(y,y0+h,a,e);
+      sc[o]=s;
+      sc[o+1]=part(z,z0+h,s,b0);
+      sc[o+2]=b0;
+      sc[o+3]=part(z,z0+h,b0,a);
+      sc[o+4]=a;
+      sc[o+5]=part(z,z0+h,a,b1);
+      sc[o+6]=b1;
+      sc[o+7]=part(z,z0+h,b1,e);
+      sc[o+8]=e;
+      int k=0, last=0;
+      for (int m=0;m<8;m++) {
+        if (sc[o+m+1]>sc[o+m]) {
+          k++;
+          last=m;
+        }
+      }
+      if (k==1) {
+        // Shrink to the only occupied octant.
+        x0+=(last>>2)*h;
+        y0+=((last>>1)&1)*h;
+        z0+=(last&1)*h;
+        w=h;
+        d++;
+        continue;
+      }
+      int f=cur;
+      cur+=k;
+      first[nd]=f;
+      count[nd]=k;
+      bx[nd]=x0;
+      by[nd]=y0;
+      bz[nd]=z0;
+      bs[nd]=w;
+      for (int m=0;m<8;m++) {
+        if (sc[o+m+1]>sc[o+m]) {
+          cur=node(f++,sc[o+m],sc[o+m+1],x0+(m>>2)*h,y0+((m>>1)&1)*h,z0+(m&1)*h,h,d+1,sc,spawn,cur);
+        }
+      }
+      // Top nodes may have queued subtrees below them, and are summed by finish().
+      if (spawn==0) sum(nd);
+      return(cur);
+    }
+  }
+  
+  // Moves the points s..e below v to the front, returns where the rest start.
+  private int part(float[] v, float m, int s, int e) {
+    final int[] id=idx;
+    int i=s, j=e-1, t;
+    for (;;) {
+      while (i<=j && v[id[i]]<m) i++;
+      while (i<=j && v[id[j]]>=m) j--;
+      if (i>=j) return(i);
+      t=id[i];
+      id[i++]=id[j];
+      id[j--]=t;
+    }
+  }
+  
+  private void leaf(int nd, int s, int e, float x0, float y0, float z0, float w) {
+    first[nd]=s;
+    count[nd]=s-e;
+    bx[nd]=x0;
+    by[nd]=y0;
+    bz[nd]=z0;
+    bs[nd]=w;
+    float p=0, px1=0, py1=0, pz1=0, q=0, nx1=0, ny1=0, nz1=0, r=0, a;
+    final byte[] zi=zin;
+    boolean all=zi!=null;
+    for (int m=s,i;m<e;m++) {
+      i=idx[m];
+      zs[m]=zi!=null?zi[i]:0;
+      if (zs[m]==0) all=false;
+      sx[m]=x[i];
+      sy[m]=y[i];
+      sz[m]=z[i];
+      sc[m]=a=c[i];
+      sr2[m]=r2[i];
+      if (a>0) {
+        p+=a;
+        px1+=a*x[i];
+        py1+=a*y[i];
+        pz1+=a*z[i];
+      } else if (a<0) {
+        q+=a;
+        nx1+=a*x[i];
+        ny1+=a*y[i];
+        nz1+=a*z[i];
+      }
+      if (r2[i]>r) r=r2[i];
+    }
+    za[nd]=(byte)(all?1:0);
+    store(nd,p,px1,py1,pz1,q,nx1,ny1,nz1,r);
+  }
+  
+  private void sum(int nd) {
+    float p=0, px1=0, py1=0, pz1=0, q=0, nx1=0, ny1=0, nz1=0, r=0, a;
+    byte all=1;
+    for (int m=first[nd],e=m+count[nd];m<e;m++) {
+      all&=za[m];
+      a=pq[m];
+      p+=a;
+      px1+=a*px[m];
+      py1+=a*py[m];
+      pz1+=a*pz[m];
+      a=nq[m];
+      q+=a;
+      nx1+=a*nx[m];
+      ny1+=a*ny[m];
+      nz1+=a*nz[m];
+      if (qr2[m]>r) r=qr2[m];
+    }
+    za[nd]=all;
+    store(nd,p,px1,py1,pz1,q,nx1,ny1,nz1,r);
+  }
+  
+  // Takes the charge-weighted position sums. A sign without charge gets no centre, as
+  // it exerts no force.
+  private void store(int nd, float p, float px1, float py1, float pz1, float q, float nx1, float ny1, float nz1, float r) {
+    pq[nd]=p;
+    if (p!=0) {
+      px[nd]=px1/p;
+      py[nd]=py1/p;
+      pz[nd]=pz1/p;
+    }
+    nq[nd]=q;
+    if (q!=0) {
+      nx[nd]=nx1/q;
+      ny[nd]=ny1/q;
+      nz[nd]=nz1/q;
+    }
+    qr2[nd]=r;
+  }
+  
+  private void queue(int nd, int s, int e, float x0, float y0, float z0, float w, int d) {
+    if (tasks==tn.length) {
+      int m=Math.max(64,2*tasks);
+      tn=grow(tn,m); ts=grow(ts,m); te=grow(te,m); td=grow(td,m); tb=grow(tb,m);
+      tx=grow(tx,m); ty=grow(ty,m); tz=grow(tz,m); tw=grow(tw,m);
+    }
+    tn[tasks]=nd;
+    ts[tasks]=s;
+    te[tasks]=e;
+    td[tasks]=d;
+    tx[tasks]=x0;
+    ty[tasks]=y0;
+    tz[tasks]=z0;
+    tw[tasks]=w;
+    tasks++;
+  }
+  
+  private static int[] grow(int[] a, int m) {
+    int[] b=new int[m];
+    System.arraycopy(a,0,b,0,a.length);
+    return(b);
+  }
+  
+  private static float[] grow(float[] a, int m) {
+    float[] b=new float[m];
+    System.arraycopy(a,0,b,0,a.length);
+    return(b);
+  }
+}
@@ -25,18 +25,19 @@
 
 package volatileprototypes.fvlib;
 
-import processing.core.*;
 
-public class Point extends PVector {
+public class Point extends Vec3 {
 
   protected float w;							// Weight
   protected float w1;							// 1/Weight. Cached for speedup.
   protected float c=0;							// Charge. Used for electrostatic calculations.
   protected float r=0,r2=0;						// Range, also for electrostatic calculations.
-  public PVector sforce;						// force accumulator.
-  protected PVector old;						// Position in previous timestep.
-  protected PVector uMult=new PVector(0,0,0);	// Multiplier for Unyielding constraints.
+  public Vec3 sforce;						// force accumulator.
+  protected Vec3 old;						// Position in previous timestep.
+  protected Vec3 uMult=new Vec3(0,0,0);	// Multiplier for Unyielding constraints.
   protected boolean U=false;					// Unyielding flag.
+  protected PointBuffer buf;					// Buffer whose slot this Point mirrors, if any.
+  protected int idx=-1;						// Index in the buffer.
   
 /**
  * Constructor.
@@ -51,7 +52,7 @@ public class Point extends PVector {
   public Point(float xin, float yin, float zin) {
     super(xin,yin,zin);
     old=this.get();
-    sforce=new PVector(0,0,0);
+    sforce=new Vec3(0,0,0);
     w=w1=1f;
   }
   
@@ -59,7 +60,7 @@ public class Point extends PVector {
  * Constructor.
  *
  * Constructor, generates a new class instance using coordinates and weight.
- * Weight is not yet implemented for use during the simulation.
+ * Weight divides the forces of integrators with setMass() enabled.
  *
  * @param xin X-Position of the Point.
  * @param yin Y-Position of the Point.
@@ -70,7 +71,7 @@ public class Point extends PVector {
   public Point(float xin, float yin, float zin, float win) {
     super(xin,yin,zin);
     old=this.get();
-    sforce=new PVector(0,0,0);
+    sforce=new Vec3(0,0,0);
     w=win;
     w1=1f/win;
   }
@@ -79,7 +80,7 @@ public class Point extends PVector {
  * Constructor.
  *
  * Constructor, generates a new class instance using coordinates, weight, charge and range.
- * Weight is not yet implemented for use during the simulation.
+ * Weight divides the forces of integrators with setMass() enabled.
  * Charge is used in electric Charge simulations (BehaviorCharge / BehaviorChargePair).
  * Range is used to check for point-to-point interactions.
  *
@@ -94,7 +95,7 @@ public class Point extends PVector {
   public Point(float xin, float yin, float zin, float win, float cin, float rin) {
     super(xin,yin,zin);
     old=this.get();
-    sforce=new PVector(0,0,0);
+    sforce=new Vec3(0,0,0);
     w=win;
     w1=1f/win;
     c=cin;
@@ -105,32 +106,32 @@ public class Point extends PVector {
 /**
  * Constructor.
  *
- * Constructor, generates a new class instance using a PVector.
+ * Constructor, generates a new class instance using a Vec3.
  *
- * @param v The PVector with the coordinates of the Point.
+ * @param v The Vec3 with the coordinates of the Point.
  *
  */
-  public Point(PVector v) {
+  public Point(Vec3 v) {
     super(v.x,v.y,v.z);
     old=this.get();
-    sforce=new PVector(0,0,0);
+    sforce=new Vec3(0,0,0);
     w=w1=1f;
   }
   
 /**
  * Constructor.
  *
- * Constructor, generates a new class instance a PVector and weight.
- * Weight is not yet implemented for use during the simulation.
+ * Constructor, generates a new class instance a Vec3 and weight.
+ * Weight divides the forces of integrators with setMass() enabled.
  *
- * @param v The PVector with the coordinates of the Point.
+ * @param v The Vec3 with the coordinates of the Point.
  * @param win Weight of the Point.
  *
  */
-  public Point(PVector v, float win) {
+  public Point(Vec3 v, float win) {
     super(v.x,v.y,v.z);
     old=this.get();
-    sforce=new PVector(0,0,0);
+    sforce=new Vec3(0,0,0);
     w=win;
     w1=1f/win;
   }
@@ -138,21 +139,21 @@ public class Point extends PVector {
 /**
  * Constructor.
  *
- * Constructor, generates a new class instance using a PVector, weight, charge and range.
- * Weight is not yet implemented for use during the simulation.
+ * Constructor, generates a new class instance using a Vec3, weight, charge and range.
+ * Weight divides the forces of integrators with setMass() enabled.
  * Charge is used in electric Charge simulations (BehaviorCharge / BehaviorChargePair).
  * Range is used to check for point-to-point interactions.
  *
- * @param v The PVector with the coordinates of the Point.
+ * @param v The Vec3 with the coordinates of the Point.
  * @param win Weight of the Point.
  * @param cin Charge of the Point.
  * @param rin Range of the Point.
  *
  */
-  public Point(PVector v, float win, float cin, float rin) {
+  public Point(Vec3 v, float win, float cin, float rin) {
     super(v.x,v.y,v.z);
     old=this.get();
-    sforce=new PVector(0,0,0);
+    sforce=new Vec3(0,0,0);
     w=win;
     w1=1f/win;
     c=cin;
@@ -203,6 +204,7 @@ public class Point extends PVector {
   	} else {
   		w1=Float.MAX_VALUE;
   	}
+  	if (buf!=null) buf.loadProperties(idx);
   	return(this);
   }
   
@@ -219,6 +221,7 @@ public class Point extends PVector {
  */
   public Point setC(float cin) {
   	c=cin;
+  	if (buf!=null) buf.loadProperties(idx);
   	return(this);
   }
   
@@ -236,6 +239,7 @@ public class Point extends PVector {
   public Point setR(float rin) {
   	r=rin;
   	r2=r*r;
+  	if (buf!=null) buf.loadProperties(idx);
   	return(this);
   }
   
@@ -252,6 +256,7 @@ public class Point extends PVector {
  */
   public void setU(boolean uin) {
   	U=uin;
+  	if (buf!=null) buf.loadProperties(idx);
   }
   
   // Get unyielging flag.
@@ -268,37 +273,70 @@ public class Point extends PVector {
  * @param umin The weight value.
  *
  */
-  public Point setUMult(PVector umin) {
+  public Point setUMult(Vec3 umin) {
   	uMult=umin;
+  	if (buf!=null) buf.loadProperties(idx);
   	return(this);
   }
   
   // Get unyielding multiplier.
-  public PVector getUMult() {
+  public Vec3 getUMult() {
   	return(uMult);
   }
 
 /**
- * Get the current velocity vector as a PVector.
+ * Get the current velocity vector as a Vec3.
  *
- * @return The current velocity vector as a PVector.
+ * @return The current velocity vector as a Vec3.
  *
  */
-  public PVector getV() {
-   	PVector r=get();
+  public Vec3 getV() {
+   	Vec3 r=get();
    	r.sub(old);
    	return(r);
    }
 
+/**
+ * Get whether the point sleeps in its PointBuffer (see PointBuffer.setSleep()).
+ *
+ * @return Whether the point sleeps.
+ *
+ */
+  public boolean isAsleep() {
+   	return(buf!=null && buf.isAsleep(idx));
+  }
 
-  public Point setPos(PVector pos) {
+
+  public Point setPos(Vec3 pos) {
   	x=pos.x;
   	y=pos.y;
   	z=pos.z;
   	old=pos.get();
+  	if (buf!=null) buf.loadPosition(idx);
   	return(this);
   }
 
+/**
+ * Get the PointBuffer whose slot this Point mirrors. The setters write through to the
+ * buffer; after writing the public fields, call load() on it.
+ *
+ * @return The buffer, or null if the Point is not part of one.
+ *
+ */
+  public PointBuffer getBuffer() {
+  	return(buf);
+  }
+
+/**
+ * Get the index of this Point in its PointBuffer.
+ *
+ * @return The index, or -1 if the Point is not part of a buffer.
+ *
+ */
+  public int getIndex() {
+  	return(idx);
+  }
+
 /**
  * Get the squared distance to another Point (fast).
  *
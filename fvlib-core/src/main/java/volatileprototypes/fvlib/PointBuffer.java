@@ -0,0 +1,609 @@
+//  Copyright (c) 2010-2011, Ioannis (Yiannis) Chatzikonstantinou, ?All rights reserved.
+//  http://www.volatileprototypes.com
+// 
+//  Redistribution and use in source and binary forms, with or without modification, 
+//  are permitted provided that the following conditions are met:
+//  	- Redistributions of source code must retain the above copyright 
+//  notice, this list of conditions and the following disclaimer.
+//  	- Redistributions in binary form must reproduce the above copyright 
+//  notice, this list of conditions and the following disclaimer in the documentation 
+//  and/or other materials provided with the distribution.
+//  
+//  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY 
+//  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+//  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+//  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+//  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+//  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+//  PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+//  WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+//  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+//  OF SUCH DAMAGE.
+
+// Structure-of-arrays store for Point state.
+// Positions, previous positions, forces and unyielding multipliers are kept in
+// contiguous float arrays, 3 floats per point (x,y,z interleaved), and weight,
+// inverse weight, charge and squared range in arrays of one float per point.
+// Behaviors set up with a PointBuffer stream these arrays directly instead of
+// following references through every Point, Vec3 and force accumulator.
+//
+// Each Point added to a buffer keeps its own fields, which mirror its slot: setters
+// such as setW() or setPos() write through to the arrays, but the public fields do
+// not. The arrays hold the simulation state while stepping, so call store() before
+// reading Point coordinates (e.g. for drawing) and load() after changing positions or
+// forces through the Point fields between steps. Behaviors without a buffer path copy
+// the arrays into the Points before their step, and copy back the forces they add and
+// the positions they change after it.
+//
+// reorder() sorts the points along a space-filling curve, so that points close in
+// space are close in the arrays. The Points follow their slot, and LinkBuffers
+// over this buffer and behaviors that keep buffer indices are remapped.
+//
+// setSleep() lets points that have come to rest drop out of the step. Points joined
+// by the links of a BehaviorSpringRelaxation over the buffer form an island, which
+// falls asleep once all its points stay below a speed for a number of steps, and wakes
+// as a whole when a force from an awake neighbour reaches one of its points. Behaviors
+// that step on the buffer arrays only visit the awake points.
+
+package volatileprototypes.fvlib;
+
+import java.util.*;
+
+/**
+ * @author      Yiannis Chatzikonstantinou <contact@volatileprototypes.com>
+ * @version     0.5.9                                    
+ * @since       0.5.9          
+ */
+public final class PointBuffer {
+
+/**
+ * Space-filling curves that reorder() can sort the points along.
+ */
+  public enum Order {MORTON, HILBERT}
+
+  private static final int BITS=10;		// Bits per axis of the curve keys.
+
+  protected final Point[] points;		// The Points mirroring the slots, in buffer order.
+  protected final int n;				// Number of points.
+  protected final float[] pos;			// Positions, 3 floats per point.
+  protected final float[] old;			// Positions in previous timestep, 3 floats per point.
+  protected final float[] frc;			// Force accumulators, 3 floats per point.
+  protected final float[] um;			// Unyielding multipliers (1 if not unyielding), 3 floats per point.
+  protected final float[] w, w1;		// Weight and 1/Weight.
+  protected final float[] c, r2;		// Charge and squared range.
+  protected int version;				// Incremented on every reorder(), so that cached indices can be checked.
+  private final Set<LinkBuffer> lbs=Collections.newSetFromMap(new WeakHashMap<LinkBuffer,Boolean>());	// LinkBuffers to remap.
+  protected int[] active;				// Indices of the awake points in ascending order, while some points sleep.
+  protected int na;						// Number of awake points.
+  protected byte[] sl;					// 1 for each sleeping point, if sleep is on.
+  protected int sv;						// Incremented whenever points fall asleep or wake up.
+  private float ss=0, ss2=0;			// Speed below which a point is at rest, 0 when sleep is off.
+  private int steps=1;					// Steps an island stays at rest before it sleeps.
+  private float wf=0, wf2=0;			// Force that wakes a sleeping point.
+  private int[] isl;					// Island of each point.
+  private int ni;						// Number of islands.
+  private int[] calm;					// Steps each island has been at rest.
+  private boolean[] zz;					// Whether each island sleeps.
+  private float[] vm;					// Largest squared speed of each island during the step, or a wake mark.
+  private boolean stale=true;			// Set when the islands have to be found again.
+  private final Map<Object,int[]> joins=new WeakHashMap<Object,int[]>();	// End point indices of links joining islands, by owner.
+
+/**
+ * Constructor.
+ *
+ * Constructor, generates a new buffer holding the state of the supplied points, which then
+ * mirror their slot of the buffer. A Point can be part of one buffer only.
+ *
+ * @param pointsin An array containing Point objects.
+ *
+ */
+  public PointBuffer(Point[] pointsin) {
+    points=pointsin;
+    n=points.length;
+    pos=new float[3*n];
+    old=new float[3*n];
+    frc=new float[3*n];
+    um=new float[3*n];
+    w=new float[n];
+    w1=new float[n];
+    c=new float[n];
+    r2=new float[n];
+    for (int i=0;i<n;i++) {
+      Point p=points[i];
+      p.buf=this;
+      p.idx=i;
+    }
+    na=n;
+    load();
+  }
+
+/**
+ * Constructor.
+ *
+ * Constructor, generates a new buffer using a copy of the supplied Point ArrayList.
+ *
+ * @param pointsin An ArrayList containing Point objects.
+ *
+ */
+  public PointBuffer(ArrayList<? extends Point> pointsin) {
+    this(pointsin.toArray(new Point[pointsin.size()]));
+  }
+
+/**
+ * Copies the full state of the Point objects into the buffer.
+ *
+ * @return The current object.
+ */
+  public PointBuffer load() {
+    wake();
+    for (int i=0;i<n;i++) {
+      loadPosition(i);
+      loadForce(i);
+      loadProperties(i);
+    }
+    return(this);
+  }
+
+/**
+ * Copies positions, previous positions and forces from the buffer back into the Point objects.
+ *
+ * @return The current object.
+ */
+  public PointBuffer store() {
+    float[] ps=pos,ol=old,f=frc;
+    Point p;
+    for (int i=0,i3=0;i<n;i++,i3+=3) {
+      p=points[i];
+      p.x=ps[i3];
+      p.y=ps[i3+1];
+      p.z=ps[i3+2];
+      p.old.x=ol[i3];
+      p.old.y=ol[i3+1];
+      p.old.z=ol[i3+2];
+      p.sforce.x=f[i3];
+      p.sforce.y=f[i3+1];
+      p.sforce.z=f[i3+2];
+    }
+    return(this);
+  }
+
+  // Copies the force accumulators of all Point objects into the buffer.
+  protected final void loadForces() {
+    for (int i=0;i<n;i++) loadForce(i);
+  }
+
+  // Copies the positions of the Point objects that differ from the buffer into it, after
+  // a step on the Points that may have moved them. Only those wake up if asleep.
+  protected final void loadMoved() {
+    final float[] ps=pos, ol=old;
+    Point p;
+    for (int i=0,i3=0;i<n;i++,i3+=3) {
+      p=points[i];
+      if (p.x!=ps[i3] || p.y!=ps[i3+1] || p.z!=ps[i3+2] ||
+          p.old.x!=ol[i3] || p.old.y!=ol[i3+1] || p.old.z!=ol[i3+2]) loadPosition(i);
+    }
+  }
+
+  protected final void loadPosition(int i) {
+    Point p=points[i];
+    int i3=3*i;
+    pos[i3]=p.x;
+    pos[i3+1]=p.y;
+    pos[i3+2]=p.z;
+    old[i3]=p.old.x;
+    old[i3+1]=p.old.y;
+    old[i3+2]=p.old.z;
+    if (sl!=null && sl[i]!=0) {
+      // Moved from outside while asleep.
+      zz[isl[i]]=false;
+      calm[isl[i]]=0;
+      activate();
+    }
+  }
+
+  protected final void loadForce(int i) {
+    Point p=points[i];
+    int i3=3*i;
+    frc[i3]=p.sforce.x;
+    frc[i3+1]=p.sforce.y;
+    frc[i3+2]=p.sforce.z;
+  }
+
+  protected final void loadProperties(int i) {
+    Point p=points[i];
+    int i3=3*i;
+    w[i]=p.w;
+    w1[i]=p.w1;
+    c[i]=p.c;
+    r2[i]=p.r2;
+    if (p.U) {
+      um[i3]=p.uMult.x;
+      um[i3+1]=p.uMult.y;
+      um[i3+2]=p.uMult.z;
+    } else {
+      um[i3]=um[i3+1]=um[i3+2]=1;
+    }
+  }
+
+/**
+ * Sorts the points along a Hilbert curve (see reorder(Order)).
+ *
+ * @return The current object.
+ */
+  public PointBuffer reorder() {
+    return(reorder(Order.HILBERT));
+  }
+
+/**
+ * Sorts the points along a space-filling curve through their bounding box.
+ *
+ * Points that are close in space end up close in the buffer arrays, which keeps neighbour loops in cache.
+ * All arrays and the Points are permuted, so every Point keeps its state and its slot of the buffer,
+ * but its index changes. The end point indices of LinkBuffers over this buffer are rewritten and their
+ * links sorted again, and behaviors that keep buffer indices rebuild them on their next step. Can be
+ * called again between steps as the points move; not while a step is running.
+ *
+ * @param o The curve: MORTON is cheaper to compute, HILBERT has no jumps between neighbouring cells.
+ *
+ * @return The current object.
+ */
+  public PointBuffer reorder(Order o) {
+    if (n==0) return(this);
+    float[] ps=pos;
+    float x0=Float.MAX_VALUE, y0=x0, z0=x0, x1=-x0, y1=-x0, z1=-x0;
+    for (int i=0,i3=0;i<n;i++,i3+=3) {
+      x0=Math.min(x0,ps[i3]); x1=Math.max(x1,ps[i3]);
+      y0=Math.min(y0,ps[i3+1]); y1=Math.max(y1,ps[i3+1]);
+      z0=Math.min(z0,ps[i3+2]); z1=Math.max(z1,ps[i3+2]);
+    }
+    // Cells of a cube over the bounding box, so the curve keeps the same shape on every axis.
+    float e=Math.max(Math.max(x1-x0,y1-y0),z1-z0), q=e>0?((1<<BITS)-1)/e:0;
+    long[] key=new long[n];
+    int[] a=new int[3];
+    for (int i=0,i3=0;i<n;i++,i3+=3) {
+      a[0]=(int)((ps[i3]-x0)*q);
+      a[1]=(int)((ps[i3+1]-y0)*q);
+      a[2]=(int)((ps[i3+2]-z0)*q);
+      if (o==Order.HILBERT) hilbert(a);
+      key[i]=((long)(spread(a[0])<<2|spread(a[1])<<1|spread(a[2]))<<32)|i;
+    }
+    Arrays.sort(key);
+    int[] ord=new int[n], inv=new int[n];
+    for (int i=0;i<n;i++) {
+      ord[i]=(int)key[i];
+      inv[ord[i]]=i;
+    }
+    permute(ord);
+    for (LinkBuffer lb : lbs) lb.remap(inv);
+    for (int[] j : joins.values()) {
+      for (int i=0;i<j.length;i++) j[i]=inv[j[i]];
+    }
+    if (isl!=null) {
+      int[] t=isl.clone();
+      byte[] z=sl.clone();
+      for (int i=0;i<n;i++) {
+        isl[i]=t[ord[i]];
+        sl[i]=z[ord[i]];
+      }
+      activate();
+    }
+    version++;
+    return(this);
+  }
+
+  // Moves the state of point ord[i] to slot i.
+  private final void permute(int[] ord) {
+    float[] t=new float[3*n];
+    for (float[] v : new float[][] {pos, old, frc, um}) {
+      System.arraycopy(v, 0, t, 0, 3*n);
+      for (int i=0,i3=0;i<n;i++,i3+=3) {
+        int k=3*ord[i];
+        v[i3]=t[k];
+        v[i3+1]=t[k+1];
+        v[i3+2]=t[k+2];
+      }
+    }
+    for (float[] v : new float[][] {w, w1, c, r2}) {
+      System.arraycopy(v, 0, t, 0, n);
+      for (int i=0;i<n;i++) v[i]=t[ord[i]];
+    }
+    Point[] pt=points.clone();
+    for (int i=0;i<n;i++) {
+      Point p=pt[ord[i]];
+      points[i]=p;
+      p.idx=i;
+    }
+  }
+
+  // Spreads the low BITS bits of v so that there are two zero bits between them.
+  private static int spread(int v) {
+    v&=0x3ff;
+    v=(v|v<<16)&0x30000ff;
+    v=(v|v<<8)&0x300f00f;
+    v=(v|v<<4)&0x30c30c3;
+    v=(v|v<<2)&0x9249249;
+    return(v);
+  }
+
+  // Turns cell coordinates into the transposed Hilbert index, whose bits interleaved
+  // like a Morton key give the position along the curve.
+  // See Skilling, John - Programming the Hilbert curve.
+  private static void hilbert(int[] x) {
+    int t;
+    for (int q=1<<(BITS-1);q>1;q>>=1) {
+      int p=q-1;
+      for (int i=0;i<3;i++) {
+        if ((x[i]&q)!=0) {
+          x[0]^=p;
+        } else {
+          t=(x[0]^x[i])&p;
+          x[0]^=t;
+          x[i]^=t;
+        }
+      }
+    }
+    x[1]^=x[0];
+    x[2]^=x[1];
+    t=0;
+    for (int q=1<<(BITS-1);q>1;q>>=1) {
+      if ((x[2]&q)!=0) t^=q-1;
+    }
+    x[0]^=t;
+    x[1]^=t;
+    x[2]^=t;
+  }
+
+  // Registers a LinkBuffer whose end point indices reorder() rewrites.
+  protected final void attach(LinkBuffer lb) {
+    lbs.add(lb);
+  }
+
+/**
+ * Sets up the sleep of points that have come to rest.
+ *
+ * An island, the points joined by the links of a BehaviorSpringRelaxation over this buffer
+ * or a single point, falls asleep when none of its points has been faster than the given
+ * speed for the given number of steps. Sleeping points are not integrated, and behaviors
+ * that step on the buffer arrays skip them and the pairs and links between them. An island
+ * wakes when the force it receives at one of its points from an awake neighbour exceeds
+ * the given force, or when a point is moved through setPos() or load().
+ *
+ * Sleep is tracked by the Integrator stepping this buffer. Behaviors that step on
+ * the Point objects visit sleeping points as usual.
+ *
+ * @param sin The speed (length of Point.getV()) below which a point is at rest, 0 to turn sleep off.
+ * @param nin The number of steps an island stays at rest before it sleeps.
+ * @param fin The force that wakes a sleeping point.
+ *
+ * @return The current object.
+ */
+  public PointBuffer setSleep(float sin, int nin, float fin) {
+    ss=sin;
+    ss2=sin*sin;
+    steps=Math.max(nin,1);
+    wf=fin;
+    wf2=fin*fin;
+    if (ss2>0) {
+      stale=true;
+    } else {
+      wake();
+      isl=null;
+      sl=null;
+    }
+    return(this);
+  }
+
+/**
+ * Get the speed below which a point is at rest.
+ *
+ * @return The rest speed, 0 if sleep is off.
+ */
+  public float getSleepSpeed() {
+    return(ss);
+  }
+
+/**
+ * Get the number of steps an island stays at rest before it sleeps.
+ *
+ * @return The number of steps.
+ */
+  public int getSleepSteps() {
+    return(steps);
+  }
+
+/**
+ * Get the force that wakes a sleeping point.
+ *
+ * @return The wake force.
+ */
+  public float getWakeForce() {
+    return(wf);
+  }
+
+/**
+ * Wakes all sleeping points.
+ *
+ * @return The current object.
+ */
+  public PointBuffer wake() {
+    if (zz==null || na==n) return(this);
+    Arrays.fill(zz, 0, ni, false);
+    Arrays.fill(calm, 0, ni, 0);
+    activate();
+    return(this);
+  }
+
+/**
+ * Get the number of awake points.
+ *
+ * @return The number of points that are not asleep.
+ */
+  public int getActive() {
+    return(na);
+  }
+
+/**
+ * Get whether a point sleeps.
+ *
+ * @param i The index of the point in the buffer.
+ *
+ * @return Whether the point sleeps.
+ */
+  public boolean isAsleep(int i) {
+    return(sl!=null && sl[i]!=0);
+  }
+
+  // Whether some points sleep, so that the buffer kernels step the active list.
+  protected final boolean sleeping() {
+    return(na<n);
+  }
+
+  // Returns the end of the run of consecutive point indices that starts at position i
+  // of the active list, below end. With a stride other than 1, runs are single points.
+  protected final int run(int i, int end, int stride) {
+    if (stride!=1) return(i+stride);
+    final int[] a=active;
+    int j=i+1;
+    while (j<end && a[j]==a[j-1]+1) j++;
+    return(j);
+  }
+
+  // Registers the end point indices of the first m links of the given owner, which join
+  // points into islands. Replaces the links registered before by the same owner.
+  protected final void join(Object owner, int[] ends, int m) {
+    joins.put(owner, Arrays.copyOf(ends, 2*m));
+    stale=true;
+  }
+
+  // Called after each integration step. Islands whose points all stayed below the rest
+  // speed for enough steps fall asleep, with their velocity set to 0. Sleeping islands
+  // where a point received a large enough force wake up. The forces of sleeping points
+  // are cleared, as the integrator skips them.
+  protected final void settle() {
+    if (ss2<=0) return;
+    if (stale) islands();
+    final float[] ps=pos, ol=old, f=frc, v=vm;
+    final int[] is=isl;
+    final byte[] s=sl;
+    float dx,dy,dz,d2;
+    int k;
+    for (int i=0,i3=0;i<n;i++,i3+=3) {
+      k=is[i];
+      if (s[i]==0) {
+        dx=ps[i3]-ol[i3];
+        dy=ps[i3+1]-ol[i3+1];
+        dz=ps[i3+2]-ol[i3+2];
+        d2=dx*dx+dy*dy+dz*dz;
+        if (d2>v[k]) v[k]=d2;
+      } else {
+        d2=f[i3]*f[i3]+f[i3+1]*f[i3+1]+f[i3+2]*f[i3+2];
+        if (d2>wf2) v[k]=1;
+        f[i3]=f[i3+1]=f[i3+2]=0;
+      }
+    }
+    boolean ch=false;
+    for (k=0;k<ni;k++) {
+      if (zz[k]) {
+        if (v[k]>0) {
+          zz[k]=false;
+          calm[k]=0;
+          ch=true;
+        }
+      } else if (v[k]<ss2) {
+        if (++calm[k]>=steps) {
+          zz[k]=true;
+          ch=true;
+        }
+      } else {
+        calm[k]=0;
+      }
+      v[k]=0;
+    }
+    if (ch) activate();
+  }
+
+  // Finds the islands from the registered links. An island sleeps if all its points did.
+  private final void islands() {
+    int[] p=new int[n];
+    for (int i=0;i<n;i++) p[i]=i;
+    int a,b;
+    for (int[] e : joins.values()) {
+      for (int i=0;i<e.length;i+=2) {
+        a=root(p,e[i]);
+        b=root(p,e[i+1]);
+        if (a!=b) p[Math.max(a,b)]=Math.min(a,b);
+      }
+    }
+    // Roots have the lowest index of their island, so ids can be handed out in one pass.
+    int[] is=new int[n];
+    int m=0;
+    for (int i=0;i<n;i++) {
+      is[i]=p[i]==i?m++:is[root(p,i)];
+    }
+    boolean[] z=new boolean[m];
+    Arrays.fill(z, true);
+    for (int i=0;i<n;i++) {
+      if (sl==null || sl[i]==0) z[is[i]]=false;
+    }
+    isl=is;
+    ni=m;
+    zz=z;
+    calm=new int[m];
+    vm=new float[m];
+    if (sl==null) sl=new byte[n];
+    stale=false;
+    activate();
+  }
+
+  private static int root(int[] p, int i) {
+    while (p[i]!=i) {
+      p[i]=p[p[i]];
+      i=p[i];
+    }
+    return(i);
+  }
+
+  // Rebuilds the sleep flags and the active list from the islands. Points that fall
+  // asleep lose their velocity and force.
+  private final void activate() {
+    final boolean[] z=zz;
+    final int[] is=isl;
+    final byte[] s=sl;
+    if (active==null) active=new int[n];
+    int m=0;
+    for (int i=0,i3=0;i<n;i++,i3+=3) {
+      if (z[is[i]]) {
+        if (s[i]==0) {
+          old[i3]=pos[i3];
+          old[i3+1]=pos[i3+1];
+          old[i3+2]=pos[i3+2];
+          frc[i3]=frc[i3+1]=frc[i3+2]=0;
+          s[i]=1;
+        }
+      } else {
+        s[i]=0;
+        active[m++]=i;
+      }
+    }
+    na=m;
+    sv++;
+  }
+
+/**
+ * Get the Points mirroring this buffer.
+ *
+ * @return The point array.
+ */
+  public Point[] getP() {
+    return(points);
+  }
+
+/**
+ * Get the number of points in this buffer.
+ *
+ * @return The number of points.
+ */
+  public int size() {
+    return(n);
+  }
+}
@@ -0,0 +1,87 @@
+//  Copyright (c) 2010-2011, Ioannis (Yiannis) Chatzikonstantinou, ?All rights reserved.
+//  http://www.volatileprototypes.com
+// 
+//  Redistribution and use in source and binary forms, with or without modification, 
+//  are permitted provided that the following conditions are met:
+//  	- Redistributions of source code must retain the above copyright 
+//  notice, this list of conditions and the following disclaimer.
+//  	- Redistributions in binary form must reproduce the above copyright 
+//  notice, this list of conditions and the following disclaimer in the documentation 
+//  and/or other materials provided with the distribution.
+//  
+//  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY 
+//  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+//  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+//  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+//  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+//  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+//  PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+//  WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+//  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+//  OF SUCH DAMAGE.
+
+// Simd is the entry point of the vector kernels. The kernels live in SimdVector,
+// which is written against the incubating jdk.incubator.vector module and is only
+// loaded when that module is resolved at runtime (java --add-modules jdk.incubator.vector).
+// Without the module, or with -Dfvlib.simd=false, available() is false and the
+// behaviors keep running their scalar loops.
+
+package volatileprototypes.fvlib;
+
+/**
+ * @author      Yiannis Chatzikonstantinou <contact@volatileprototypes.com>
+ * @version     0.5.9                                    
+ * @since       0.5.9          
+ */
+public abstract class Simd {
+
+  // Links processed per block by the spring kernel; the scratch array holds 3 floats per link of a block.
+  protected static final int BLOCK=512;
+  
+  // The loaded kernels, or null if the vector module is not available.
+  protected static final Simd VEC=load();
+  
+  Simd() {
+  }
+
+/**
+ * Whether the vector kernels are loaded.
+ *
+ * @return True if the Vector API is available and has not been disabled with -Dfvlib.simd=false.
+ */
+  public static final boolean available() {
+    return(VEC!=null);
+  }
+
+/**
+ * Number of float lanes processed per vector operation.
+ *
+ * @return The lane count of the preferred species, or 1 if the vector kernels are not loaded.
+ */
+  public static final int lanes() {
+    return(VEC==null?1:VEC.length());
+  }
+  
+  private static Simd load() {
+    if (!Boolean.parseBoolean(System.getProperty("fvlib.simd", "true"))) return(null);
+    if (!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) return(null);
+    try {
+      return((Simd)Class.forName("volatileprototypes.fvlib.SimdVector").getDeclaredConstructor().newInstance());
+    } catch (ReflectiveOperationException | LinkageError e) {
+      return(null);
+    }
+  }
+  
+  abstract int length();
+  
+  // Spring relaxation over links [start,end). e1 and e2 hold the position array offsets
+  // of the two end points of each link, in three planes of m=e1.length/3 ints: 3*index,
+  // 3*index+1 and 3*index+2. c and s hold the rest length and stiffness.
+  // Forces are added to f at the same offsets. tmp needs 3*BLOCK floats. m[0] and m[1]
+  // are raised and lowered to the extremes of the strain factor, as in the scalar kernels.
+  abstract void springs(float[] ps, int[] e1, int[] e2, float[] c, float[] s, boolean fast, float[] f, float[] tmp, float[] m, int start, int end);
+  
+  // Verlet step over the array range [start,end), with velocity factor F (friction), force
+  // factor A and multiplier u. Returns the largest displacement of any coordinate.
+  abstract float verlet(float[] ps, float[] ol, float[] f, float[] u, float F, float A, int start, int end);
+}
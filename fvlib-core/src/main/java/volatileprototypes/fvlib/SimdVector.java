@@ -0,0 +1,157 @@
+//  Copyright (c) 2010-2011, Ioannis (Yiannis) Chatzikonstantinou, ?All rights reserved.
+//  http://www.volatileprototypes.com
+// 
+//  Redistribution and use in source and binary forms, with or without modification, 
+//  are permitted provided that the following conditions are met:
+//  	- Redistributions of source code must retain the above copyright 
+//  notice, this list of conditions and the following disclaimer.
+//  	- Redistributions in binary form must reproduce the above copyright 
+//  notice, this list of conditions and the following disclaimer in the documentation 
+//  and/or other materials provided with the distribution.
+//  
+//  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY 
+//  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+//  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+//  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+//  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+//  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+//  PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+//  WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+//  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+//  OF SUCH DAMAGE.
+
+// Vector API implementation of the Simd kernels. Loaded reflectively by Simd,
+// so this class is never touched when jdk.incubator.vector is not resolved.
+//
+// The spring kernel gathers end point coordinates through the link offset arrays
+// (one plane per coordinate, as gathers with a nonzero array offset crash C2 on some
+// JDK 21 builds with AVX-512) and evaluates a block of links lane-wise into a scratch array. The forces are then
+// scattered with a scalar loop, since links sharing an end point would collide
+// within a vector scatter.
+
+package volatileprototypes.fvlib;
+
+import jdk.incubator.vector.*;
+
+/**
+ * @author      Yiannis Chatzikonstantinou <contact@volatileprototypes.com>
+ * @version     0.5.9                                    
+ * @since       0.5.9          
+ */
+final class SimdVector extends Simd {
+
+  private static final VectorSpecies<Float> S=FloatVector.SPECIES_PREFERRED;
+  
+  SimdVector() {
+  }
+  
+  @Override
+  final int length() {
+    return(S.length());
+  }
+  
+  @Override
+  final void springs(float[] ps, int[] e1, int[] e2, float[] c, float[] s, boolean fast, float[] f, float[] tmp, float[] mm, int start, int end) {
+    final int L=S.length(), m=e1.length/3;
+    FloatVector x1,y1,z1,dx,dy,dz,l2,cv,d,r;
+    FloatVector vx=FloatVector.zero(S), vn=vx;
+    int i,k,n,i1,i2;
+    float lx,ly,lz,qx=0,qn=0;
+    for (int b=start;b<end;b+=BLOCK) {
+      n=Math.min(BLOCK, end-b);
+      // Lane-wise force factor times offset, into tmp as three planes of BLOCK floats.
+      for (k=0;k<=n-L;k+=L) {
+        i=b+k;
+        x1=FloatVector.fromArray(S, ps, 0, e1, i);
+        y1=FloatVector.fromArray(S, ps, 0, e1, m+i);
+        z1=FloatVector.fromArray(S, ps, 0, e1, 2*m+i);
+        dx=FloatVector.fromArray(S, ps, 0, e2, i).sub(x1);
+        dy=FloatVector.fromArray(S, ps, 0, e2, m+i).sub(y1);
+        dz=FloatVector.fromArray(S, ps, 0, e2, 2*m+i).sub(z1);
+        l2=dx.mul(dx).add(dy.mul(dy)).add(dz.mul(dz));
+        cv=FloatVector.fromArray(S, c, i);
+        if (fast) {
+          // Sign flipped with respect to the scalar kernel, so both variants add to the first end point.
+          cv=cv.mul(cv);
+          r=cv.div(l2.add(cv)).sub(.5f);
+          d=FloatVector.fromArray(S, s, i).mul(r).neg();
+        } else {
+          d=cv.add(l2.div(cv));
+          d=d.mul(.25f).add(l2.div(d));
+          r=cv.div(d).neg().add(1f);
+          d=FloatVector.fromArray(S, s, i).mul(r);
+        }
+        vx=vx.max(r);
+        vn=vn.min(r);
+        d.mul(dx).intoArray(tmp, k);
+        d.mul(dy).intoArray(tmp, BLOCK+k);
+        d.mul(dz).intoArray(tmp, 2*BLOCK+k);
+      }
+      // Scalar tail of the block.
+      for (;k<n;k++) {
+        i=b+k;
+        i1=e1[i]; i2=e2[i];
+        float ex=ps[i2]-ps[i1], ey=ps[i2+1]-ps[i1+1], ez=ps[i2+2]-ps[i1+2];
+        float m2=ex*ex+ey*ey+ez*ez, C=c[i], g;
+        if (fast) {
+          C*=C;
+          g=C/(m2+C)-.5f;
+        } else {
+          g=C+m2/C;
+          g=g*.25f+m2/g;
+          g=1-C/g;
+        }
+        if (g>qx) qx=g; else if (g<qn) qn=g;
+        g=fast?-s[i]*g:s[i]*g;
+        tmp[k]=g*ex;
+        tmp[BLOCK+k]=g*ey;
+        tmp[2*BLOCK+k]=g*ez;
+      }
+      // Scatter in link order.
+      for (k=0;k<n;k++) {
+        i=b+k;
+        i1=e1[i]; i2=e2[i];
+        lx=tmp[k]; ly=tmp[BLOCK+k]; lz=tmp[2*BLOCK+k];
+        f[i1]+=lx;
+        f[i1+1]+=ly;
+        f[i1+2]+=lz;
+        f[i2]-=lx;
+        f[i2+1]-=ly;
+        f[i2+2]-=lz;
+      }
+    }
+    lx=vx.reduceLanes(VectorOperators.MAX);
+    ly=vn.reduceLanes(VectorOperators.MIN);
+    if (lx>qx) qx=lx;
+    if (ly<qn) qn=ly;
+    if (qx>mm[0]) mm[0]=qx;
+    if (qn<mm[1]) mm[1]=qn;
+  }
+  
+  @Override
+  final float verlet(float[] ps, float[] ol, float[] f, float[] u, float F, float A, int start, int end) {
+    final int L=S.length();
+    final FloatVector z=FloatVector.zero(S);
+    FloatVector t,d,mx=z;
+    int i=start;
+    for (;i<=end-L;i+=L) {
+      t=FloatVector.fromArray(S, ps, i);
+      d=t.sub(FloatVector.fromArray(S, ol, i)).mul(F).add(FloatVector.fromArray(S, f, i).mul(A))
+       .mul(FloatVector.fromArray(S, u, i));
+      mx=mx.max(d.abs());
+      d.add(t).intoArray(ps, i);
+      t.intoArray(ol, i);
+      z.intoArray(f, i);
+    }
+    float v,w,m=mx.reduceLanes(VectorOperators.MAX);
+    for (;i<end;i++) {
+      v=ps[i];
+      w=((v-ol[i])*F+f[i]*A)*u[i];
+      ps[i]=v+w;
+      if (Math.abs(w)>m) m=Math.abs(w);
+      ol[i]=v;
+      f[i]=0;
+    }
+    return(m);
+  }
+}
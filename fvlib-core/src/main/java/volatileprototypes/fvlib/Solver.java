@@ -0,0 +1,440 @@
+//  Copyright (c) 2010-2011, Ioannis (Yiannis) Chatzikonstantinou, ?All rights reserved.
+//  http://www.volatileprototypes.com
+// 
+//  Redistribution and use in source and binary forms, with or without modification, 
+//  are permitted provided that the following conditions are met:
+//  	- Redistributions of source code must retain the above copyright 
+//  notice, this list of conditions and the following disclaimer.
+//  	- Redistributions in binary form must reproduce the above copyright 
+//  notice, this list of conditions and the following disclaimer in the documentation 
+//  and/or other materials provided with the distribution.
+//  
+//  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY 
+//  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+//  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+//  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+//  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+//  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+//  PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+//  WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+//  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+//  OF SUCH DAMAGE.
+
+// Generic Solver class. Does not implement any specific solver function, but lays the
+// framework for parallel processing as well implements a few useful functions.
+// All solver classes are children of this one.
+
+package volatileprototypes.fvlib;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+public class Solver {
+
+  // Ways of splitting the work of one step between the threads.
+  // STRIDED: thread t handles items t, t+T, t+2T... (stepFunction(step, offset)).
+  // CONTIGUOUS: thread t handles one contiguous block of equal length.
+  // TRIANGULAR: contiguous blocks of equal cost for loops where item i is paired
+  //   with every item after it, so that earlier items cost more.
+  // STEALING: threads repeatedly take small contiguous blocks from a shared counter
+  //   until none are left. Treated as CONTIGUOUS in deterministic mode, as the
+  //   assignment of blocks to threads (and thus to force buffers) must not vary.
+  public enum Partition {STRIDED, CONTIGUOUS, TRIANGULAR, STEALING}
+
+  private int threads;												// Number of threads
+  private SolverRuntime rt;											// Worker runtime, unless an executor is set
+  private ExecutorService xs;										// Executor Service, if set
+  private Collection<Caller> cr; 									// Pre-caching of solver (executor)
+  private Collection<Reducer> rd;									// Pre-caching of reduction (executor)
+  private final StepTask stepTask = new StepTask();				// Pre-caching of solver (runtime)
+  private final ReduceTask reduceTask = new ReduceTask();			// Pre-caching of reduction (runtime)
+  private boolean det = false;										// Deterministic accumulation flag
+  protected float[][] acc;											// Per-thread force buffers
+  private Partition part = null;									// Partition override, if set
+  private Partition cur;											// Partition of the current step
+  private int[] bounds;												// Block bounds of the current step
+  private int wn = -1;												// Work size the bounds were computed for
+  private Partition wp;												// Partition the bounds were computed for
+  private int grain;												// Block size for STEALING
+  private final AtomicInteger cursor = new AtomicInteger();			// Shared counter for STEALING
+  private int np = 1;												// Passes of the current step
+  private int pass;													// Current pass (executor)
+  private volatile boolean failed;									// A thread threw in a pass of the current step
+
+  // Constructor. Uses the shared default runtime.
+  public Solver() {
+    rt=SolverRuntime.getDefault();
+    configure(rt.size());
+  }
+  
+  // Sizes the per-thread state for the given number of threads.
+  private final void configure(int tin) {
+    threads=Math.max(tin,1);
+    cr=new ArrayList<Caller>(threads);
+    rd=new ArrayList<Reducer>(threads);
+    for (int i=0;i<threads;i++) {
+		cr.add(new Caller(threads,i));
+		rd.add(new Reducer(threads,i));
+	  }
+    bounds=new int[threads+1];
+    wn=-1;
+    acc=new float[threads][];
+  }
+  
+  // Sets the runtime whose workers run this solver. The number of threads is the
+  // size of the runtime. Solvers can share a runtime as long as they are stepped
+  // from one thread at a time.
+  public final Solver setRuntime(SolverRuntime rin) {
+    rt=rin;
+    xs=null;
+    configure(rt.size());
+    return(this);
+  }
+  
+  // Returns the runtime, or null if an executor is set.
+  public final SolverRuntime getRuntime() {
+    return(rt);
+  }
+  
+  // Runs this solver through the given ExecutorService instead of a runtime,
+  // splitting each step between the given number of tasks.
+  public final Solver setExecutor(ExecutorService xin, int tin) {
+    xs=xin;
+    rt=null;
+    configure(tin);
+    return(this);
+  }
+  
+  // Returns the executor, or null if a runtime is used.
+  public final ExecutorService getExecutor() {
+    return(xs);
+  }
+  
+  // Returns the number of threads each step is split between.
+  public final int getThreads() {
+    return(threads);
+  }
+  
+  // Sets whether pairwise forces are accumulated deterministically.
+  // When set, behaviors that write to the forces of points handled by other threads
+  // write into a private buffer per thread instead, and the buffers are summed into
+  // Point.sforce in a second parallel pass at the end of step(). No update is lost,
+  // and for a given number of threads the result is the same on every run.
+  public final Solver setDeterministic(boolean din) {
+    det=din;
+    return(this);
+  }
+  
+  // Returns whether pairwise forces are accumulated deterministically.
+  public final boolean getDeterministic() {
+    return(det);
+  }
+  
+  // Sets the work partition, overriding the one the solver declares (see partition()).
+  // Pass null to return to the declared partition.
+  public final Solver setPartition(Partition pin) {
+    part=pin;
+    return(this);
+  }
+  
+  // Returns the work partition in use.
+  public final Partition getPartition() {
+    return(part!=null?part:partition());
+  }
+
+/**
+ *  Get the point buffer the solver works on, which a World reorders along with it.
+ *
+ * @return The point buffer, or null if the solver works on Point objects.
+ */
+  public PointBuffer getBuffer() {
+    return(null);
+  }
+  
+  // Called to step the simulation by one iteration.
+  // Dispatches a phase to the runtime workers (or executorService.invokeAll if an
+  // executor is set), which returns as soon as every thread has finished processing.
+  // step --> StepTask/Caller(s) --> stepRange/stepFunction
+  public final void step() {
+    preStep();
+    plan();
+    np=passes();
+    if (xs==null) {
+      failed=false;
+      rt.run(stepTask);
+      if (det && accUsed()) rt.run(reduceTask);
+    } else {
+      try {
+          for (pass=0;pass<np;pass++) xs.invokeAll(cr);
+          if (det && accUsed()) xs.invokeAll(rd);
+      } catch (InterruptedException ignore) {}
+    }
+    postStep();
+  }
+  
+  // Same but steps all instances of this class by one iteration.
+  //public final void stepAll() {
+  //  try {
+  //      xs.invokeAll(cr);
+  //  } catch (InterruptedException ignore) {}
+  //}
+  
+  // Called by every thread with the STRIDED partition. By default hands the strided
+  // items to stepRange(), so subclasses implement either one.
+  protected void stepFunction(int step, int offset) {
+    stepRange(offset, workSize(), step, offset);
+  }
+  
+  // Processes items start, start+stride, ... below end. thread is the index of the
+  // calling thread (e.g. for accBuffer()). Called with stride 1 for all partitions
+  // except STRIDED.
+  protected void stepRange(int start, int end, int stride, int thread) {
+  }
+  
+  // Number of parallel passes per step. Every thread finishes a pass before any
+  // thread starts the next, so a pass may read what all threads wrote in the one
+  // before (e.g. a tree built in parallel and then walked).
+  protected int passes() {
+    return(1);
+  }
+  
+  // Called by every thread for each pass. The default runs the share of the thread
+  // under the current partition, so single-pass solvers only implement stepRange()
+  // or stepFunction(). Multi-pass solvers call run() for their partitioned pass.
+  protected void passFunction(int pass, int step, int offset) {
+    run(step,offset);
+  }
+  
+  // Number of items that the work is partitioned over (e.g. points or links).
+  protected int workSize() {
+    return(0);
+  }
+  
+  // The partition this solver works best with. Subclasses that only override
+  // stepFunction() must keep STRIDED.
+  protected Partition partition() {
+    return(Partition.STRIDED);
+  }
+  
+  // The pipeline phase this solver runs in when added to a World.
+  protected World.Phase phase() {
+    return(World.Phase.FORCES);
+  }
+  
+  // Whether each item only reads and writes the state of its own point, so that a
+  // World may fuse it with other such solvers over the same points into one pass.
+  protected boolean pointLocal() {
+    return(false);
+  }
+  
+  // Sets up the partition of the coming step. Block bounds are cached until the
+  // work size or the partition changes.
+  final void plan() {
+    Partition p=getPartition();
+    if (p==Partition.STEALING && det) p=Partition.CONTIGUOUS;
+    cur=p;
+    if (p==Partition.STRIDED) return;
+    int n=workSize();
+    if (p==Partition.STEALING) {
+      grain=Math.max(1,n/(threads*16));
+      cursor.set(0);
+      return;
+    }
+    if (n==wn && p==wp) return;
+    int T=threads;
+    bounds[0]=0;
+    if (p==Partition.TRIANGULAR) {
+      // Item i costs n-i. Block t ends at the row r where the cost of rows below r,
+      // r*n-r*(r-1)/2, reaches t/T of the total n*(n+1)/2.
+      double b=2.0*n+1, tot=n*(n+1.0)/2;
+      for (int t=1;t<T;t++) {
+        double r=(b-Math.sqrt(Math.max(0,b*b-8*tot*t/T)))/2;
+        bounds[t]=Math.max(bounds[t-1],Math.min(n,(int)Math.round(r)));
+      }
+    } else {
+      for (int t=1;t<T;t++) bounds[t]=(int)((long)n*t/T);
+    }
+    bounds[T]=n;
+    wn=n;
+    wp=p;
+  }
+  
+  // Block of the given thread under the current CONTIGUOUS or TRIANGULAR partition.
+  final int blockStart(int t) {
+    return(bounds[t]);
+  }
+  
+  final int blockEnd(int t) {
+    return(bounds[t+1]);
+  }
+  
+  final Partition current() {
+    return(cur);
+  }
+  
+  // Runs the share of the calling thread under the current partition.
+  protected final void run(int step, int offset) {
+    switch (cur) {
+      case STRIDED:
+        stepFunction(step,offset);
+        break;
+      case STEALING:
+        int n=workSize(), g=grain, s;
+        while ((s=cursor.getAndAdd(g))<n) {
+          stepRange(s,Math.min(s+g,n),1,offset);
+        }
+        break;
+      default:
+        stepRange(bounds[offset],bounds[offset+1],1,offset);
+    }
+  }
+  
+  // Called once per step() on the calling thread, before the parallel stepFunction
+  // calls. Used to prepare shared data (e.g. broadphase grids) that the threads read.
+  protected void preStep() {
+  }
+  
+  // Called once per step() on the calling thread, after all parallel work is done.
+  protected void postStep() {
+  }
+  
+  // Called after stepFunction in deterministic mode, to sum the per-thread buffers
+  // into the points (see reduce()).
+  protected void reduceFunction(int step, int offset) {
+  }
+  
+  // Returns the force buffer of the calling thread, 3 floats per point, grown to
+  // hold n points. Solvers that use it outside deterministic mode must sum the
+  // buffers themselves, e.g. in a second pass.
+  protected final float[] accBuffer(int offset, int n) {
+    float[] a=acc[offset];
+    if (a==null || a.length<3*n) {
+      a=new float[3*n];
+      acc[offset]=a;
+    }
+    return(a);
+  }
+  
+  // Whether any thread has written to a force buffer.
+  private final boolean accUsed() {
+    for (float[] a : acc) {
+      if (a!=null) return(true);
+    }
+    return(false);
+  }
+  
+  // Adds the per-thread force buffers to Point.sforce and clears them.
+  // Each thread handles a contiguous block of points and sums the buffers in
+  // thread order, so the result does not depend on scheduling.
+  protected final void reduce(Point[] pts, int step, int offset) {
+    float[][] ac=acc;
+    int n=pts.length;
+    int s=(int)((long)n*offset/step), e=(int)((long)n*(offset+1)/step);
+    float fx,fy,fz;
+    float[] a;
+    Point p;
+    for (int i=s;i<e;i++) {
+      fx=fy=fz=0;
+      int i3=3*i;
+      for (int t=0;t<ac.length;t++) {
+        a=ac[t];
+        if (a==null || a.length<i3+3) continue;
+        fx+=a[i3];
+        fy+=a[i3+1];
+        fz+=a[i3+2];
+        a[i3]=a[i3+1]=a[i3+2]=0;
+      }
+      p=pts[i];
+      p.sforce.x+=fx;
+      p.sforce.y+=fy;
+      p.sforce.z+=fz;
+    }
+  }
+  
+  // Same, but adds to a force array with 3 floats per point (see PointBuffer).
+  protected final void reduce(float[] f, int n, int step, int offset) {
+    float[][] ac=acc;
+    int s=(int)((long)n*offset/step), e=(int)((long)n*(offset+1)/step);
+    float fx,fy,fz;
+    float[] a;
+    for (int i=s;i<e;i++) {
+      fx=fy=fz=0;
+      int i3=3*i;
+      for (int t=0;t<ac.length;t++) {
+        a=ac[t];
+        if (a==null || a.length<i3+3) continue;
+        fx+=a[i3];
+        fy+=a[i3+1];
+        fz+=a[i3+2];
+        a[i3]=a[i3+1]=a[i3+2]=0;
+      }
+      f[i3]+=fx;
+      f[i3+1]+=fy;
+      f[i3+2]+=fz;
+    }
+  }
+  
+  // Runtime task that calls the implemented solver function. After an error the
+  // threads skip the remaining passes but still attend every barrier, so that none
+  // waits forever, and each rethrows its own error for the runtime to report.
+  private final class StepTask implements SolverRuntime.Task {
+    public void run(int thread) {
+      Throwable err=null;
+      for (int p=0;p<np;p++) {
+        if (p>0) rt.sync(thread);
+        if (failed) continue;
+        try {
+          passFunction(p,threads,thread);
+        } catch (Throwable e) {
+          err=e;
+          failed=true;
+        }
+      }
+      if (err instanceof RuntimeException) throw (RuntimeException)err;
+      if (err!=null) throw (Error)err;
+    }
+  }
+  
+  // Runtime task that calls the reduction function in deterministic mode.
+  private final class ReduceTask implements SolverRuntime.Task {
+    public void run(int thread) {
+      reduceFunction(threads,thread);
+    }
+  }
+  
+  // Inner class that calls the implemented solver function.
+  // Is used during step()  to allow parallel execution (calling of the function many times
+  // with different offset, step params).
+  protected final class Caller implements Callable<Object> {
+  
+    private final int step, offset;
+  
+    public Caller(int stepin, int offsetin) {
+    	step=stepin;
+    	offset=offsetin;
+    }
+  
+    public Object call() {
+    	passFunction(pass,step,offset);
+    	return(null);
+    }
+  }
+  
+  // Inner class that calls the reduction function in deterministic mode.
+  protected final class Reducer implements Callable<Object> {
+  
+    private final int step, offset;
+  
+    public Reducer(int stepin, int offsetin) {
+    	step=stepin;
+    	offset=offsetin;
+    }
+  
+    public Object call() {
+    	reduceFunction(step,offset);
+    	return(null);
+    }
+  }
+  
+}
\ No newline at end of file
@@ -0,0 +1,239 @@
+//  Copyright (c) 2010-2011, Ioannis (Yiannis) Chatzikonstantinou, ?All rights reserved.
+//  http://www.volatileprototypes.com
+// 
+//  Redistribution and use in source and binary forms, with or without modification, 
+//  are permitted provided that the following conditions are met:
+//  	- Redistributions of source code must retain the above copyright 
+//  notice, this list of conditions and the following disclaimer.
+//  	- Redistributions in binary form must reproduce the above copyright 
+//  notice, this list of conditions and the following disclaimer in the documentation 
+//  and/or other materials provided with the distribution.
+//  
+//  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY 
+//  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+//  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+//  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+//  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+//  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+//  PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+//  WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+//  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+//  OF SUCH DAMAGE.
+
+// Long-lived worker threads that run the parallel phases of Solver.step().
+// A phase is a Task that is run once for every thread index, 0 to size()-1. The calling
+// thread runs index 0 and the workers run the others, each worker always taking the
+// same index, so the data a thread handles stays in the same place from step to step.
+// Workers and the caller spin for a short while before parking, so back-to-back
+// phases do not pay for a wake-up, while an idle runtime does not use any CPU.
+// The spin yields now and then, to stay cheap when there are more threads than cores.
+// Dispatching a phase does not allocate.
+// Java offers no way to pin threads to cores; long-lived workers with fixed indices
+// are the closest equivalent and leave placement to the OS scheduler.
+
+package volatileprototypes.fvlib;
+
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+
+/**
+ * @author      Yiannis Chatzikonstantinou <contact@volatileprototypes.com>
+ * @version     0.5.9                                    
+ * @since       0.5.9          
+ */
+public final class SolverRuntime {
+
+/**
+ * A unit of parallel work, run once per thread index.
+ */
+  public interface Task {
+    void run(int thread);
+  }
+
+  private static SolverRuntime def;					// Shared default runtime.
+  private static final int SPIN=1<<12;				// Spin iterations before parking.
+
+  private final int size;							// Number of threads, including the caller.
+  private final Worker[] workers;					// size-1 worker threads.
+  private volatile Task task;						// Task of the current phase.
+  private volatile int gen=0;						// Phase counter, advanced on each dispatch.
+  private final AtomicInteger pending=new AtomicInteger();	// Workers still running the phase.
+  private volatile Thread waiter;					// Caller parked waiting for the phase to end.
+  private volatile Throwable error;					// First error thrown by a worker in this phase.
+  private volatile boolean closed=false;
+  private final Thread[] members;					// Thread of each index, for sync().
+  private final AtomicInteger arrived=new AtomicInteger();	// Threads that reached the barrier.
+  private volatile int phase=0;						// Barrier counter, advanced when all arrive.
+  private final AtomicIntegerArray sleeping;		// Threads parked in sync(), by index.
+
+/**
+ * Constructor, generates a runtime with one thread per available processor.
+ *
+ */
+  public SolverRuntime() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+/**
+ * Constructor, generates a runtime with the given number of threads, including the thread
+ * that calls run().
+ *
+ * @param threads The number of threads.
+ *
+ */
+  public SolverRuntime(int threads) {
+    size=Math.max(threads,1);
+    workers=new Worker[size-1];
+    members=new Thread[size];
+    sleeping=new AtomicIntegerArray(size);
+    for (int i=0;i<workers.length;i++) {
+      workers[i]=new Worker(i+1);
+      members[i+1]=workers[i];
+      workers[i].start();
+    }
+  }
+
+/**
+ * Get the shared default runtime, with one thread per available processor.
+ *
+ * @return The default runtime.
+ */
+  public static synchronized SolverRuntime getDefault() {
+    if (def==null) def=new SolverRuntime();
+    return(def);
+  }
+
+/**
+ * Get the number of threads, including the calling thread.
+ *
+ * @return The number of threads.
+ */
+  public int size() {
+    return(size);
+  }
+
+/**
+ * Runs the task once for every thread index and returns when all have finished.
+ *
+ * Must not be called from within a task of the same runtime.
+ *
+ * @param t The task.
+ */
+  public synchronized void run(Task t) {
+    if (closed) throw new IllegalStateException("SolverRuntime is shut down.");
+    Throwable err=null;
+    members[0]=Thread.currentThread();
+    if (workers.length>0) {
+      task=t;
+      error=null;
+      pending.set(workers.length);
+      gen++;
+      for (Worker w : workers) {
+        if (w.parked) LockSupport.unpark(w);
+      }
+    }
+    try {
+      t.run(0);
+    } catch (Throwable e) {
+      err=e;
+    }
+    if (workers.length>0) {
+      await();
+      task=null;
+      if (err==null) err=error;
+    }
+    if (err instanceof RuntimeException) throw (RuntimeException)err;
+    if (err instanceof Error) throw (Error)err;
+  }
+
+/**
+ * Waits until every thread index of the running task has called sync().
+ *
+ * Lets a task run several dependent passes within one dispatch. Every thread must call
+ * sync() the same number of times during a task.
+ *
+ * @param thread The index of the calling thread.
+ */
+  public void sync(int thread) {
+    if (size==1) return;
+    int p=phase;
+    if (arrived.incrementAndGet()==size) {
+      arrived.set(0);
+      phase=p+1;
+      for (int i=0;i<size;i++) {
+        if (sleeping.get(i)!=0) LockSupport.unpark(members[i]);
+      }
+      return;
+    }
+    for (int i=0;phase==p && i<SPIN;i++) {
+      if ((i&63)==63) Thread.yield();
+    }
+    if (phase==p) {
+      sleeping.set(thread,1);
+      while (phase==p) LockSupport.park(this);
+      sleeping.set(thread,0);
+    }
+  }
+
+/**
+ * Stops the worker threads. The runtime can not be used afterwards.
+ *
+ */
+  public synchronized void shutdown() {
+    closed=true;
+    gen++;
+    for (Worker w : workers) LockSupport.unpark(w);
+  }
+
+  // Waits for the workers to finish the current phase: spin first, then park.
+  private final void await() {
+    for (int i=0;i<SPIN;i++) {
+      if (pending.get()==0) return;
+      if ((i&63)==63) Thread.yield();
+    }
+    waiter=Thread.currentThread();
+    while (pending.get()!=0) {
+      LockSupport.park(this);
+    }
+    waiter=null;
+  }
+
+  private final class Worker extends Thread {
+
+    private final int id;
+    private volatile boolean parked=false;
+
+    Worker(int idin) {
+      super("fvlib-solver-"+idin);
+      id=idin;
+      setDaemon(true);
+    }
+
+    public void run() {
+      int seen=0;
+      while (true) {
+        int g=gen;
+        for (int i=0;g==seen && i<SPIN;i++) {
+          if ((i&63)==63) Thread.yield();
+          g=gen;
+        }
+        if (g==seen) {
+          parked=true;
+          while ((g=gen)==seen) LockSupport.park(this);
+          parked=false;
+        }
+        seen=g;
+        if (closed) return;
+        try {
+          task.run(id);
+        } catch (Throwable e) {
+          if (error==null) error=e;
+        }
+        if (pending.decrementAndGet()==0) {
+          Thread w=waiter;
+          if (w!=null) LockSupport.unpark(w);
+        }
+      }
+    }
+  }
+}
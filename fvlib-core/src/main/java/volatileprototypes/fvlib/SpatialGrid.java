@@ -0,0 +1,214 @@
+//  Copyright (c) 2010-2011, Ioannis (Yiannis) Chatzikonstantinou, ?All rights reserved.
+//  http://www.volatileprototypes.com
+// 
+//  Redistribution and use in source and binary forms, with or without modification, 
+//  are permitted provided that the following conditions are met:
+//  	- Redistributions of source code must retain the above copyright 
+//  notice, this list of conditions and the following disclaimer.
+//  	- Redistributions in binary form must reproduce the above copyright 
+//  notice, this list of conditions and the following disclaimer in the documentation 
+//  and/or other materials provided with the distribution.
+//  
+//  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY 
+//  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+//  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+//  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+//  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+//  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+//  PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+//  WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+//  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+//  OF SUCH DAMAGE.
+
+// Uniform grid (cell list) used as a broadphase by the range-limited behaviors.
+// Points are binned into cubic cells of a given size using a counting sort, so that
+// all points closer than one cell size are found in the 27 cells around a point.
+// The cell lattice is anchored to multiples of the cell size, so when no point has
+// crossed a cell boundary since the last build the sorted order is kept as is.
+
+package volatileprototypes.fvlib;
+
+/**
+ * @author      Yiannis Chatzikonstantinou <contact@volatileprototypes.com>
+ * @version     0.5.9                                    
+ * @since       0.5.9          
+ */
+public final class SpatialGrid {
+
+  protected float cs=0, inv=0;					// Cell size and its inverse.
+  protected float ox, oy, oz;					// Origin of the cell lattice.
+  protected int nx=1, ny=1, nz=1, nxy=1;		// Grid dimensions.
+  protected int[] start=new int[2];				// Start of each cell in order[], cells+1 entries.
+  protected int[] order=new int[0];				// Point indices sorted by cell.
+  protected int[] cell=new int[0];				// Cell index of each point.
+  protected int n=0;							// Number of binned points.
+  private int[] next=new int[1];				// Insertion cursor used while sorting.
+  private int[] tmp=new int[0];					// Scratch cell indices.
+
+/**
+ * Constructor, generates a new empty grid.
+ *
+ */
+  public SpatialGrid() {
+  }
+
+/**
+ * Bins the supplied points into cells at least as large as the given size.
+ *
+ * The cell size is padded slightly, so that points closer than the given size are always
+ * found in neighbouring cells, and may be increased to keep the number of cells in
+ * proportion to the number of points. When the lattice and the cell of every point are unchanged since
+ * the previous call, the existing order is kept and false is returned.
+ *
+ * @param points The array containing Point objects.
+ * @param size The minimum cell size.
+ *
+ * @return Whether the points had to be re-sorted.
+ */
+  public boolean build(Point[] points, float size) {
+    int np=points.length;
+    if (np==0) return(clear());
+    float minx,miny,minz,maxx,maxy,maxz;
+    Point p=points[0];
+    minx=maxx=p.x;
+    miny=maxy=p.y;
+    minz=maxz=p.z;
+    for (int i=1;i<np;i++) {
+      p=points[i];
+      if (p.x<minx) minx=p.x; else if (p.x>maxx) maxx=p.x;
+      if (p.y<miny) miny=p.y; else if (p.y>maxy) maxy=p.y;
+      if (p.z<minz) minz=p.z; else if (p.z>maxz) maxz=p.z;
+    }
+    boolean same=lattice(np,minx,miny,minz,maxx,maxy,maxz,size);
+    if (tmp.length<np) tmp=new int[np];
+    int[] c=tmp;
+    for (int i=0;i<np;i++) {
+      p=points[i];
+      c[i]=cellOf(p.x,p.y,p.z);
+      if (same && c[i]!=cell[i]) same=false;
+    }
+    if (same) return(false);
+    sort(c,np);
+    return(true);
+  }
+
+/**
+ * Bins the points of the supplied buffer into cells at least as large as the given size.
+ *
+ * @param b The PointBuffer holding the points.
+ * @param size The minimum cell size.
+ *
+ * @return Whether the points had to be re-sorted.
+ */
+  public boolean build(PointBuffer b, float size) {
+    int np=b.n;
+    if (np==0) return(clear());
+    final float[] ps=b.pos;
+    float minx,miny,minz,maxx,maxy,maxz,x,y,z;
+    minx=maxx=ps[0];
+    miny=maxy=ps[1];
+    minz=maxz=ps[2];
+    for (int i3=3,e=3*np;i3<e;i3+=3) {
+      x=ps[i3]; y=ps[i3+1]; z=ps[i3+2];
+      if (x<minx) minx=x; else if (x>maxx) maxx=x;
+      if (y<miny) miny=y; else if (y>maxy) maxy=y;
+      if (z<minz) minz=z; else if (z>maxz) maxz=z;
+    }
+    boolean same=lattice(np,minx,miny,minz,maxx,maxy,maxz,size);
+    if (tmp.length<np) tmp=new int[np];
+    int[] c=tmp;
+    for (int i=0,i3=0;i<np;i++,i3+=3) {
+      c[i]=cellOf(ps[i3],ps[i3+1],ps[i3+2]);
+      if (same && c[i]!=cell[i]) same=false;
+    }
+    if (same) return(false);
+    sort(c,np);
+    return(true);
+  }
+
+  private final boolean clear() {
+    n=0;
+    nx=ny=nz=nxy=1;
+    start[0]=start[1]=0;
+    return(true);
+  }
+
+  // Sets up the cell lattice for the given bounds. Returns whether it is unchanged.
+  private final boolean lattice(int np, float minx, float miny, float minz, float maxx, float maxy, float maxz, float size) {
+    // Pad the cell size slightly so that rounding never pushes a pair in range two cells apart.
+    float s=size>0?size*1.0001f+Float.MIN_NORMAL:1;
+    // Keep the cell count bounded when points are sparse compared to the cell size.
+    long cap=Math.max(64L,2L*np);
+    double cells=((double)(maxx-minx)/s+2)*((double)(maxy-miny)/s+2)*((double)(maxz-minz)/s+2);
+    if (cells>cap) s*=(float)Math.cbrt(cells/cap);
+    float si=1f/s;
+    float nox=(float)Math.floor(minx*si)*s;
+    float noy=(float)Math.floor(miny*si)*s;
+    float noz=(float)Math.floor(minz*si)*s;
+    int nnx=(int)((maxx-nox)*si)+1;
+    int nny=(int)((maxy-noy)*si)+1;
+    int nnz=(int)((maxz-noz)*si)+1;
+    boolean same=(np==n && s==cs && nox==ox && noy==oy && noz==oz && nnx==nx && nny==ny && nnz==nz);
+    cs=s;
+    inv=si;
+    ox=nox;
+    oy=noy;
+    oz=noz;
+    nx=nnx;
+    ny=nny;
+    nz=nnz;
+    nxy=nx*ny;
+    return(same);
+  }
+
+  // Counting sort of point indices by cell. Indices within a cell stay ascending.
+  private final void sort(int[] c, int np) {
+    int cells=nxy*nz;
+    if (start.length<cells+1) start=new int[cells+1];
+    if (next.length<cells) next=new int[cells];
+    if (order.length<np) order=new int[np];
+    int[] st=start,nt=next,od=order;
+    java.util.Arrays.fill(st,0,cells+1,0);
+    for (int i=0;i<np;i++) st[c[i]+1]++;
+    for (int i=0;i<cells;i++) {
+      st[i+1]+=st[i];
+      nt[i]=st[i];
+    }
+    for (int i=0;i<np;i++) od[nt[c[i]]++]=i;
+    // Swap the scratch array in as the per point cell array.
+    tmp=cell;
+    cell=c;
+    n=np;
+  }
+
+/**
+ * Get the index of the cell containing the given coordinates, clamped to the grid.
+ *
+ * @return The cell index.
+ */
+  public final int cellOf(float x, float y, float z) {
+    int cx=(int)((x-ox)*inv), cy=(int)((y-oy)*inv), cz=(int)((z-oz)*inv);
+    if (cx<0) cx=0; else if (cx>=nx) cx=nx-1;
+    if (cy<0) cy=0; else if (cy>=ny) cy=ny-1;
+    if (cz<0) cz=0; else if (cz>=nz) cz=nz-1;
+    return(cx+cy*nx+cz*nxy);
+  }
+
+/**
+ * Get the current cell size.
+ *
+ * @return The cell size.
+ */
+  public final float getCellSize() {
+    return(cs);
+  }
+
+/**
+ * Get the total number of cells.
+ *
+ * @return The number of cells.
+ */
+  public final int getCellCount() {
+    return(nxy*nz);
+  }
+}
@@ -0,0 +1,341 @@
+//  Copyright (c) 2010-2011, Ioannis (Yiannis) Chatzikonstantinou, ?All rights reserved.
+//  http://www.volatileprototypes.com
+// 
+//  Redistribution and use in source and binary forms, with or without modification, 
+//  are permitted provided that the following conditions are met:
+//  	- Redistributions of source code must retain the above copyright 
+//  notice, this list of conditions and the following disclaimer.
+//  	- Redistributions in binary form must reproduce the above copyright 
+//  notice, this list of conditions and the following disclaimer in the documentation 
+//  and/or other materials provided with the distribution.
+//  
+//  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY 
+//  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+//  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+//  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+//  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+//  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+//  PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+//  WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+//  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+//  OF SUCH DAMAGE.
+
+// Builds spring networks over a set of points, as Link objects, as a LinkBuffer or as
+// an array of end point indices (two per link).
+//
+// In range mode every pair of points whose distance lies between a minimum and a
+// maximum is linked, with at most a given number of links from each point to the
+// points after it in the array: the result equals a loop over all pairs i<j in order
+// (e.g. the one in the craqs example), but candidates come from a SpatialGrid with
+// cells as large as the maximum range, and points are processed in parallel chunks
+// on a SolverRuntime. Chunks are joined in point order, so the output does not depend
+// on the number of threads.
+//
+// In mesh mode, edges() collects the distinct edges of a set of polygons (or of
+// two-vertex lines), optionally with the diagonals of each polygon.
+
+package volatileprototypes.fvlib;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * @author      Yiannis Chatzikonstantinou <contact@volatileprototypes.com>
+ * @version     0.5.9                                    
+ * @since       0.5.9          
+ */
+public final class SpringNetworkBuilder {
+
+  private static final int CHUNK=256;			// Points per parallel work item.
+
+  private final Point[] points;					// Points to link.
+  private final PointBuffer pb;					// Buffer holding the points, if any.
+  private float min=0, max=0;					// Distance range of linked pairs.
+  private int cap=Integer.MAX_VALUE;			// Links per point, to points after it.
+  private boolean nearest=false;				// Keep the nearest candidates instead of the first ones.
+  private SolverRuntime rt;						// Runtime that runs the search, null for the default.
+
+/**
+ * Constructor, generates a builder over the supplied points.
+ *
+ * @param pointsin An array containing Point objects.
+ *
+ */
+  public SpringNetworkBuilder(Point[] pointsin) {
+    points=pointsin;
+    pb=null;
+  }
+
+/**
+ * Constructor, generates a builder over the supplied points.
+ *
+ * @param pointsin An ArrayList containing Point objects.
+ *
+ */
+  public SpringNetworkBuilder(ArrayList<? extends Point> pointsin) {
+    this(pointsin.toArray(new Point[pointsin.size()]));
+  }
+
+/**
+ * Constructor, generates a builder over the points of the supplied buffer. Indices are buffer indices,
+ * and linkBuffer() can be used.
+ *
+ * @param pbin A PointBuffer holding the points.
+ *
+ */
+  public SpringNetworkBuilder(PointBuffer pbin) {
+    points=pbin.points;
+    pb=pbin;
+  }
+
+/**
+ * Sets the range of distances between linked points.
+ *
+ * @param minin Pairs must be further apart than this distance.
+ * @param maxin Pairs must be closer than this distance.
+ *
+ * @return The current object.
+ */
+  public SpringNetworkBuilder setRange(float minin, float maxin) {
+    min=minin;
+    max=maxin;
+    return(this);
+  }
+
+/**
+ * Sets the maximum number of links from each point to the points after it in the array.
+ *
+ * Points can receive further links from the points before them.
+ *
+ * @param capin The number of links.
+ *
+ * @return The current object.
+ */
+  public SpringNetworkBuilder setCap(int capin) {
+    cap=Math.max(capin,0);
+    return(this);
+  }
+
+/**
+ * Sets whether points keep their nearest candidates when there are more than the cap, rather than
+ * the first ones in array order.
+ *
+ * @param nin A boolean representing whether to keep the nearest candidates.
+ *
+ * @return The current object.
+ */
+  public SpringNetworkBuilder setNearest(boolean nin) {
+    nearest=nin;
+    return(this);
+  }
+
+/**
+ * Sets the runtime whose workers run the search.
+ *
+ * @param rtin The runtime, or null for the shared default runtime.
+ *
+ * @return The current object.
+ */
+  public SpringNetworkBuilder setRuntime(SolverRuntime rtin) {
+    rt=rtin;
+    return(this);
+  }
+
+/**
+ * Finds the pairs of points in range.
+ *
+ * @return The indices of the two end points of each link, two per link, ordered by the first index.
+ */
+  public int[] pairs() {
+    final int n=points.length;
+    if (n==0 || max<=0) return(new int[0]);
+    final SpatialGrid g=new SpatialGrid();
+    g.build(points, max);
+    final int chunks=(n+CHUNK-1)/CHUNK;
+    final int[][] res=new int[chunks][];
+    final AtomicInteger next=new AtomicInteger();
+    SolverRuntime r=rt!=null?rt:SolverRuntime.getDefault();
+    r.run(new SolverRuntime.Task() {
+      public void run(int thread) {
+        Search s=new Search(g);
+        int c;
+        while ((c=next.getAndIncrement())<chunks) {
+          res[c]=s.chunk(c*CHUNK, Math.min(n,(c+1)*CHUNK));
+        }
+      }
+    });
+    int total=0;
+    for (int[] a : res) total+=a.length;
+    int[] out=new int[total];
+    int k=0;
+    for (int[] a : res) {
+      System.arraycopy(a, 0, out, k, a.length);
+      k+=a.length;
+    }
+    return(out);
+  }
+
+  // Per-thread search state.
+  private final class Search {
+    private final SpatialGrid g;
+    private int[] cj=new int[64];				// Candidates of the current point.
+    private float[] cd=new float[64];			// Their squared distances.
+    private long[] key=new long[64];			// Sort keys for nearest mode.
+    private int[] out=new int[256];				// Pairs of the current chunk.
+
+    Search(SpatialGrid gin) {
+      g=gin;
+    }
+
+    int[] chunk(int start, int end) {
+      final float lo=min*min, hi=max*max;
+      final int[] st=g.start, od=g.order, cl=g.cell;
+      final int nx=g.nx, ny=g.ny, nz=g.nz, nxy=g.nxy;
+      int no=0;
+      for (int i=start;i<end;i++) {
+        Point p=points[i];
+        int c=cl[i], cx=c%nx, cy=(c/nx)%ny, cz=c/nxy, m=0;
+        for (int z=Math.max(cz-1,0);z<=Math.min(cz+1,nz-1);z++) {
+          for (int y=Math.max(cy-1,0);y<=Math.min(cy+1,ny-1);y++) {
+            int row=y*nx+z*nxy;
+            for (int k=st[row+Math.max(cx-1,0)],e=st[row+Math.min(cx+1,nx-1)+1];k<e;k++) {
+              int j=od[k];
+              if (j<=i) continue;
+              Point q=points[j];
+              if (q==p) continue;
+              float d=p.distance2To(q);
+              if (d<hi && d>lo) {
+                if (m==cj.length) {
+                  cj=Arrays.copyOf(cj,2*m);
+                  cd=Arrays.copyOf(cd,2*m);
+                }
+                cj[m]=j;
+                cd[m]=d;
+                m++;
+              }
+            }
+          }
+        }
+        m=select(m);
+        if (no+2*m>out.length) out=Arrays.copyOf(out,Math.max(2*out.length,no+2*m));
+        for (int k=0;k<m;k++) {
+          out[no++]=i;
+          out[no++]=cj[k];
+        }
+      }
+      return(Arrays.copyOf(out,no));
+    }
+
+    // Sorts the m candidates by index, or by distance in nearest mode, and returns how many to keep.
+    private int select(int m) {
+      if (!nearest) {
+        Arrays.sort(cj,0,m);
+        return(Math.min(m,cap));
+      }
+      if (key.length<m) key=new long[cj.length];
+      // Non-negative floats order like their bits; ties go to the lower index.
+      for (int k=0;k<m;k++) key[k]=((long)Float.floatToIntBits(cd[k])<<32)|cj[k];
+      Arrays.sort(key,0,m);
+      m=Math.min(m,cap);
+      for (int k=0;k<m;k++) cj[k]=(int)key[k];
+      Arrays.sort(cj,0,m);
+      return(m);
+    }
+  }
+
+/**
+ * Creates Link objects for the pairs of points in range.
+ *
+ * @param st A float value indicating stiffness.
+ *
+ * @return The links.
+ */
+  public Link[] links(float st) {
+    return(links(pairs(), st));
+  }
+
+/**
+ * Creates Link objects for the given pairs of point indices, e.g. from pairs() or edges().
+ *
+ * @param ends The indices of the end points, two per link.
+ * @param st A float value indicating stiffness.
+ *
+ * @return The links.
+ */
+  public Link[] links(int[] ends, float st) {
+    Link[] l=new Link[ends.length/2];
+    for (int i=0;i<l.length;i++) l[i]=new Link(points[ends[2*i]], points[ends[2*i+1]], st);
+    return(l);
+  }
+
+/**
+ * Creates a LinkBuffer for the pairs of points in range, without creating Link objects.
+ * The builder must have been created over a PointBuffer.
+ *
+ * @param st A float value indicating stiffness.
+ *
+ * @return The link buffer.
+ */
+  public LinkBuffer linkBuffer(float st) {
+    return(linkBuffer(pairs(), st));
+  }
+
+/**
+ * Creates a LinkBuffer for the given pairs of point indices. The builder must have been created over a PointBuffer.
+ *
+ * @param ends The indices of the end points, two per link.
+ * @param st A float value indicating stiffness.
+ *
+ * @return The link buffer.
+ */
+  public LinkBuffer linkBuffer(int[] ends, float st) {
+    if (pb==null) throw new IllegalStateException("The builder was not created over a PointBuffer.");
+    return(new LinkBuffer(pb, ends, st));
+  }
+
+/**
+ * Collects the distinct edges of a set of polygons.
+ *
+ * Each face lists the indices of its vertices in order around the polygon; a face with two vertices
+ * is a single edge. Edges shared by several faces appear once.
+ *
+ * @param faces The faces.
+ * @param diagonals Whether to also link every pair of non-adjacent vertices of each face (e.g. the
+ *        diagonals of quads, for shear stiffness).
+ *
+ * @return The indices of the two end points of each edge, two per edge, ordered by the lower index.
+ */
+  public static int[] edges(int[][] faces, boolean diagonals) {
+    int total=0;
+    for (int[] f : faces) total+=diagonals?f.length*(f.length-1)/2:f.length;
+    long[] key=new long[total];
+    int m=0;
+    for (int[] f : faces) {
+      int k=f.length;
+      for (int a=0;a<k;a++) {
+        if (diagonals) {
+          for (int b=a+1;b<k;b++) key[m++]=edge(f[a],f[b]);
+        } else if (k==2) {
+          if (a==0) key[m++]=edge(f[0],f[1]);
+        } else {
+          key[m++]=edge(f[a],f[(a+1)%k]);
+        }
+      }
+    }
+    Arrays.sort(key,0,m);
+    int[] out=new int[2*m];
+    int u=0;
+    for (int i=0;i<m;i++) {
+      if (i>0 && key[i]==key[i-1]) continue;
+      int a=(int)(key[i]>>>32), b=(int)key[i];
+      if (a==b) continue;
+      out[u++]=a;
+      out[u++]=b;
+    }
+    return(Arrays.copyOf(out,u));
+  }
+
+  private static long edge(int a, int b) {
+    return(a<b?((long)a<<32)|b:((long)b<<32)|a);
+  }
+}
@@ -0,0 +1,193 @@
+//  Copyright (c) 2010-2011, Ioannis (Yiannis) Chatzikonstantinou, ?All rights reserved.
+//  http://www.volatileprototypes.com
+// 
+//  Redistribution and use in source and binary forms, with or without modification, 
+//  are permitted provided that the following conditions are met:
+//  	- Redistributions of source code must retain the above copyright 
+//  notice, this list of conditions and the following disclaimer.
+//  	- Redistributions in binary form must reproduce the above copyright 
+//  notice, this list of conditions and the following disclaimer in the documentation 
+//  and/or other materials provided with the distribution.
+//  
+//  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY 
+//  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+//  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+//  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+//  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+//  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+//  PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+//  WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+//  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+//  OF SUCH DAMAGE.
+
+// Minimal 3D vector used for positions, forces and parameters in place of Processing's
+// Vec3, so that the library runs without Processing. Method names follow Vec3 so
+// that sketch code reads the same; fvlib-processing converts between the two.
+
+package volatileprototypes.fvlib;
+
+/**
+ * @author      Yiannis Chatzikonstantinou <contact@volatileprototypes.com>
+ * @version     0.5.9                                    
+ * @since       0.5.9          
+ */
+public class Vec3 {
+
+  public float x, y, z;
+
+/**
+ * Constructor, generates a zero vector.
+ *
+ */
+  public Vec3() {
+  }
+
+/**
+ * Constructor, generates a new vector from coordinates.
+ *
+ * @param xin The x coordinate.
+ * @param yin The y coordinate.
+ * @param zin The z coordinate.
+ *
+ */
+  public Vec3(float xin, float yin, float zin) {
+    x=xin;
+    y=yin;
+    z=zin;
+  }
+
+/**
+ * Sets the coordinates.
+ *
+ * @return The current object.
+ */
+  public final Vec3 set(float xin, float yin, float zin) {
+    x=xin;
+    y=yin;
+    z=zin;
+    return(this);
+  }
+
+/**
+ * Sets the coordinates to those of another vector.
+ *
+ * @return The current object.
+ */
+  public final Vec3 set(Vec3 v) {
+    x=v.x;
+    y=v.y;
+    z=v.z;
+    return(this);
+  }
+
+/**
+ * Get a copy of the coordinates as a plain vector, also for subclasses.
+ *
+ * @return The copy.
+ */
+  public final Vec3 get() {
+    return(new Vec3(x,y,z));
+  }
+
+/**
+ * Adds another vector.
+ *
+ * @return The current object.
+ */
+  public final Vec3 add(Vec3 v) {
+    x+=v.x;
+    y+=v.y;
+    z+=v.z;
+    return(this);
+  }
+
+/**
+ * Adds the given coordinates.
+ *
+ * @return The current object.
+ */
+  public final Vec3 add(float xin, float yin, float zin) {
+    x+=xin;
+    y+=yin;
+    z+=zin;
+    return(this);
+  }
+
+/**
+ * Subtracts another vector.
+ *
+ * @return The current object.
+ */
+  public final Vec3 sub(Vec3 v) {
+    x-=v.x;
+    y-=v.y;
+    z-=v.z;
+    return(this);
+  }
+
+/**
+ * Subtracts the given coordinates.
+ *
+ * @return The current object.
+ */
+  public final Vec3 sub(float xin, float yin, float zin) {
+    x-=xin;
+    y-=yin;
+    z-=zin;
+    return(this);
+  }
+
+/**
+ * Multiplies by a scalar.
+ *
+ * @return The current object.
+ */
+  public final Vec3 mult(float s) {
+    x*=s;
+    y*=s;
+    z*=s;
+    return(this);
+  }
+
+/**
+ * Get the dot product with another vector.
+ *
+ * @return The dot product.
+ */
+  public final float dot(Vec3 v) {
+    return(x*v.x+y*v.y+z*v.z);
+  }
+
+/**
+ * Get the squared length.
+ *
+ * @return The squared length.
+ */
+  public final float magSq() {
+    return(x*x+y*y+z*z);
+  }
+
+/**
+ * Get the length.
+ *
+ * @return The length.
+ */
+  public final float mag() {
+    return((float)Math.sqrt(x*x+y*y+z*z));
+  }
+
+/**
+ * Get the distance to another vector.
+ *
+ * @return The distance.
+ */
+  public final float dist(Vec3 v) {
+    float dx=v.x-x, dy=v.y-y, dz=v.z-z;
+    return((float)Math.sqrt(dx*dx+dy*dy+dz*dz));
+  }
+
+  @Override
+  public String toString() {
+    return("[ "+x+", "+y+", "+z+" ]");
+  }
+}
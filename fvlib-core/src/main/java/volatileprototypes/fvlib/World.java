@@ -0,0 +1,292 @@
+//  Copyright (c) 2010-2011, Ioannis (Yiannis) Chatzikonstantinou, ?All rights reserved.
+//  http://www.volatileprototypes.com
+// 
+//  Redistribution and use in source and binary forms, with or without modification, 
+//  are permitted provided that the following conditions are met:
+//  	- Redistributions of source code must retain the above copyright 
+//  notice, this list of conditions and the following disclaimer.
+//  	- Redistributions in binary form must reproduce the above copyright 
+//  notice, this list of conditions and the following disclaimer in the documentation 
+//  and/or other materials provided with the distribution.
+//  
+//  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY 
+//  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+//  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+//  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+//  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+//  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+//  PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+//  WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+//  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+//  OF SUCH DAMAGE.
+
+// Runs a set of solvers as one simulation, as an ordered pipeline of passes per substep:
+// FORCES (behaviors accumulating forces), CONSTRAINTS and INTEGRATE. Each solver is
+// placed in the phase it declares (Solver.phase()) unless one is given when adding it.
+// step(n) runs n substeps within a single dispatch to the runtime; the threads step
+// through the passes together, waiting for each other between passes.
+// Point-local solvers (e.g. BehaviorConstantForce, IntegratorVerlet) that follow each
+// other in the pipeline and work on the same points are fused into a single pass,
+// which walks the block of each thread in tiles and applies all of them to a tile
+// while it is in cache. As the forces of point-local force behaviors only add up,
+// they are ordered after the other force behaviors so that, when there are no
+// constraints, they fuse with the integration.
+
+package volatileprototypes.fvlib;
+
+import java.util.*;
+
+/**
+ * @author      Yiannis Chatzikonstantinou <contact@volatileprototypes.com>
+ * @version     0.5.9                                    
+ * @since       0.5.9          
+ */
+public final class World {
+
+/**
+ * The phases of a substep, in the order they run.
+ */
+  public enum Phase {FORCES, CONSTRAINTS, INTEGRATE}
+
+  private static final int TILE=1024;				// Points per tile in fused passes.
+
+  private final SolverRuntime rt;					// Runtime all solvers run on.
+  private final ArrayList<Solver> solvers=new ArrayList<Solver>();
+  private final ArrayList<Phase> phases=new ArrayList<Phase>();
+  private final ArrayList<Solver[]> passes=new ArrayList<Solver[]>();
+  private Solver[][] plan=new Solver[0][];			// Passes of the running step.
+  private int subs;									// Substeps of the running step.
+  private volatile Throwable error;					// First error of the running step.
+  private final StepTask task=new StepTask();
+  private int every;								// Substeps between point reorders, 0 for none.
+  private PointBuffer.Order order=PointBuffer.Order.HILBERT;	// Curve of the point reorders.
+  private int since;								// Substeps since the last reorder.
+
+/**
+ * Constructor, generates an empty World running on the shared default runtime.
+ *
+ */
+  public World() {
+    this(SolverRuntime.getDefault());
+  }
+
+/**
+ * Constructor, generates an empty World running on the supplied runtime.
+ *
+ * @param rtin The runtime.
+ *
+ */
+  public World(SolverRuntime rtin) {
+    rt=rtin;
+  }
+
+/**
+ * Adds a solver in the phase it declares. Solvers of the same phase run in the order they are added.
+ *
+ * @param s The solver.
+ *
+ * @return The current object.
+ */
+  public World add(Solver s) {
+    return(add(s,s.phase()));
+  }
+
+/**
+ * Adds a solver in the given phase.
+ *
+ * @param s The solver.
+ * @param p The phase.
+ *
+ * @return The current object.
+ */
+  public World add(Solver s, Phase p) {
+    solvers.add(s);
+    phases.add(p);
+    return(this);
+  }
+
+/**
+ * Removes a solver.
+ *
+ * @param s The solver.
+ *
+ * @return The current object.
+ */
+  public World remove(Solver s) {
+    int i=solvers.indexOf(s);
+    if (i>=0) {
+      solvers.remove(i);
+      phases.remove(i);
+    }
+    return(this);
+  }
+
+/**
+ * Sets how often the PointBuffers of the solvers are sorted along a space-filling curve.
+ *
+ * As the points move, points close in space drift apart in the buffers. With an interval set, every
+ * PointBuffer used by a solver of this World is reordered (see PointBuffer.reorder()) before a step
+ * once that many substeps have run since the last reorder.
+ *
+ * @param ein The number of substeps between reorders, or 0 to never reorder.
+ * @param oin The space-filling curve.
+ *
+ * @return The current object.
+ */
+  public World setReorder(int ein, PointBuffer.Order oin) {
+    every=Math.max(ein,0);
+    order=oin;
+    since=0;
+    return(this);
+  }
+
+/**
+ * Get the number of substeps between point reorders.
+ *
+ * @return The number of substeps between reorders, or 0 if points are never reordered.
+ */
+  public int getReorder() {
+    return(every);
+  }
+
+/**
+ * Get the runtime the solvers run on.
+ *
+ * @return The runtime.
+ */
+  public SolverRuntime getRuntime() {
+    return(rt);
+  }
+
+/**
+ * Steps the simulation by one substep.
+ *
+ */
+  public void step() {
+    step(1);
+  }
+
+/**
+ * Steps the simulation by the given number of substeps, with a single dispatch to the runtime.
+ *
+ * @param n The number of substeps.
+ */
+  public void step(int n) {
+    if (n<=0 || solvers.isEmpty()) return;
+    if (every>0 && since>=every) reorder();
+    schedule();
+    subs=n;
+    error=null;
+    rt.run(task);
+    since+=n;
+    Throwable e=error;
+    error=null;
+    if (e instanceof RuntimeException) throw (RuntimeException)e;
+    if (e instanceof Error) throw (Error)e;
+  }
+
+  // Reorders each PointBuffer used by the solvers once.
+  private final void reorder() {
+    Set<PointBuffer> bs=Collections.newSetFromMap(new IdentityHashMap<PointBuffer,Boolean>());
+    for (Solver s : solvers) {
+      PointBuffer b=s.getBuffer();
+      if (b!=null && bs.add(b)) b.reorder(order);
+    }
+    since=0;
+  }
+  
+  // Orders the solvers into passes and fuses point-local neighbours. Done on every
+  // step(n), so that changes to the solvers (partition, points...) are picked up.
+  private final void schedule() {
+    passes.clear();
+    ArrayList<Solver> group=new ArrayList<Solver>();
+    for (Phase ph : Phase.values()) {
+      for (int k=0;k<2;k++) {
+        // In FORCES, point-local behaviors go last. Other phases keep their order.
+        if (k==1 && ph!=Phase.FORCES) break;
+        for (int i=0;i<solvers.size();i++) {
+          if (phases.get(i)!=ph) continue;
+          Solver s=solvers.get(i);
+          if (ph==Phase.FORCES && (k==0)==s.pointLocal()) continue;
+          if (s.getRuntime()!=rt) s.setRuntime(rt);
+          if (!group.isEmpty() && !fusable(group.get(0),s)) {
+            passes.add(group.toArray(new Solver[group.size()]));
+            group.clear();
+          }
+          group.add(s);
+        }
+      }
+    }
+    if (!group.isEmpty()) passes.add(group.toArray(new Solver[group.size()]));
+    plan=passes.toArray(new Solver[passes.size()][]);
+  }
+
+  // Two solvers can share a pass when both are point-local, single-pass, contiguous, and work on
+  // the same points.
+  private static final boolean fusable(Solver a, Solver b) {
+    if (!a.pointLocal() || !b.pointLocal()) return(false);
+    if (a.passes()!=1 || b.passes()!=1) return(false);
+    if (!(a instanceof Behavior) || !(b instanceof Behavior)) return(false);
+    if (a.getDeterministic() || b.getDeterministic()) return(false);
+    if (a.getPartition()!=Solver.Partition.CONTIGUOUS || b.getPartition()!=Solver.Partition.CONTIGUOUS) return(false);
+    Behavior x=(Behavior)a, y=(Behavior)b;
+    return(x.points==y.points && x.pb==y.pb);
+  }
+
+  private final class StepTask implements SolverRuntime.Task {
+    public void run(int t) {
+      Solver[][] ps=plan;
+      for (int k=0;k<subs;k++) {
+        for (Solver[] pass : ps) {
+          Solver s0=pass[0];
+          if (t==0 && error==null) {
+            try {
+              for (Solver s : pass) {
+                s.preStep();
+                s.plan();
+              }
+            } catch (Throwable e) {
+              error=e;
+            }
+          }
+          rt.sync(t);
+          for (int p=0,np=s0.passes();p<np;p++) {
+            if (p>0) rt.sync(t);
+            if (error!=null) continue;
+            try {
+              if (pass.length==1) {
+                s0.passFunction(p,s0.getThreads(),t);
+              } else {
+                // Fused pass: every solver is applied to a tile before moving on.
+                for (int a=s0.blockStart(t),e=s0.blockEnd(t);a<e;a+=TILE) {
+                  int b=Math.min(a+TILE,e);
+                  for (Solver s : pass) s.stepRange(a,b,1,t);
+                }
+              }
+            } catch (Throwable e) {
+              error=e;
+            }
+          }
+          rt.sync(t);
+          if (s0.getDeterministic()) {
+            if (error==null) {
+              try {
+                s0.reduceFunction(s0.getThreads(),t);
+              } catch (Throwable e) {
+                error=e;
+              }
+            }
+            rt.sync(t);
+          }
+          if (t==0 && error==null) {
+            try {
+              for (Solver s : pass) s.postStep();
+            } catch (Throwable e) {
+              error=e;
+            }
+          }
+        }
+      }
+    }
+  }
+}
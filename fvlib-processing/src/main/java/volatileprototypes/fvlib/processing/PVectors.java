@@ -0,0 +1,112 @@
+//  Copyright (c) 2010-2011, Ioannis (Yiannis) Chatzikonstantinou, ?All rights reserved.
+//  http://www.volatileprototypes.com
+// 
+//  Redistribution and use in source and binary forms, with or without modification, 
+//  are permitted provided that the following conditions are met:
+//  	- Redistributions of source code must retain the above copyright 
+//  notice, this list of conditions and the following disclaimer.
+//  	- Redistributions in binary form must reproduce the above copyright 
+//  notice, this list of conditions and the following disclaimer in the documentation 
+//  and/or other materials provided with the distribution.
+//  
+//  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY 
+//  EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+//  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. 
+//  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+//  INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT 
+//  NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+//  PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, 
+//  WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+//  ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY 
+//  OF SUCH DAMAGE.
+
+// Conversions between fvlib and Processing. fvlib itself does not depend on Processing
+// and uses Vec3 where it used to take or return a PVector; sketches use these to pass
+// PVectors in and get them back out, e.g.
+//   Point p = PVectors.point(o.getVertex(i));
+//   cf = new BehaviorConstantForce(points, PVectors.vec(new PVector(0,0,.001)));
+
+package volatileprototypes.fvlib.processing;
+
+import volatileprototypes.fvlib.*;
+import processing.core.*;
+
+/**
+ * @author      Yiannis Chatzikonstantinou <contact@volatileprototypes.com>
+ * @version     0.5.9                                    
+ * @since       0.5.9          
+ */
+public final class PVectors {
+
+  private PVectors() {
+  }
+
+/**
+ * Get a Vec3 with the coordinates of a PVector.
+ *
+ * @param v The PVector.
+ *
+ * @return The new Vec3.
+ */
+  public static Vec3 vec(PVector v) {
+    return(new Vec3(v.x,v.y,v.z));
+  }
+
+/**
+ * Get a PVector with the coordinates of a Vec3 (or Point).
+ *
+ * @param v The Vec3.
+ *
+ * @return The new PVector.
+ */
+  public static PVector pvector(Vec3 v) {
+    return(new PVector(v.x,v.y,v.z));
+  }
+
+/**
+ * Get a new Point at the coordinates of a PVector.
+ *
+ * @param v The PVector with the coordinates of the Point.
+ *
+ * @return The new Point.
+ */
+  public static Point point(PVector v) {
+    return(new Point(v.x,v.y,v.z));
+  }
+
+/**
+ * Get a new Point at the coordinates of a PVector, with weight, charge and range.
+ *
+ * @param v The PVector with the coordinates of the Point.
+ * @param w Weight of the Point.
+ * @param c Charge of the Point.
+ * @param r Range of the Point.
+ *
+ * @return The new Point.
+ */
+  public static Point point(PVector v, float w, float c, float r) {
+    return(new Point(v.x,v.y,v.z,w,c,r));
+  }
+
+/**
+ * Get the current velocity of a Point as a PVector.
+ *
+ * @param p The Point.
+ *
+ * @return The velocity.
+ */
+  public static PVector velocity(Point p) {
+    return(pvector(p.getV()));
+  }
+
+/**
+ * Get the vector from the 1st to the 2nd point of a Link as a PVector.
+ *
+ * @param l The Link.
+ *
+ * @return The vector.
+ */
+  public static PVector vector(Link l) {
+    return(pvector(l.get()));
+  }
+}